@@ -21,33 +21,78 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.DaemonTokenAware;
 import org.openmrs.scheduler.SchedulerException;
 import org.openmrs.scheduler.Task;
+import org.openmrs.module.rwandareports.dhis2.scheduler.DHIS2OutboxSenderTask;
+import org.openmrs.module.rwandareports.dhis2.util.DHIS2GlobalPropertyListener;
+import org.openmrs.module.rwandareports.dhis2.util.DHIS2Util;
+import org.openmrs.module.rwandareports.patientsummary.PatientSummaryCache;
 import org.openmrs.module.rwandareports.task.FlattenTableTask;
+import org.openmrs.module.rwandareports.task.IncrementalFlattenTableTask;
+import org.openmrs.module.rwandareports.util.MetadataCache;
+import org.openmrs.module.rwandareports.util.MetadataCacheGlobalPropertyListener;
+import org.openmrs.module.rwandareports.util.PatientCache;
+import org.openmrs.module.rwandareports.util.ReportRunCache;
 import org.openmrs.scheduler.SchedulerService;
 import org.openmrs.scheduler.TaskDefinition;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
  */
-public class RwandaReportsModuleActivator extends BaseModuleActivator {
+public class RwandaReportsModuleActivator extends BaseModuleActivator implements DaemonTokenAware {
 	
 	private static Log log = LogFactory.getLog(RwandaReportsModuleActivator.class);
 	
+	private static final DHIS2GlobalPropertyListener dhis2GlobalPropertyListener = new DHIS2GlobalPropertyListener();
+	
+	private static final MetadataCacheGlobalPropertyListener metadataCacheGlobalPropertyListener =
+	        new MetadataCacheGlobalPropertyListener();
+	
+	private static volatile DaemonToken daemonToken;
+	
+	@Override
+	public void setDaemonToken(DaemonToken token) {
+		daemonToken = token;
+	}
+	
+	/**
+	 * @return the token to run work in daemon threads of this module, with their own session and user
+	 *         context
+	 */
+	public static DaemonToken getDaemonToken() {
+		return daemonToken;
+	}
+	
 	@Override
 	public void started() {
 		log.info("Started Rwanda Report Module Config");
+		Context.getAdministrationService().addGlobalPropertyListener(dhis2GlobalPropertyListener);
+		Context.getAdministrationService().addGlobalPropertyListener(metadataCacheGlobalPropertyListener);
 		registerTask("Register Reports", "Registers report definitions", RegisterReportsTask.class, 60 * 60 * 24l);
 		
 		log.info("Started OHRI-MambaETL");
 		System.out.println("Adding mamba flattening Task...");
 		registerTask("MambaETL Reporting Task", "MambaETL - flatten data models & Prepare Reporting data",
 		    FlattenTableTask.class, 60 * 60 * 24l);
+		registerTask("MambaETL Incremental Reporting Task",
+		    "MambaETL - load the billing data added or changed since the last run", IncrementalFlattenTableTask.class,
+		    60 * 60l);
+		registerTask("DHIS2 Outbox Sender Task", "Sends the data values waiting in the DHIS2 outbox",
+		    DHIS2OutboxSenderTask.class, 60 * 10l);
 	}
 	
 	@Override
 	public void stopped() {
 		log.info("Stopped Rwanda Report Module");
+		Context.getAdministrationService().removeGlobalPropertyListener(dhis2GlobalPropertyListener);
+		Context.getAdministrationService().removeGlobalPropertyListener(metadataCacheGlobalPropertyListener);
+		DHIS2Util.clearCache();
+		MetadataCache.clear();
+		PatientSummaryCache.clear();
+		PatientCache.clearAll();
+		ReportRunCache.clear();
 	}
 	
 	void addTask(String name, String className, Long repeatInterval, String description) {
@@ -0,0 +1,133 @@
+package org.openmrs.module.rwandareports.api;
+
+import java.util.Date;
+
+/**
+ * A data value set waiting to be sent to DHIS2, or already sent. There is one entry per report,
+ * period and org unit, so evaluating a report again replaces the payload instead of adding a second
+ * submission.
+ */
+public class DHIS2OutboxEntry {
+	
+	public static final String PENDING = "PENDING";
+	
+	public static final String SENT = "SENT";
+	
+	public static final String FAILED = "FAILED";
+	
+	private Integer id;
+	
+	private String reportUuid;
+	
+	private String period;
+	
+	private String orgUnit;
+	
+	private String payload;
+	
+	private String status;
+	
+	private int attempts;
+	
+	private Date nextAttempt;
+	
+	private String lastError;
+	
+	private Date dateCreated;
+	
+	private Date dateSent;
+	
+	public Integer getId() {
+		return id;
+	}
+	
+	public void setId(Integer id) {
+		this.id = id;
+	}
+	
+	public String getReportUuid() {
+		return reportUuid;
+	}
+	
+	public void setReportUuid(String reportUuid) {
+		this.reportUuid = reportUuid;
+	}
+	
+	public String getPeriod() {
+		return period;
+	}
+	
+	public void setPeriod(String period) {
+		this.period = period;
+	}
+	
+	public String getOrgUnit() {
+		return orgUnit;
+	}
+	
+	public void setOrgUnit(String orgUnit) {
+		this.orgUnit = orgUnit;
+	}
+	
+	/**
+	 * @return the data value set, as JSON
+	 */
+	public String getPayload() {
+		return payload;
+	}
+	
+	public void setPayload(String payload) {
+		this.payload = payload;
+	}
+	
+	public String getStatus() {
+		return status;
+	}
+	
+	public void setStatus(String status) {
+		this.status = status;
+	}
+	
+	/**
+	 * @return the number of failed attempts to send the current payload
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+	
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+	
+	public Date getNextAttempt() {
+		return nextAttempt;
+	}
+	
+	public void setNextAttempt(Date nextAttempt) {
+		this.nextAttempt = nextAttempt;
+	}
+	
+	public String getLastError() {
+		return lastError;
+	}
+	
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+	
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+	
+	public void setDateCreated(Date dateCreated) {
+		this.dateCreated = dateCreated;
+	}
+	
+	public Date getDateSent() {
+		return dateSent;
+	}
+	
+	public void setDateSent(Date dateSent) {
+		this.dateSent = dateSent;
+	}
+}
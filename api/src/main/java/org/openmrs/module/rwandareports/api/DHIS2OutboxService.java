@@ -0,0 +1,39 @@
+package org.openmrs.module.rwandareports.api;
+
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.rwandareports.dhis2.model.DHISDataValueSet;
+
+/**
+ * Keeps the data value sets computed for DHIS2 until they are sent, so that a failed submission is
+ * retried from the stored payload instead of evaluating the report again
+ */
+public interface DHIS2OutboxService extends OpenmrsService {
+	
+	/**
+	 * @return the entry of the report, period and org unit, or null if none was computed yet
+	 */
+	DHIS2OutboxEntry getEntry(String reportUuid, String period, String orgUnit);
+	
+	/**
+	 * Stores the data value set for sending, replacing the one of the same report, period and org unit.
+	 * Storing a data value set that was already sent unchanged does not send it again. The complete date
+	 * is not stored, it is set to the day of the push when the entry is sent.
+	 */
+	DHIS2OutboxEntry enqueue(String reportUuid, DHISDataValueSet dataValueSet);
+	
+	/**
+	 * Sends the entry if it is pending and due and no other sender has taken it, and schedules the next
+	 * attempt if it fails
+	 * 
+	 * @return true if it was sent
+	 */
+	boolean send(DHIS2OutboxEntry entry);
+	
+	/**
+	 * Sends all the pending entries that are due, the data value sets of the same DHIS2 data set are
+	 * posted together
+	 * 
+	 * @return the number of entries sent
+	 */
+	int sendPending();
+}
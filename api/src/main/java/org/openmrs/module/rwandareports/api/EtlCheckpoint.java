@@ -0,0 +1,111 @@
+package org.openmrs.module.rwandareports.api;
+
+import java.util.Date;
+
+/**
+ * Progress of a MambaETL load that is run in chunks of a key range, saved after every chunk so that a
+ * failed run resumes after the last completed chunk
+ */
+public class EtlCheckpoint {
+	
+	private String stage;
+	
+	private int lastKey;
+	
+	private int endKey;
+	
+	private Date minClosingDate;
+	
+	private long rowsLoaded;
+	
+	private Date startedOn;
+	
+	private String schema;
+	
+	private boolean incremental;
+	
+	private int resumeAttempts;
+	
+	public EtlCheckpoint(String stage, int lastKey, int endKey, Date minClosingDate, long rowsLoaded, Date startedOn,
+	    String schema, boolean incremental, int resumeAttempts) {
+		this.stage = stage;
+		this.lastKey = lastKey;
+		this.endKey = endKey;
+		this.minClosingDate = minClosingDate;
+		this.rowsLoaded = rowsLoaded;
+		this.startedOn = startedOn;
+		this.schema = schema;
+		this.incremental = incremental;
+		this.resumeAttempts = resumeAttempts;
+	}
+	
+	public String getStage() {
+		return stage;
+	}
+	
+	/**
+	 * @return the last key loaded, everything up to and including it is done
+	 */
+	public int getLastKey() {
+		return lastKey;
+	}
+	
+	public void setLastKey(int lastKey) {
+		this.lastKey = lastKey;
+	}
+	
+	/**
+	 * @return the last key to load
+	 */
+	public int getEndKey() {
+		return endKey;
+	}
+	
+	/**
+	 * @return for an incremental load, the closing date the bills are reloaded from, otherwise null
+	 */
+	public Date getMinClosingDate() {
+		return minClosingDate;
+	}
+	
+	public long getRowsLoaded() {
+		return rowsLoaded;
+	}
+	
+	public void setRowsLoaded(long rowsLoaded) {
+		this.rowsLoaded = rowsLoaded;
+	}
+	
+	public Date getStartedOn() {
+		return startedOn;
+	}
+	
+	/**
+	 * @return the shadow schema a full load is built in, or null if it loads the tables in place
+	 */
+	public String getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * @return true if the load was started by an incremental run
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+	
+	/**
+	 * @return the number of times the load was resumed after it failed
+	 */
+	public int getResumeAttempts() {
+		return resumeAttempts;
+	}
+	
+	public void setResumeAttempts(int resumeAttempts) {
+		this.resumeAttempts = resumeAttempts;
+	}
+	
+	public boolean isFinished() {
+		return lastKey >= endKey;
+	}
+}
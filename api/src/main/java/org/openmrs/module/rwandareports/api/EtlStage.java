@@ -0,0 +1,159 @@
+package org.openmrs.module.rwandareports.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A step of the MambaETL that is run, timed and recorded on its own: one or more stored procedures
+ * and the table they load. A stage only starts once the stages it depends on are done, the others
+ * can run at the same time.
+ */
+public class EtlStage {
+	
+	private static final String FLATTEN = "flatten";
+	
+	private static final String WATERMARK = "z_encounter_obs_watermark";
+	
+	/**
+	 * The billing dimensions, in the order sp_mamba_data_processing_derived_billing_dimensions runs them
+	 */
+	private static final String[] BILLING_DIMENSIONS = { "admission", "beneficiary", "bill_payment", "billable_service",
+	        "consommation", "department", "facility_service_price", "patient_service_bill", "global_bill", "hop_service",
+	        "insurance_rate", "insurance", "insurance_bill", "insurance_policy", "paid_service_bill", "patient_bill",
+	        "service_category", "third_party_bill", "thirdparty" };
+	
+	/**
+	 * The billing dimensions that have an sp_mamba_dim_*_incremental procedure refreshing the rows that
+	 * can still change at the source
+	 */
+	private static final List<String> REFRESHED_BILLING_DIMENSIONS = Arrays.asList("admission", "global_bill",
+	    "insurance_rate", "patient_bill", "patient_service_bill");
+	
+	private String name;
+	
+	private String table;
+	
+	private List<String> procedures;
+	
+	private FlatTableConfig flatTable;
+	
+	private List<String> dependencies = new ArrayList<String>();
+	
+	public EtlStage(String name, String table, String... procedures) {
+		this.name = name;
+		this.table = table;
+		this.procedures = Arrays.asList(procedures);
+	}
+	
+	/**
+	 * A stage that fills the flat table in Java instead of calling procedures
+	 */
+	public EtlStage(FlatTableConfig flatTable) {
+		this.name = flatTable.getFlatTableName();
+		this.table = flatTable.getFlatTableName();
+		this.procedures = Collections.emptyList();
+		this.flatTable = flatTable;
+	}
+	
+	public EtlStage dependsOn(String... stages) {
+		dependencies.addAll(Arrays.asList(stages));
+		return this;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the table the stage loads, its row count is recorded, or null if it loads many tables
+	 */
+	public String getTable() {
+		return table;
+	}
+	
+	/**
+	 * @return the stored procedures to call, in order
+	 */
+	public List<String> getProcedures() {
+		return procedures;
+	}
+	
+	/**
+	 * @return the flat table the stage pivots in Java, or null if it calls procedures
+	 */
+	public FlatTableConfig getFlatTable() {
+		return flatTable;
+	}
+	
+	/**
+	 * @return the names of the stages that have to be done before this one starts
+	 */
+	public List<String> getDependencies() {
+		return dependencies;
+	}
+	
+	/**
+	 * @param javaPivotTables the flat tables to pivot again in Java once the flattening is done, each in
+	 *            its own stage
+	 * @return the stages of a full run: sp_mamba_data_processing_flatten as one stage, as ohri-mamba-core
+	 *         defines it, then the billing dimensions, the billing fact is loaded after them
+	 */
+	public static List<EtlStage> getFullRunStages(List<FlatTableConfig> javaPivotTables) {
+		List<EtlStage> stages = new ArrayList<EtlStage>();
+		stages.add(new EtlStage(FLATTEN, null, "sp_mamba_data_processing_flatten"));
+		// the next incremental run reloads the encounters and obs changed since the flattening started
+		stages.add(new EtlStage(WATERMARK, null, "sp_mamba_z_encounter_obs_watermark").dependsOn(FLATTEN));
+		for (FlatTableConfig flatTable : javaPivotTables) {
+			stages.add(new EtlStage(flatTable).dependsOn(FLATTEN));
+		}
+		
+		// the flattening drops the billing dimensions with the other tables before it rebuilds them
+		for (String dimension : BILLING_DIMENSIONS) {
+			stages.add(new EtlStage("dim_" + dimension, billingDimensionTable(dimension), "sp_mamba_dim_" + dimension)
+			        .dependsOn(FLATTEN));
+		}
+		addDependencies(stages, "dim_insurance", "dim_insurance_rate");
+		return stages;
+	}
+	
+	/**
+	 * @return the stages of an incremental run, the bills closed since the last run are loaded into the
+	 *         billing fact after them
+	 */
+	public static List<EtlStage> getIncrementalRunStages() {
+		List<EtlStage> stages = new ArrayList<EtlStage>();
+		// only the encounters whose obs changed since the last run are reloaded and pivoted again
+		stages.add(new EtlStage("z_encounter_obs", "mamba_z_encounter_obs", "sp_mamba_z_encounter_obs_incremental"));
+		stages.add(new EtlStage("flat_encounter", null, "sp_mamba_flat_encounter_table_insert_incremental_all")
+		        .dependsOn("z_encounter_obs"));
+		stages.add(new EtlStage("dim_person", "mamba_dim_person", "sp_mamba_dim_person_incremental"));
+		for (String dimension : BILLING_DIMENSIONS) {
+			if (REFRESHED_BILLING_DIMENSIONS.contains(dimension)) {
+				stages.add(new EtlStage("dim_" + dimension, billingDimensionTable(dimension), "sp_mamba_dim_" + dimension
+				        + "_incremental"));
+			} else {
+				stages.add(new EtlStage("dim_" + dimension, billingDimensionTable(dimension), "sp_mamba_dim_" + dimension
+				        + "_insert", "sp_mamba_dim_" + dimension + "_update"));
+			}
+		}
+		addDependencies(stages, "dim_patient_service_bill", "dim_consommation");
+		// the service lines of the bills still open are refreshed before the bills get closed
+		addDependencies(stages, "dim_global_bill", "dim_patient_service_bill");
+		addDependencies(stages, "dim_insurance", "dim_insurance_rate");
+		return stages;
+	}
+	
+	private static void addDependencies(List<EtlStage> stages, String stage, String... dependencies) {
+		for (EtlStage etlStage : stages) {
+			if (etlStage.getName().equals(stage)) {
+				etlStage.dependsOn(dependencies);
+			}
+		}
+	}
+	
+	private static String billingDimensionTable(String dimension) {
+		return "thirdparty".equals(dimension) ? "mamba_dim_third_party" : "mamba_dim_" + dimension;
+	}
+}
@@ -0,0 +1,109 @@
+package org.openmrs.module.rwandareports.api;
+
+import java.util.Date;
+
+/**
+ * The timing and outcome of one stage of a MambaETL run, as kept in the run history
+ */
+public class EtlStageRun {
+	
+	public static final String SUCCESS = "SUCCESS";
+	
+	public static final String FAILED = "FAILED";
+	
+	private Integer id;
+	
+	private String runUuid;
+	
+	private boolean incremental;
+	
+	private String stage;
+	
+	private Date startedOn;
+	
+	private long durationMillis;
+	
+	private Long rows;
+	
+	private String status;
+	
+	private String error;
+	
+	public Integer getId() {
+		return id;
+	}
+	
+	public void setId(Integer id) {
+		this.id = id;
+	}
+	
+	/**
+	 * @return identifies the run, shared by all its stages
+	 */
+	public String getRunUuid() {
+		return runUuid;
+	}
+	
+	public void setRunUuid(String runUuid) {
+		this.runUuid = runUuid;
+	}
+	
+	public boolean isIncremental() {
+		return incremental;
+	}
+	
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	
+	public String getStage() {
+		return stage;
+	}
+	
+	public void setStage(String stage) {
+		this.stage = stage;
+	}
+	
+	public Date getStartedOn() {
+		return startedOn;
+	}
+	
+	public void setStartedOn(Date startedOn) {
+		this.startedOn = startedOn;
+	}
+	
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+	
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+	
+	/**
+	 * @return the number of rows the stage added to its table, or null if it has no single table
+	 */
+	public Long getRows() {
+		return rows;
+	}
+	
+	public void setRows(Long rows) {
+		this.rows = rows;
+	}
+	
+	public String getStatus() {
+		return status;
+	}
+	
+	public void setStatus(String status) {
+		this.status = status;
+	}
+	
+	public String getError() {
+		return error;
+	}
+	
+	public void setError(String error) {
+		this.error = error;
+	}
+}
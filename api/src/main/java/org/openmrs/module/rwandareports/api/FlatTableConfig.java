@@ -0,0 +1,62 @@
+package org.openmrs.module.rwandareports.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * A flat encounter table as described by a MambaETL config file such as _etl/config/diabetes.json:
+ * one row per encounter of the encounter type and one column per concept
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class FlatTableConfig {
+	
+	@JsonProperty("report_name")
+	private String reportName;
+	
+	@JsonProperty("flat_table_name")
+	private String flatTableName;
+	
+	@JsonProperty("encounter_type_uuid")
+	private String encounterTypeUuid;
+	
+	@JsonProperty("table_columns")
+	private Map<String, String> tableColumns = new LinkedHashMap<String, String>();
+	
+	public String getReportName() {
+		return reportName;
+	}
+	
+	public void setReportName(String reportName) {
+		this.reportName = reportName;
+	}
+	
+	public String getFlatTableName() {
+		return flatTableName;
+	}
+	
+	public void setFlatTableName(String flatTableName) {
+		this.flatTableName = flatTableName;
+	}
+	
+	public String getEncounterTypeUuid() {
+		return encounterTypeUuid;
+	}
+	
+	public void setEncounterTypeUuid(String encounterTypeUuid) {
+		this.encounterTypeUuid = encounterTypeUuid;
+	}
+	
+	/**
+	 * @return the concept uuid of every column, by column label, in the order of the file
+	 */
+	public Map<String, String> getTableColumns() {
+		return tableColumns;
+	}
+	
+	public void setTableColumns(Map<String, String> tableColumns) {
+		this.tableColumns = tableColumns;
+	}
+}
@@ -1,5 +1,7 @@
 package org.openmrs.module.rwandareports.api;
 
+import java.util.List;
+
 import org.openmrs.api.OpenmrsService;
 
 /**
@@ -9,4 +11,15 @@ public interface FlattenDatabaseService extends OpenmrsService {
 	
 	//@Authorized({ OrderTemplatesConstants.MANAGE_ORDER_TEMPLATES })
 	void flattenDatabase();
+	
+	/**
+	 * Only loads the billing rows and the encounters added or changed since the last run, falls back
+	 * to {@link #flattenDatabase()} when no full run has been done yet
+	 */
+	void flattenDatabaseIncrementally();
+	
+	/**
+	 * @return the most recent stage runs of the ETL, latest first
+	 */
+	List<EtlStageRun> getEtlStageRuns(int maxResults);
 }
@@ -0,0 +1,49 @@
+package org.openmrs.module.rwandareports.api.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import org.openmrs.module.rwandareports.api.DHIS2OutboxEntry;
+
+public interface DHIS2OutboxDao {
+	
+	/**
+	 * @return the entry of the report, period and org unit, or null
+	 */
+	DHIS2OutboxEntry getEntry(String reportUuid, String period, String orgUnit);
+	
+	/**
+	 * Adds the entry, or replaces the payload of the existing entry with the same report, period and
+	 * org unit and makes it pending again. An entry that was already sent with the same payload is left
+	 * as it is.
+	 * 
+	 * @return the saved entry
+	 */
+	DHIS2OutboxEntry saveEntry(String reportUuid, String period, String orgUnit, String payload);
+	
+	/**
+	 * @return the pending entries whose next attempt is due, oldest first
+	 */
+	List<DHIS2OutboxEntry> getDueEntries(int maxResults);
+	
+	/**
+	 * Takes the entry for sending by moving its next attempt to the given time, so that it is not sent
+	 * again by another sender in the meantime
+	 * 
+	 * @return false if the entry is not pending or not due, it must not be sent then
+	 */
+	boolean claimEntry(DHIS2OutboxEntry entry, Date leaseUntil);
+	
+	/**
+	 * Marks the entry as sent, unless its payload was replaced while it was being sent
+	 * 
+	 * @return false if the entry was not marked, the new payload stays pending
+	 */
+	boolean markSent(DHIS2OutboxEntry entry);
+	
+	/**
+	 * Records the failed attempt, the entry is retried at the given time or marked as failed if there
+	 * is none. An entry whose payload was replaced while it was being sent is left pending.
+	 */
+	void markFailed(DHIS2OutboxEntry entry, String error, Date nextAttempt);
+}
@@ -1,9 +1,98 @@
 package org.openmrs.module.rwandareports.api.dao;
 
+import java.util.List;
+
+import org.openmrs.module.rwandareports.api.EtlCheckpoint;
+import org.openmrs.module.rwandareports.api.EtlStage;
+import org.openmrs.module.rwandareports.api.EtlStageRun;
+import org.openmrs.module.rwandareports.api.FlatTableConfig;
+
 /**
  * @author smallGod date: 01/03/2023
  */
 public interface FlattenDatabaseDao {
 	
-	void executeFlatteningScript();
+	/**
+	 * Calls the procedures of the stage
+	 * 
+	 * @param schema the shadow schema to run the stage in, or null to run it in the OpenMRS database
+	 * @return the number of rows the stage added to its table, or null if it has none
+	 */
+	Long runStage(EtlStage stage, String schema);
+	
+	/**
+	 * Sets up a shadow schema for a full run: the procedures and functions of the OpenMRS database are
+	 * copied into it and every other table is visible through a view, so that the procedures create
+	 * the ETL tables in the shadow schema while reading the OpenMRS data. The tables it holds from the
+	 * previous run are kept until the procedures drop them.
+	 * 
+	 * @param schema the shadow schema, or null for the OpenMRS database name followed by _mamba_shadow
+	 * @return the shadow schema, or null if the given schema is the OpenMRS database itself
+	 */
+	String prepareShadowSchema(String schema);
+	
+	/**
+	 * Swaps the ETL tables of the shadow schema with those of the OpenMRS database in a single RENAME
+	 * TABLE, the previous generation is left in the shadow schema
+	 */
+	void swapShadowSchema(String schema);
+	
+	/**
+	 * Fills a flat encounter table created by sp_mamba_flat_encounter_table_create from the encounter
+	 * obs, streamed ordered by encounter and pivoted in memory one encounter at a time instead of by
+	 * sp_mamba_flat_encounter_table_insert. The rows go into a copy of the table that replaces it once
+	 * it is filled.
+	 * 
+	 * @param schema the shadow schema to fill the table in, or null for the OpenMRS database
+	 * @return the number of rows inserted
+	 */
+	long pivotFlatTable(FlatTableConfig flatTable, String schema);
+	
+	/**
+	 * @return true if a full run has created the billing tables
+	 */
+	boolean isFlattened();
+	
+	/**
+	 * @return the checkpoint of a billing fact load that did not complete, or null
+	 */
+	EtlCheckpoint getUnfinishedFactLoad();
+	
+	/**
+	 * Prepares the billing fact table, recreating it for a full load or removing the bills that are
+	 * reloaded for an incremental one, and saves the checkpoint of the new load
+	 * 
+	 * @param schema the shadow schema of a full load, or null to load the table in place
+	 */
+	EtlCheckpoint startFactLoad(boolean incremental, String schema);
+	
+	/**
+	 * Loads the next chunk of global bills into the billing fact table and saves the checkpoint in the
+	 * same transaction
+	 * 
+	 * @return the number of rows inserted
+	 */
+	int loadFactChunk(EtlCheckpoint checkpoint, int chunkSize);
+	
+	/**
+	 * Runs the post load updates of the billing fact table and removes the checkpoint
+	 */
+	void finishFactLoad(EtlCheckpoint checkpoint);
+	
+	/**
+	 * Counts an attempt to resume the load, before it is made
+	 */
+	void saveFactLoadResumeAttempt(EtlCheckpoint checkpoint);
+	
+	/**
+	 * Removes the checkpoint of a load that is not resumed, the next run starts a new load
+	 */
+	void abandonFactLoad(EtlCheckpoint checkpoint);
+	
+	void saveStageRun(EtlStageRun stageRun);
+	
+	/**
+	 * @return the most recent stage runs, latest first
+	 */
+	List<EtlStageRun> getStageRuns(int maxResults);
 }
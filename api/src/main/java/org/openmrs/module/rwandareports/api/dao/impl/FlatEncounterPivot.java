@@ -0,0 +1,187 @@
+package org.openmrs.module.rwandareports.api.dao.impl;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pivots the encounter obs, read ordered by encounter, into the rows of a flat encounter table one
+ * encounter at a time. Gives the same values as sp_mamba_flat_encounter_table_insert: a row for every
+ * encounter, person and encounter datetime with at least one obs of a column, and for every column
+ * the largest value of its obs, written as text.
+ */
+class FlatEncounterPivot {
+	
+	/**
+	 * A column of the flat table and the obs value it takes, as fn_mamba_get_obs_value_column picks it
+	 */
+	static class Column {
+		
+		private final String label;
+		
+		private final String conceptUuid;
+		
+		private final boolean answer;
+		
+		private final String valueColumn;
+		
+		/**
+		 * @param answer true if the obs are matched on their coded answer instead of their question
+		 * @param datatype the name of the concept datatype
+		 */
+		Column(String label, String conceptUuid, boolean answer, String datatype) {
+			this.label = label;
+			this.conceptUuid = conceptUuid;
+			this.answer = answer;
+			this.valueColumn = getValueColumn(datatype);
+		}
+		
+		String getLabel() {
+			return label;
+		}
+		
+		static String getValueColumn(String datatype) {
+			if ("Text".equals(datatype) || "Coded".equals(datatype) || "N/A".equals(datatype)
+			        || "Boolean".equals(datatype)) {
+				return "obs_value_text";
+			} else if ("Date".equals(datatype) || "Datetime".equals(datatype)) {
+				return "obs_value_datetime";
+			} else if ("Numeric".equals(datatype)) {
+				return "obs_value_numeric";
+			}
+			return null;
+		}
+	}
+	
+	private final int width;
+	
+	private final Map<String, List<Integer>> columnsByQuestion = new HashMap<String, List<Integer>>();
+	
+	private final Map<String, List<Integer>> columnsByAnswer = new HashMap<String, List<Integer>>();
+	
+	private final String[] valueColumns;
+	
+	private Integer encounterId;
+	
+	/**
+	 * The rows of the current encounter by person and encounter datetime, there is only one unless its
+	 * obs disagree on them
+	 */
+	private final Map<String, Object[]> rows = new LinkedHashMap<String, Object[]>();
+	
+	FlatEncounterPivot(List<Column> columns) {
+		width = columns.size();
+		valueColumns = new String[width];
+		for (int i = 0; i < width; i++) {
+			Column column = columns.get(i);
+			valueColumns[i] = column.valueColumn;
+			Map<String, List<Integer>> byConcept = column.answer ? columnsByAnswer : columnsByQuestion;
+			List<Integer> indexes = byConcept.get(column.conceptUuid);
+			if (indexes == null) {
+				indexes = new ArrayList<Integer>();
+				byConcept.put(column.conceptUuid, indexes);
+			}
+			indexes.add(i);
+		}
+	}
+	
+	/**
+	 * Adds an obs, the obs have to come ordered by encounter
+	 *
+	 * @return the rows of the previous encounter once the obs of another one start, otherwise an empty
+	 *         list
+	 */
+	List<Object[]> add(int encounterId, int personId, Date encounterDatetime, String questionUuid,
+	        String valueCodedUuid, String valueText, Double valueNumeric, Date valueDatetime) {
+		List<Object[]> done = Collections.emptyList();
+		if (this.encounterId != null && this.encounterId != encounterId) {
+			done = finish();
+		}
+		this.encounterId = encounterId;
+		
+		List<Integer> questionColumns = questionUuid == null ? null : columnsByQuestion.get(questionUuid);
+		List<Integer> answerColumns = valueCodedUuid == null ? null : columnsByAnswer.get(valueCodedUuid);
+		if (questionColumns == null && answerColumns == null) {
+			return done;
+		}
+		
+		String key = personId + " " + encounterDatetime.getTime();
+		Object[] row = rows.get(key);
+		if (row == null) {
+			row = new Object[3 + width];
+			row[0] = encounterId;
+			row[1] = personId;
+			row[2] = encounterDatetime;
+			rows.put(key, row);
+		}
+		if (questionColumns != null) {
+			setValues(row, questionColumns, valueText, valueNumeric, valueDatetime);
+		}
+		if (answerColumns != null) {
+			setValues(row, answerColumns, valueText, valueNumeric, valueDatetime);
+		}
+		return done;
+	}
+	
+	/**
+	 * @return the rows of the last encounter added, with the column values as text
+	 */
+	List<Object[]> finish() {
+		List<Object[]> done = new ArrayList<Object[]>(rows.values());
+		for (Object[] row : done) {
+			for (int i = 3; i < row.length; i++) {
+				row[i] = toText(row[i]);
+			}
+		}
+		rows.clear();
+		encounterId = null;
+		return done;
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void setValues(Object[] row, List<Integer> columns, String valueText, Double valueNumeric, Date valueDatetime) {
+		for (int i : columns) {
+			Comparable value = null;
+			if ("obs_value_text".equals(valueColumns[i])) {
+				value = valueText;
+			} else if ("obs_value_numeric".equals(valueColumns[i])) {
+				value = valueNumeric;
+			} else if ("obs_value_datetime".equals(valueColumns[i])) {
+				value = valueDatetime;
+			}
+			Comparable max = (Comparable) row[3 + i];
+			if (value != null && (max == null || compare(value, max) > 0)) {
+				row[3 + i] = value;
+			}
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private int compare(Comparable value, Comparable max) {
+		// the obs text columns use a case insensitive collation
+		if (value instanceof String) {
+			return String.CASE_INSENSITIVE_ORDER.compare((String) value, (String) max);
+		}
+		return value.compareTo(max);
+	}
+	
+	/**
+	 * @return the value as MySQL converts it when it is inserted into a TEXT column
+	 */
+	static String toText(Object value) {
+		if (value == null) {
+			return null;
+		} else if (value instanceof Double) {
+			return BigDecimal.valueOf((Double) value).stripTrailingZeros().toPlainString();
+		} else if (value instanceof Date) {
+			return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format((Date) value);
+		}
+		return value.toString();
+	}
+}
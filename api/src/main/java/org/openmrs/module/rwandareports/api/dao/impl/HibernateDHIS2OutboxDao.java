@@ -0,0 +1,249 @@
+package org.openmrs.module.rwandareports.api.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.openmrs.module.rwandareports.api.DHIS2OutboxEntry;
+import org.openmrs.module.rwandareports.api.dao.DHIS2OutboxDao;
+
+/**
+ * Every method runs in its own session and transaction, so that the state of an entry is committed
+ * before and after each attempt to send it, whatever the caller does next.
+ */
+public class HibernateDHIS2OutboxDao implements DHIS2OutboxDao {
+	
+	private static final String COLUMNS = "id, report_uuid, period, org_unit, payload, status, attempts, next_attempt, "
+	        + "last_error, date_created, date_sent";
+	
+	private DbSessionFactory sessionFactory;
+	
+	@Override
+	public DHIS2OutboxEntry getEntry(final String reportUuid, final String period, final String orgUnit) {
+		
+		return doInTransaction(new ReturningWork<DHIS2OutboxEntry>() {
+			
+			@Override
+			public DHIS2OutboxEntry execute(Connection connection) throws SQLException {
+				return getEntry(connection, reportUuid, period, orgUnit, false);
+			}
+		});
+	}
+	
+	@Override
+	public DHIS2OutboxEntry saveEntry(final String reportUuid, final String period, final String orgUnit,
+	        final String payload) {
+		
+		return doInTransaction(new ReturningWork<DHIS2OutboxEntry>() {
+			
+			@Override
+			public DHIS2OutboxEntry execute(Connection connection) throws SQLException {
+				Timestamp now = new Timestamp(System.currentTimeMillis());
+				DHIS2OutboxEntry entry = getEntry(connection, reportUuid, period, orgUnit, true);
+				if (entry == null) {
+					PreparedStatement ps = connection.prepareStatement("INSERT INTO rwandareports_dhis2_outbox "
+					        + "(report_uuid, period, org_unit, payload, status, attempts, next_attempt, date_created) "
+					        + "VALUES (?, ?, ?, ?, ?, 0, ?, ?)");
+					try {
+						ps.setString(1, reportUuid);
+						ps.setString(2, period);
+						ps.setString(3, orgUnit);
+						ps.setString(4, payload);
+						ps.setString(5, DHIS2OutboxEntry.PENDING);
+						ps.setTimestamp(6, now);
+						ps.setTimestamp(7, now);
+						ps.executeUpdate();
+					}
+					finally {
+						ps.close();
+					}
+				} else if (DHIS2OutboxEntry.SENT.equals(entry.getStatus()) && payload.equals(entry.getPayload())) {
+					return entry;
+				} else {
+					PreparedStatement ps = connection.prepareStatement("UPDATE rwandareports_dhis2_outbox "
+					        + "SET payload = ?, status = ?, attempts = 0, next_attempt = ?, last_error = NULL, "
+					        + "date_sent = NULL WHERE id = ?");
+					try {
+						ps.setString(1, payload);
+						ps.setString(2, DHIS2OutboxEntry.PENDING);
+						ps.setTimestamp(3, now);
+						ps.setInt(4, entry.getId());
+						ps.executeUpdate();
+					}
+					finally {
+						ps.close();
+					}
+				}
+				return getEntry(connection, reportUuid, period, orgUnit, false);
+			}
+		});
+	}
+	
+	@Override
+	public List<DHIS2OutboxEntry> getDueEntries(final int maxResults) {
+		
+		return doInTransaction(new ReturningWork<List<DHIS2OutboxEntry>>() {
+			
+			@Override
+			public List<DHIS2OutboxEntry> execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("SELECT " + COLUMNS + " FROM rwandareports_dhis2_outbox "
+				        + "WHERE status = ? AND next_attempt <= ? ORDER BY next_attempt, id LIMIT ?");
+				try {
+					ps.setString(1, DHIS2OutboxEntry.PENDING);
+					ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+					ps.setInt(3, maxResults);
+					ResultSet rs = ps.executeQuery();
+					List<DHIS2OutboxEntry> entries = new ArrayList<DHIS2OutboxEntry>();
+					while (rs.next()) {
+						entries.add(toEntry(rs));
+					}
+					return entries;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+	
+	@Override
+	public boolean claimEntry(final DHIS2OutboxEntry entry, final Date leaseUntil) {
+		
+		return doInTransaction(new ReturningWork<Boolean>() {
+			
+			@Override
+			public Boolean execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("UPDATE rwandareports_dhis2_outbox "
+				        + "SET next_attempt = ? WHERE id = ? AND status = ? AND next_attempt <= ?");
+				try {
+					ps.setTimestamp(1, new Timestamp(leaseUntil.getTime()));
+					ps.setInt(2, entry.getId());
+					ps.setString(3, DHIS2OutboxEntry.PENDING);
+					ps.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+					return ps.executeUpdate() == 1;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+	
+	@Override
+	public boolean markSent(final DHIS2OutboxEntry entry) {
+		
+		return doInTransaction(new ReturningWork<Boolean>() {
+			
+			@Override
+			public Boolean execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("UPDATE rwandareports_dhis2_outbox "
+				        + "SET status = ?, last_error = NULL, date_sent = ? WHERE id = ? AND status = ? AND payload = ?");
+				try {
+					ps.setString(1, DHIS2OutboxEntry.SENT);
+					ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+					ps.setInt(3, entry.getId());
+					ps.setString(4, DHIS2OutboxEntry.PENDING);
+					ps.setString(5, entry.getPayload());
+					return ps.executeUpdate() == 1;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+	
+	@Override
+	public void markFailed(final DHIS2OutboxEntry entry, final String error, final Date nextAttempt) {
+		
+		doInTransaction(new ReturningWork<Void>() {
+			
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("UPDATE rwandareports_dhis2_outbox "
+				        + "SET status = ?, attempts = attempts + 1, next_attempt = ?, last_error = ? "
+				        + "WHERE id = ? AND status = ? AND payload = ?");
+				try {
+					ps.setString(1, nextAttempt == null ? DHIS2OutboxEntry.FAILED : DHIS2OutboxEntry.PENDING);
+					ps.setTimestamp(2, new Timestamp(nextAttempt == null ? new Date().getTime() : nextAttempt.getTime()));
+					ps.setString(3, StringUtils.abbreviate(error, 1024));
+					ps.setInt(4, entry.getId());
+					ps.setString(5, DHIS2OutboxEntry.PENDING);
+					ps.setString(6, entry.getPayload());
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				return null;
+			}
+		});
+	}
+	
+	private DHIS2OutboxEntry getEntry(Connection connection, String reportUuid, String period, String orgUnit,
+	        boolean forUpdate) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("SELECT " + COLUMNS + " FROM rwandareports_dhis2_outbox "
+		        + "WHERE report_uuid = ? AND period = ? AND org_unit = ?" + (forUpdate ? " FOR UPDATE" : ""));
+		try {
+			ps.setString(1, reportUuid);
+			ps.setString(2, period);
+			ps.setString(3, orgUnit);
+			ResultSet rs = ps.executeQuery();
+			return rs.next() ? toEntry(rs) : null;
+		}
+		finally {
+			ps.close();
+		}
+	}
+	
+	private DHIS2OutboxEntry toEntry(ResultSet rs) throws SQLException {
+		DHIS2OutboxEntry entry = new DHIS2OutboxEntry();
+		entry.setId(rs.getInt(1));
+		entry.setReportUuid(rs.getString(2));
+		entry.setPeriod(rs.getString(3));
+		entry.setOrgUnit(rs.getString(4));
+		entry.setPayload(rs.getString(5));
+		entry.setStatus(rs.getString(6));
+		entry.setAttempts(rs.getInt(7));
+		entry.setNextAttempt(rs.getTimestamp(8));
+		entry.setLastError(rs.getString(9));
+		entry.setDateCreated(rs.getTimestamp(10));
+		entry.setDateSent(rs.getTimestamp(11));
+		return entry;
+	}
+	
+	private <T> T doInTransaction(ReturningWork<T> work) {
+		Session session = sessionFactory.getHibernateSessionFactory().openSession();
+		Transaction tx = session.beginTransaction();
+		try {
+			T result = session.doReturningWork(work);
+			tx.commit();
+			return result;
+		}
+		catch (RuntimeException e) {
+			tx.rollback();
+			throw e;
+		}
+		finally {
+			session.close();
+		}
+	}
+	
+	public DbSessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+	
+	public void setSessionFactory(DbSessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+}
@@ -1,20 +1,810 @@
 package org.openmrs.module.rwandareports.api.dao.impl;
 
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
 import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.openmrs.module.rwandareports.api.EtlCheckpoint;
+import org.openmrs.module.rwandareports.api.EtlStage;
+import org.openmrs.module.rwandareports.api.EtlStageRun;
+import org.openmrs.module.rwandareports.api.FlatTableConfig;
 import org.openmrs.module.rwandareports.api.dao.FlattenDatabaseDao;
 
 /**
+ * Every method runs in its own session and transaction, so that the chunks of the billing fact load
+ * and their checkpoints are committed as they go instead of when the whole ETL completes.
+ * 
  * @author smallGod
  * @date: 01/03/2023
  */
 public class HibernateFlattenDatabaseDao implements FlattenDatabaseDao {
 	
+	private static final String FACT_STAGE = "fact_patient_service_bill";
+	
+	/**
+	 * The tables sp_xf_system_drop_all_tables_in_schema drops before a full run recreates them
+	 */
+	private static final Pattern ETL_TABLE = Pattern.compile("^(mamba_|dim_|fact_|flat_)", Pattern.CASE_INSENSITIVE);
+	
+	private static final Pattern DEFINER = Pattern.compile("^CREATE\\s+DEFINER\\s*=\\s*\\S+\\s+", Pattern.CASE_INSENSITIVE);
+	
+	/**
+	 * The most rows a flat table insert writes at once, fewer for the tables with many columns
+	 */
+	private static final int FLAT_TABLE_INSERT_ROWS = 500;
+	
+	private static final int MAX_PARAMETERS = 60000;
+	
 	private DbSessionFactory sessionFactory;
 	
 	@Override
-	public void executeFlatteningScript() {
+	public Long runStage(final EtlStage stage, final String schema) {
+		
+		return doInTransaction(new ReturningWork<Long>() {
+			
+			@Override
+			public Long execute(Connection connection) throws SQLException {
+				Long rowsBefore = countRows(connection, schema, stage.getTable());
+				for (String procedure : stage.getProcedures()) {
+					call(connection, "CALL " + qualify(schema, procedure) + "()");
+				}
+				Long rowsAfter = countRows(connection, schema, stage.getTable());
+				if (rowsAfter == null) {
+					return null;
+				}
+				return rowsBefore == null ? rowsAfter : rowsAfter - rowsBefore;
+			}
+		});
+	}
+	
+	@Override
+	public String prepareShadowSchema(final String schema) {
+		
+		return doInTransaction(new ReturningWork<String>() {
+			
+			@Override
+			public String execute(Connection connection) throws SQLException {
+				String database = (String) queryForObject(connection, "SELECT DATABASE()");
+				String shadow = StringUtils.isBlank(schema) ? database + "_mamba_shadow" : schema.trim();
+				if (shadow.equals(database)) {
+					return null;
+				}
+				
+				PreparedStatement ps = connection.prepareStatement("SELECT DEFAULT_CHARACTER_SET_NAME, "
+				        + "DEFAULT_COLLATION_NAME FROM information_schema.SCHEMATA WHERE SCHEMA_NAME = ?");
+				try {
+					ps.setString(1, database);
+					ResultSet rs = ps.executeQuery();
+					rs.next();
+					execute(connection, "CREATE DATABASE IF NOT EXISTS " + quote(shadow) + " CHARACTER SET "
+					        + rs.getString(1) + " COLLATE " + rs.getString(2));
+				}
+				finally {
+					ps.close();
+				}
+				
+				// the procedures and tables may have changed since the previous run
+				for (String view : getTables(connection, shadow, "VIEW")) {
+					execute(connection, "DROP VIEW " + qualify(shadow, view));
+				}
+				for (String[] routine : getRoutines(connection, shadow)) {
+					execute(connection, "DROP " + routine[1] + " " + qualify(shadow, routine[0]));
+				}
+				
+				for (String table : getTables(connection, database, null)) {
+					if (!ETL_TABLE.matcher(table).find()) {
+						execute(connection, "CREATE VIEW " + qualify(shadow, table) + " AS SELECT * FROM "
+						        + qualify(database, table));
+					}
+				}
+				copyRoutines(connection, database, shadow);
+				return shadow;
+			}
+		});
+	}
+	
+	@Override
+	public void swapShadowSchema(final String schema) {
+		
+		doInTransaction(new ReturningWork<Void>() {
+			
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				String database = (String) queryForObject(connection, "SELECT DATABASE()");
+				List<String> current = getEtlTables(connection, database);
+				List<String> built = getEtlTables(connection, schema);
+				if (built.isEmpty()) {
+					throw new SQLException("The shadow schema " + schema + " has no tables to swap in");
+				}
+				
+				List<String> renames = new ArrayList<String>();
+				for (String table : built) {
+					if (current.contains(table)) {
+						String swap = quote(schema) + "." + quote("rwandareports_swap_" + renames.size());
+						renames.add(qualify(database, table) + " TO " + swap);
+						renames.add(qualify(schema, table) + " TO " + qualify(database, table));
+						renames.add(swap + " TO " + qualify(schema, table));
+					} else {
+						renames.add(qualify(schema, table) + " TO " + qualify(database, table));
+					}
+				}
+				for (String table : current) {
+					if (!built.contains(table)) {
+						renames.add(qualify(database, table) + " TO " + qualify(schema, table));
+					}
+				}
+				// a single statement, the readers see either all the old or all the new tables
+				execute(connection, "RENAME TABLE " + StringUtils.join(renames, ", "));
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public long pivotFlatTable(final FlatTableConfig flatTable, final String schema) {
+		
+		return doInTransaction(new ReturningWork<Long>() {
+			
+			@Override
+			public Long execute(final Connection writeConnection) throws SQLException {
+				final List<FlatEncounterPivot.Column> columns = getFlatTableColumns(writeConnection, flatTable, schema);
+				String table = qualify(schema, flatTable.getFlatTableName());
+				String previous = qualify(schema, flatTable.getFlatTableName() + "_previous");
+				// the rows are committed in batches into a copy of the table that replaces it once it is filled, a
+				// failure leaves the table as it was instead of partly filled for the reports reading it
+				final String pivoted = qualify(schema, flatTable.getFlatTableName() + "_pivoted");
+				final int rowsPerInsert = Math.max(1,
+				    Math.min(FLAT_TABLE_INSERT_ROWS, MAX_PARAMETERS / (3 + columns.size())));
+				execute(writeConnection, "DROP TABLE IF EXISTS " + pivoted);
+				execute(writeConnection, "CREATE TABLE " + pivoted + " LIKE " + table);
+				
+				long inserted;
+				try {
+					inserted = pivotInto(pivoted, writeConnection, columns, rowsPerInsert);
+				}
+				catch (RuntimeException e) {
+					execute(writeConnection, "DROP TABLE IF EXISTS " + pivoted);
+					throw e;
+				}
+				
+				execute(writeConnection, "DROP TABLE IF EXISTS " + previous);
+				execute(writeConnection, "RENAME TABLE " + table + " TO " + previous + ", " + pivoted + " TO " + table);
+				execute(writeConnection, "DROP TABLE " + previous);
+				return inserted;
+			}
+			
+			private long pivotInto(final String table, final Connection writeConnection,
+			        final List<FlatEncounterPivot.Column> columns, final int rowsPerInsert) {
+				// a streaming result set holds its connection until it is closed, the obs are read on another one
+				return doInTransaction(new ReturningWork<Long>() {
+					
+					@Override
+					public Long execute(Connection readConnection) throws SQLException {
+						FlatEncounterPivot pivot = new FlatEncounterPivot(columns);
+						List<Object[]> rows = new ArrayList<Object[]>();
+						long inserted = 0;
+						
+						PreparedStatement ps = readConnection.prepareStatement("SELECT encounter_id, person_id, "
+						        + "encounter_datetime, obs_question_uuid, obs_value_coded_uuid, obs_value_text, "
+						        + "obs_value_numeric, obs_value_datetime FROM " + qualify(schema, "mamba_z_encounter_obs")
+						        + " WHERE encounter_type_uuid = ? ORDER BY encounter_id", ResultSet.TYPE_FORWARD_ONLY,
+						    ResultSet.CONCUR_READ_ONLY);
+						try {
+							// MySQL Connector/J only streams the rows with this fetch size, instead of reading them all
+							ps.setFetchSize(Integer.MIN_VALUE);
+							ps.setString(1, flatTable.getEncounterTypeUuid());
+							ResultSet rs = ps.executeQuery();
+							while (rs.next()) {
+								Double valueNumeric = rs.getDouble(7);
+								if (rs.wasNull()) {
+									valueNumeric = null;
+								}
+								rows.addAll(pivot.add(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3), rs.getString(4),
+								    rs.getString(5), rs.getString(6), valueNumeric, rs.getTimestamp(8)));
+								if (rows.size() >= rowsPerInsert) {
+									inserted += insertFlatRows(writeConnection, table, columns, rows);
+									rows.clear();
+								}
+							}
+						}
+						finally {
+							ps.close();
+						}
+						
+						rows.addAll(pivot.finish());
+						if (!rows.isEmpty()) {
+							inserted += insertFlatRows(writeConnection, table, columns, rows);
+						}
+						return inserted;
+					}
+				});
+			}
+		});
+	}
+	
+	@Override
+	public boolean isFlattened() {
+		
+		return doInTransaction(new ReturningWork<Boolean>() {
+			
+			@Override
+			public Boolean execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM information_schema.TABLES "
+				        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'mamba_fact_patient_service_bill'");
+				try {
+					ResultSet rs = ps.executeQuery();
+					return rs.next() && rs.getInt(1) > 0;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+	
+	@Override
+	public EtlCheckpoint getUnfinishedFactLoad() {
+		
+		return doInTransaction(new ReturningWork<EtlCheckpoint>() {
+			
+			@Override
+			public EtlCheckpoint execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("SELECT last_key, end_key, min_closing_date, "
+				        + "rows_loaded, started_on, target_schema, incremental, resume_attempts "
+				        + "FROM rwandareports_etl_checkpoint WHERE stage = ?");
+				try {
+					ps.setString(1, FACT_STAGE);
+					ResultSet rs = ps.executeQuery();
+					if (!rs.next()) {
+						return null;
+					}
+					return new EtlCheckpoint(FACT_STAGE, rs.getInt(1), rs.getInt(2), rs.getDate(3), rs.getLong(4),
+					        rs.getTimestamp(5), rs.getString(6), rs.getBoolean(7), rs.getInt(8));
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+	
+	@Override
+	public EtlCheckpoint startFactLoad(final boolean incremental, final String schema) {
+		
+		return doInTransaction(new ReturningWork<EtlCheckpoint>() {
+			
+			@Override
+			public EtlCheckpoint execute(Connection connection) throws SQLException {
+				String factTable = qualify(schema, "mamba_fact_patient_service_bill");
+				Date minClosingDate = null;
+				if (incremental) {
+					// bills closed on or after the last closing date already loaded are reloaded
+					minClosingDate = (Date) queryForObject(connection, "SELECT MAX(closing_date) FROM " + factTable);
+					if (minClosingDate != null) {
+						PreparedStatement ps = connection.prepareStatement("DELETE FROM " + factTable
+						        + " WHERE closing_date >= ?");
+						try {
+							ps.setDate(1, new java.sql.Date(minClosingDate.getTime()));
+							ps.executeUpdate();
+						}
+						finally {
+							ps.close();
+						}
+					}
+				} else {
+					call(connection, "CALL " + qualify(schema, "sp_mamba_fact_patient_service_bill_create") + "()");
+				}
+				
+				Number endKey = (Number) queryForObject(connection, "SELECT COALESCE(MAX(global_bill_id), 0) FROM "
+				        + qualify(schema, "mamba_dim_global_bill"));
+				EtlCheckpoint checkpoint = new EtlCheckpoint(FACT_STAGE, 0, endKey.intValue(), minClosingDate, 0,
+				        new Date(), schema, incremental, 0);
+				
+				PreparedStatement delete = connection
+				        .prepareStatement("DELETE FROM rwandareports_etl_checkpoint WHERE stage = ?");
+				PreparedStatement insert = connection.prepareStatement("INSERT INTO rwandareports_etl_checkpoint "
+				        + "(stage, last_key, end_key, min_closing_date, rows_loaded, started_on, target_schema, "
+				        + "incremental, resume_attempts) VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0)");
+				try {
+					delete.setString(1, FACT_STAGE);
+					delete.executeUpdate();
+					
+					insert.setString(1, FACT_STAGE);
+					insert.setInt(2, checkpoint.getLastKey());
+					insert.setInt(3, checkpoint.getEndKey());
+					setDate(insert, 4, minClosingDate);
+					insert.setLong(5, 0);
+					insert.setTimestamp(6, new Timestamp(checkpoint.getStartedOn().getTime()));
+					insert.setString(7, schema);
+					insert.setBoolean(8, incremental);
+					insert.executeUpdate();
+				}
+				finally {
+					delete.close();
+					insert.close();
+				}
+				return checkpoint;
+			}
+		});
+	}
+	
+	@Override
+	public int loadFactChunk(final EtlCheckpoint checkpoint, final int chunkSize) {
+		
+		return doInTransaction(new ReturningWork<Integer>() {
+			
+			@Override
+			public Integer execute(Connection connection) throws SQLException {
+				int start = checkpoint.getLastKey() + 1;
+				int end = (int) Math.min((long) checkpoint.getLastKey() + chunkSize, checkpoint.getEndKey());
+				
+				int rows;
+				CallableStatement cs = connection.prepareCall("{call "
+				        + qualify(checkpoint.getSchema(), "sp_mamba_fact_patient_service_bill_insert_range") + "(?, ?, ?)}");
+				try {
+					cs.setInt(1, start);
+					cs.setInt(2, end);
+					setDate(cs, 3, checkpoint.getMinClosingDate());
+					rows = Math.max(cs.executeUpdate(), 0);
+				}
+				finally {
+					cs.close();
+				}
+				
+				PreparedStatement ps = connection.prepareStatement("UPDATE rwandareports_etl_checkpoint "
+				        + "SET last_key = ?, rows_loaded = rows_loaded + ?, updated_on = ? WHERE stage = ?");
+				try {
+					ps.setInt(1, end);
+					ps.setLong(2, rows);
+					ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+					ps.setString(4, checkpoint.getStage());
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				
+				checkpoint.setLastKey(end);
+				checkpoint.setRowsLoaded(checkpoint.getRowsLoaded() + rows);
+				return rows;
+			}
+		});
+	}
+	
+	@Override
+	public void finishFactLoad(final EtlCheckpoint checkpoint) {
+		
+		doInTransaction(new ReturningWork<Void>() {
+			
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				call(connection, "CALL " + qualify(checkpoint.getSchema(), "sp_mamba_fact_patient_service_bill_update")
+				        + "()");
+				
+				PreparedStatement ps = connection
+				        .prepareStatement("DELETE FROM rwandareports_etl_checkpoint WHERE stage = ?");
+				try {
+					ps.setString(1, checkpoint.getStage());
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void saveFactLoadResumeAttempt(final EtlCheckpoint checkpoint) {
+		
+		doInTransaction(new ReturningWork<Void>() {
+			
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("UPDATE rwandareports_etl_checkpoint "
+				        + "SET resume_attempts = resume_attempts + 1, updated_on = ? WHERE stage = ?");
+				try {
+					ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+					ps.setString(2, checkpoint.getStage());
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				checkpoint.setResumeAttempts(checkpoint.getResumeAttempts() + 1);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void abandonFactLoad(final EtlCheckpoint checkpoint) {
+		
+		doInTransaction(new ReturningWork<Void>() {
+			
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection
+				        .prepareStatement("DELETE FROM rwandareports_etl_checkpoint WHERE stage = ?");
+				try {
+					ps.setString(1, checkpoint.getStage());
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void saveStageRun(final EtlStageRun stageRun) {
+		
+		doInTransaction(new ReturningWork<Void>() {
+			
+			@Override
+			public Void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("INSERT INTO rwandareports_etl_run_history "
+				        + "(run_uuid, incremental, stage, started_on, duration_ms, rows_affected, status, error) "
+				        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+				try {
+					ps.setString(1, stageRun.getRunUuid());
+					ps.setBoolean(2, stageRun.isIncremental());
+					ps.setString(3, stageRun.getStage());
+					ps.setTimestamp(4, new Timestamp(stageRun.getStartedOn().getTime()));
+					ps.setLong(5, stageRun.getDurationMillis());
+					if (stageRun.getRows() == null) {
+						ps.setNull(6, Types.BIGINT);
+					} else {
+						ps.setLong(6, stageRun.getRows());
+					}
+					ps.setString(7, stageRun.getStatus());
+					ps.setString(8, StringUtils.abbreviate(stageRun.getError(), 1024));
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public List<EtlStageRun> getStageRuns(final int maxResults) {
+		
+		return doInTransaction(new ReturningWork<List<EtlStageRun>>() {
+			
+			@Override
+			public List<EtlStageRun> execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("SELECT id, run_uuid, incremental, stage, started_on, "
+				        + "duration_ms, rows_affected, status, error FROM rwandareports_etl_run_history "
+				        + "ORDER BY started_on DESC, id DESC LIMIT ?");
+				try {
+					ps.setInt(1, maxResults);
+					ResultSet rs = ps.executeQuery();
+					List<EtlStageRun> stageRuns = new ArrayList<EtlStageRun>();
+					while (rs.next()) {
+						EtlStageRun stageRun = new EtlStageRun();
+						stageRun.setId(rs.getInt(1));
+						stageRun.setRunUuid(rs.getString(2));
+						stageRun.setIncremental(rs.getBoolean(3));
+						stageRun.setStage(rs.getString(4));
+						stageRun.setStartedOn(rs.getTimestamp(5));
+						stageRun.setDurationMillis(rs.getLong(6));
+						long rows = rs.getLong(7);
+						stageRun.setRows(rs.wasNull() ? null : rows);
+						stageRun.setStatus(rs.getString(8));
+						stageRun.setError(rs.getString(9));
+						stageRuns.add(stageRun);
+					}
+					return stageRuns;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+	
+	private <T> T doInTransaction(ReturningWork<T> work) {
+		Session session = sessionFactory.getHibernateSessionFactory().openSession();
+		Transaction tx = session.beginTransaction();
+		try {
+			T result = session.doReturningWork(work);
+			tx.commit();
+			return result;
+		}
+		catch (RuntimeException e) {
+			tx.rollback();
+			throw e;
+		}
+		finally {
+			session.close();
+		}
+	}
+	
+	private void call(Connection connection, String sql) throws SQLException {
+		CallableStatement cs = connection.prepareCall(sql);
+		try {
+			cs.execute();
+		}
+		finally {
+			cs.close();
+		}
+	}
+	
+	private void execute(Connection connection, String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * @return the columns of the config that the flat table has, with the datatype of their concept and
+	 *         whether it is an answer, in the order of the config
+	 */
+	private List<FlatEncounterPivot.Column> getFlatTableColumns(Connection connection, FlatTableConfig flatTable,
+	        String schema) throws SQLException {
+		List<FlatEncounterPivot.Column> columns = new ArrayList<FlatEncounterPivot.Column>();
+		if (flatTable.getTableColumns().isEmpty()) {
+			return columns;
+		}
+		
+		Set<String> tableColumns = new HashSet<String>();
+		PreparedStatement ps = connection.prepareStatement("SELECT COLUMN_NAME FROM information_schema.COLUMNS "
+		        + "WHERE TABLE_SCHEMA = COALESCE(?, DATABASE()) AND TABLE_NAME = ?");
+		try {
+			ps.setString(1, schema);
+			ps.setString(2, flatTable.getFlatTableName());
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				tableColumns.add(rs.getString(1));
+			}
+		}
+		finally {
+			ps.close();
+		}
+		if (tableColumns.isEmpty()) {
+			throw new SQLException("The flat table " + flatTable.getFlatTableName() + " does not exist");
+		}
+		
+		Map<String, Object[]> concepts = new HashMap<String, Object[]>();
+		ps = connection.prepareStatement("SELECT c.uuid, c.datatype, EXISTS (SELECT 1 FROM "
+		        + qualify(schema, "mamba_dim_concept_answer") + " ca WHERE ca.answer_concept = c.concept_id) FROM "
+		        + qualify(schema, "mamba_dim_concept") + " c WHERE c.uuid IN ("
+		        + StringUtils.repeat("?", ", ", flatTable.getTableColumns().size()) + ")");
+		try {
+			int index = 1;
+			for (String conceptUuid : flatTable.getTableColumns().values()) {
+				ps.setString(index++, conceptUuid);
+			}
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				concepts.put(rs.getString(1), new Object[] { rs.getString(2), rs.getBoolean(3) });
+			}
+		}
+		finally {
+			ps.close();
+		}
+		
+		for (Map.Entry<String, String> tableColumn : flatTable.getTableColumns().entrySet()) {
+			Object[] concept = concepts.get(tableColumn.getValue());
+			if (concept != null && tableColumns.contains(tableColumn.getKey())) {
+				columns.add(new FlatEncounterPivot.Column(tableColumn.getKey(), tableColumn.getValue(),
+				        (Boolean) concept[1], (String) concept[0]));
+			}
+		}
+		return columns;
+	}
+	
+	/**
+	 * Inserts the rows with a single statement and commits them, so that filling a large table does not
+	 * build up one huge transaction
+	 */
+	private int insertFlatRows(Connection connection, String table, List<FlatEncounterPivot.Column> columns,
+	        List<Object[]> rows) throws SQLException {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(
+		    " (encounter_id, client_id, encounter_datetime");
+		for (FlatEncounterPivot.Column column : columns) {
+			sql.append(", ").append(quote(column.getLabel()));
+		}
+		sql.append(") VALUES ");
+		String values = "(" + StringUtils.repeat("?", ", ", 3 + columns.size()) + ")";
+		for (int i = 0; i < rows.size(); i++) {
+			sql.append(i == 0 ? "" : ", ").append(values);
+		}
 		
-		sessionFactory.getCurrentSession().createSQLQuery("CALL sp_mamba_data_processing_etl()").executeUpdate();
+		PreparedStatement ps = connection.prepareStatement(sql.toString());
+		try {
+			int index = 1;
+			for (Object[] row : rows) {
+				ps.setInt(index++, (Integer) row[0]);
+				ps.setInt(index++, (Integer) row[1]);
+				ps.setTimestamp(index++, new Timestamp(((Date) row[2]).getTime()));
+				for (int i = 3; i < row.length; i++) {
+					ps.setString(index++, (String) row[i]);
+				}
+			}
+			int inserted = ps.executeUpdate();
+			connection.commit();
+			return inserted;
+		}
+		finally {
+			ps.close();
+		}
+	}
+	
+	/**
+	 * Creates the procedures and functions of the database in the shadow schema, the routines are
+	 * associated with the schema they are created in, so the tables they name are resolved there
+	 */
+	private void copyRoutines(Connection connection, String database, String shadow) throws SQLException {
+		String sqlMode = (String) queryForObject(connection, "SELECT @@SESSION.sql_mode");
+		String catalog = connection.getCatalog();
+		connection.setCatalog(shadow);
+		try {
+			for (String[] routine : getRoutines(connection, database)) {
+				Statement statement = connection.createStatement();
+				try {
+					ResultSet rs = statement.executeQuery("SHOW CREATE " + routine[1] + " " + qualify(database, routine[0]));
+					if (!rs.next() || rs.getString(3) == null) {
+						throw new SQLException("Unable to read the definition of " + routine[0]);
+					}
+					// created with the sql mode it was defined with, by the current user
+					setSqlMode(connection, rs.getString(2));
+					execute(connection, DEFINER.matcher(rs.getString(3)).replaceFirst("CREATE "));
+				}
+				finally {
+					statement.close();
+				}
+			}
+		}
+		finally {
+			setSqlMode(connection, sqlMode);
+			connection.setCatalog(catalog);
+		}
+	}
+	
+	private void setSqlMode(Connection connection, String sqlMode) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("SET SESSION sql_mode = ?");
+		try {
+			ps.setString(1, sqlMode);
+			ps.execute();
+		}
+		finally {
+			ps.close();
+		}
+	}
+	
+	/**
+	 * @param tableType BASE TABLE or VIEW, or null for both
+	 */
+	private List<String> getTables(Connection connection, String schema, String tableType) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("SELECT TABLE_NAME FROM information_schema.TABLES "
+		        + "WHERE TABLE_SCHEMA = ?" + (tableType == null ? "" : " AND TABLE_TYPE = ?"));
+		try {
+			ps.setString(1, schema);
+			if (tableType != null) {
+				ps.setString(2, tableType);
+			}
+			ResultSet rs = ps.executeQuery();
+			List<String> tables = new ArrayList<String>();
+			while (rs.next()) {
+				tables.add(rs.getString(1));
+			}
+			return tables;
+		}
+		finally {
+			ps.close();
+		}
+	}
+	
+	private List<String> getEtlTables(Connection connection, String schema) throws SQLException {
+		List<String> tables = new ArrayList<String>();
+		for (String table : getTables(connection, schema, "BASE TABLE")) {
+			if (ETL_TABLE.matcher(table).find()) {
+				tables.add(table);
+			}
+		}
+		return tables;
+	}
+	
+	/**
+	 * @return the name and type, PROCEDURE or FUNCTION, of the routines of the schema
+	 */
+	private List<String[]> getRoutines(Connection connection, String schema) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("SELECT ROUTINE_NAME, ROUTINE_TYPE "
+		        + "FROM information_schema.ROUTINES WHERE ROUTINE_SCHEMA = ?");
+		try {
+			ps.setString(1, schema);
+			ResultSet rs = ps.executeQuery();
+			List<String[]> routines = new ArrayList<String[]>();
+			while (rs.next()) {
+				routines.add(new String[] { rs.getString(1), rs.getString(2) });
+			}
+			return routines;
+		}
+		finally {
+			ps.close();
+		}
+	}
+	
+	/**
+	 * @return the row count of the table, 0 if it does not exist (yet), or null if no table is given
+	 */
+	private Long countRows(Connection connection, String schema, String table) throws SQLException {
+		if (table == null) {
+			return null;
+		}
+		PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM information_schema.TABLES "
+		        + "WHERE TABLE_SCHEMA = COALESCE(?, DATABASE()) AND TABLE_NAME = ?");
+		try {
+			ps.setString(1, schema);
+			ps.setString(2, table);
+			ResultSet rs = ps.executeQuery();
+			if (!rs.next() || rs.getInt(1) == 0) {
+				return 0L;
+			}
+		}
+		finally {
+			ps.close();
+		}
+		return ((Number) queryForObject(connection, "SELECT COUNT(*) FROM " + qualify(schema, table))).longValue();
+	}
+	
+	/**
+	 * @return the name in the schema, or the name alone if no schema is given
+	 */
+	private String qualify(String schema, String name) {
+		return schema == null ? quote(name) : quote(schema) + "." + quote(name);
+	}
+	
+	private String quote(String identifier) {
+		return "`" + identifier.replace("`", "``") + "`";
+	}
+	
+	private Object queryForObject(Connection connection, String sql) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement(sql);
+		try {
+			ResultSet rs = ps.executeQuery();
+			return rs.next() ? rs.getObject(1) : null;
+		}
+		finally {
+			ps.close();
+		}
+	}
+	
+	private void setDate(PreparedStatement ps, int index, Date date) throws SQLException {
+		if (date == null) {
+			ps.setNull(index, Types.DATE);
+		} else {
+			ps.setDate(index, new java.sql.Date(date.getTime()));
+		}
 	}
 	
 	public DbSessionFactory getSessionFactory() {
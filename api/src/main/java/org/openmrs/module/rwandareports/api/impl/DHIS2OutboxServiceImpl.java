@@ -0,0 +1,167 @@
+package org.openmrs.module.rwandareports.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.rwandareports.api.DHIS2OutboxEntry;
+import org.openmrs.module.rwandareports.api.DHIS2OutboxService;
+import org.openmrs.module.rwandareports.api.dao.DHIS2OutboxDao;
+import org.openmrs.module.rwandareports.dhis2.model.DHISDataValueSet;
+import org.openmrs.module.rwandareports.dhis2.util.DHIS2Util;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The dao commits the state of the entries itself, before and after every attempt
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DHIS2OutboxServiceImpl extends BaseOpenmrsService implements DHIS2OutboxService {
+	
+	private static final int PAGE_SIZE = 100;
+	
+	/**
+	 * How long an entry taken for sending is kept from other senders
+	 */
+	private static final long LEASE_MILLIS = 10 * 60 * 1000;
+	
+	protected Log log = LogFactory.getLog(this.getClass());
+	
+	private DHIS2OutboxDao dao;
+	
+	private ObjectMapper mapper = new ObjectMapper();
+	
+	public void setDao(DHIS2OutboxDao dao) {
+		this.dao = dao;
+	}
+	
+	@Override
+	public DHIS2OutboxEntry getEntry(String reportUuid, String period, String orgUnit) {
+		return dao.getEntry(reportUuid, period, orgUnit);
+	}
+	
+	@Override
+	public DHIS2OutboxEntry enqueue(String reportUuid, DHISDataValueSet dataValueSet) {
+		String payload;
+		// the complete date changes every day, it would make an unchanged data value set look new
+		dataValueSet.setCompleteData(null);
+		try {
+			payload = mapper.writeValueAsString(dataValueSet);
+		}
+		catch (Exception e) {
+			throw new APIException("Unable to serialize the data value set of " + dataValueSet.getOrgUnit(), e);
+		}
+		return dao.saveEntry(reportUuid, dataValueSet.getPeriod(), dataValueSet.getOrgUnit(), payload);
+	}
+	
+	@Override
+	public boolean send(DHIS2OutboxEntry entry) {
+		return send(Collections.singletonList(entry)) == 1;
+	}
+	
+	@Override
+	public int sendPending() {
+		int sent = 0;
+		List<DHIS2OutboxEntry> entries;
+		do {
+			// entries that are sent, fail or are taken by another sender are no longer due
+			entries = dao.getDueEntries(PAGE_SIZE);
+			sent += send(entries);
+		} while (entries.size() == PAGE_SIZE);
+		return sent;
+	}
+	
+	/**
+	 * Sends the entries no other sender has taken, the data value sets of the same DHIS2 data set in a
+	 * single request, and records the outcome on every entry
+	 * 
+	 * @return the number of entries sent
+	 */
+	private int send(List<DHIS2OutboxEntry> entries) {
+		Date leaseUntil = new Date(System.currentTimeMillis() + LEASE_MILLIS);
+		String completeDate = DHIS2Util.getCompleteDate(new Date());
+		Map<String, Map<DHIS2OutboxEntry, DHISDataValueSet>> batches =
+		        new LinkedHashMap<String, Map<DHIS2OutboxEntry, DHISDataValueSet>>();
+		for (DHIS2OutboxEntry entry : entries) {
+			if (!dao.claimEntry(entry, leaseUntil)) {
+				continue;
+			}
+			
+			DHISDataValueSet dataValueSet;
+			try {
+				dataValueSet = mapper.readValue(entry.getPayload(), DHISDataValueSet.class);
+			}
+			catch (Exception e) {
+				markFailed(entry, e);
+				continue;
+			}
+			dataValueSet.setCompleteData(completeDate);
+			Map<DHIS2OutboxEntry, DHISDataValueSet> batch = batches.get(dataValueSet.getDataSet());
+			if (batch == null) {
+				batch = new LinkedHashMap<DHIS2OutboxEntry, DHISDataValueSet>();
+				batches.put(dataValueSet.getDataSet(), batch);
+			}
+			batch.put(entry, dataValueSet);
+		}
+		
+		int sent = 0;
+		for (Map<DHIS2OutboxEntry, DHISDataValueSet> batch : batches.values()) {
+			try {
+				DHIS2Util.pushDataValueSets(new ArrayList<DHISDataValueSet>(batch.values()));
+			}
+			catch (Exception e) {
+				for (DHIS2OutboxEntry entry : batch.keySet()) {
+					markFailed(entry, e);
+				}
+				continue;
+			}
+			
+			for (DHIS2OutboxEntry entry : batch.keySet()) {
+				log.info("Sent the data values of " + entry.getOrgUnit() + " for " + entry.getPeriod() + " to DHIS2");
+				if (!dao.markSent(entry)) {
+					log.info("The data values of " + entry.getOrgUnit() + " for " + entry.getPeriod()
+					        + " changed while they were sent, the new ones are sent next");
+				}
+				sent++;
+			}
+		}
+		return sent;
+	}
+	
+	/**
+	 * Records the failed attempt and schedules the next one, until "reports.DHIS2PushAttempts" is
+	 * reached
+	 */
+	private void markFailed(DHIS2OutboxEntry entry, Exception e) {
+		int attempts = entry.getAttempts() + 1;
+		int maxAttempts = getIntegerGlobalProperty("reports.DHIS2PushAttempts", 3);
+		Date nextAttempt = null;
+		if (attempts < maxAttempts) {
+			long delay = (long) getIntegerGlobalProperty("reports.DHIS2PushRetryDelaySeconds", 30) << (attempts - 1);
+			nextAttempt = new Date(System.currentTimeMillis() + delay * 1000);
+		}
+		dao.markFailed(entry, e.getMessage(), nextAttempt);
+		log.error("Unable to send the data values of " + entry.getOrgUnit() + " for " + entry.getPeriod()
+		        + " to DHIS2 (attempt " + attempts + " of " + maxAttempts + ")"
+		        + (nextAttempt == null ? "" : ", retrying after " + nextAttempt), e);
+	}
+	
+	private int getIntegerGlobalProperty(String globalPropertyName, int defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (Exception e) {
+			return defaultValue;
+		}
+	}
+}
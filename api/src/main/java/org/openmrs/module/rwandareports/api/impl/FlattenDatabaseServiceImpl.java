@@ -1,8 +1,37 @@
 package org.openmrs.module.rwandareports.api.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.rwandareports.api.EtlCheckpoint;
+import org.openmrs.module.rwandareports.api.EtlStage;
+import org.openmrs.module.rwandareports.api.EtlStageRun;
+import org.openmrs.module.rwandareports.api.FlatTableConfig;
 import org.openmrs.module.rwandareports.api.FlattenDatabaseService;
 import org.openmrs.module.rwandareports.api.dao.FlattenDatabaseDao;
+import org.openmrs.module.rwandareports.util.GlobalPropertiesManagement;
+import org.openmrs.util.OpenmrsClassLoader;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -11,14 +40,297 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class FlattenDatabaseServiceImpl extends BaseOpenmrsService implements FlattenDatabaseService {
 	
+	private static final int DEFAULT_FACT_LOAD_CHUNK_SIZE = 5000;
+	
+	private static final int DEFAULT_ETL_CONCURRENCY = 4;
+	
+	private static final int DEFAULT_FACT_LOAD_RESUME_ATTEMPTS = 3;
+	
+	private static final String FACT_STAGE = "fact_patient_service_bill";
+	
+	private static final String SHADOW_SCHEMA_STAGE = "shadow_schema";
+	
+	private static final String SWAP_STAGE = "swap";
+	
+	protected Log log = LogFactory.getLog(this.getClass());
+	
 	private FlattenDatabaseDao dao;
 	
 	public void setDao(FlattenDatabaseDao dao) {
 		this.dao = dao;
 	}
 	
+	/**
+	 * The dao commits each stage and each chunk of the fact load itself. The tables are built in a
+	 * shadow schema and swapped in once they are all loaded, the reports keep reading the previous
+	 * tables until then.
+	 */
 	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public void flattenDatabase() {
-		dao.executeFlatteningScript();
+		String runUuid = UUID.randomUUID().toString();
+		resumeFactLoad(runUuid);
+		String schema = prepareShadowSchema(runUuid);
+		runStages(runUuid, false, schema, EtlStage.getFullRunStages(getJavaPivotTables()));
+		EtlCheckpoint checkpoint = dao.startFactLoad(false, schema);
+		loadFact(runUuid, false, checkpoint);
+		swapShadowSchema(runUuid, checkpoint.getSchema());
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void flattenDatabaseIncrementally() {
+		String runUuid = UUID.randomUUID().toString();
+		resumeFactLoad(runUuid);
+		if (!dao.isFlattened()) {
+			flattenDatabase();
+			return;
+		}
+		runStages(runUuid, true, null, EtlStage.getIncrementalRunStages());
+		loadFact(runUuid, true, dao.startFactLoad(true, null));
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<EtlStageRun> getEtlStageRuns(int maxResults) {
+		return dao.getStageRuns(maxResults);
+	}
+	
+	/**
+	 * Runs every stage as soon as the stages it depends on are done, on up to "reports.mambaEtlConcurrency"
+	 * threads, the dao runs each of them on its own connection. After a stage fails no other stage is
+	 * started, the ones running are waited for before the failure is thrown.
+	 */
+	private void runStages(final String runUuid, final boolean incremental, final String schema, List<EtlStage> stages) {
+		int concurrency = getPositiveIntegerGlobalProperty(GlobalPropertiesManagement.MAMBA_ETL_CONCURRENCY,
+		    DEFAULT_ETL_CONCURRENCY);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, stages.size()));
+		CompletionService<EtlStage> completionService = new ExecutorCompletionService<EtlStage>(executor);
+		List<EtlStage> waiting = new ArrayList<EtlStage>(stages);
+		Set<String> done = new HashSet<String>();
+		int running = 0;
+		RuntimeException failure = null;
+		try {
+			while (true) {
+				for (Iterator<EtlStage> i = waiting.iterator(); failure == null && i.hasNext();) {
+					final EtlStage stage = i.next();
+					if (done.containsAll(stage.getDependencies())) {
+						i.remove();
+						running++;
+						completionService.submit(new Callable<EtlStage>() {
+							
+							@Override
+							public EtlStage call() {
+								runStage(runUuid, incremental, schema, stage);
+								return stage;
+							}
+						});
+					}
+				}
+				if (running == 0) {
+					break;
+				}
+				
+				try {
+					done.add(completionService.take().get().getName());
+				}
+				catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+						        : new APIException("Unable to run the MambaETL stage", e.getCause());
+					}
+				}
+				running--;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while running the MambaETL stages", e);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		
+		if (failure != null) {
+			throw failure;
+		}
+		if (!waiting.isEmpty()) {
+			throw new APIException("The MambaETL stage " + waiting.get(0).getName() + " depends on "
+			        + waiting.get(0).getDependencies() + ", which are not all part of the run");
+		}
+	}
+	
+	private void runStage(String runUuid, boolean incremental, String schema, EtlStage stage) {
+		long startTime = System.currentTimeMillis();
+		try {
+			Long rows = stage.getFlatTable() != null ? dao.pivotFlatTable(stage.getFlatTable(), schema) : dao.runStage(
+			    stage, schema);
+			saveStageRun(runUuid, incremental, stage.getName(), startTime, rows, null);
+		}
+		catch (RuntimeException e) {
+			saveStageRun(runUuid, incremental, stage.getName(), startTime, null, e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Completes the billing fact load of a previous run that failed part way, as the kind of load it
+	 * was started as, before the run goes on with its own work. The flattening and the dimensions it
+	 * needs were done before it started. A load that was already resumed
+	 * "reports.mambaFactLoadResumeAttempts" times is abandoned instead, the run then starts a new one.
+	 */
+	private void resumeFactLoad(String runUuid) {
+		EtlCheckpoint checkpoint = dao.getUnfinishedFactLoad();
+		if (checkpoint == null) {
+			return;
+		}
+		int maxAttempts = getPositiveIntegerGlobalProperty(GlobalPropertiesManagement.MAMBA_FACT_LOAD_RESUME_ATTEMPTS,
+		    DEFAULT_FACT_LOAD_RESUME_ATTEMPTS);
+		if (checkpoint.getResumeAttempts() >= maxAttempts) {
+			log.error("Abandoning the " + checkpoint.getStage() + " load started on " + checkpoint.getStartedOn()
+			        + ", it failed after global bill " + checkpoint.getLastKey() + " of " + checkpoint.getEndKey()
+			        + " in " + checkpoint.getResumeAttempts() + " resumes, starting a new load");
+			dao.abandonFactLoad(checkpoint);
+			return;
+		}
+		
+		dao.saveFactLoadResumeAttempt(checkpoint);
+		log.info("Resuming the " + checkpoint.getStage() + " load started on " + checkpoint.getStartedOn()
+		        + " after global bill " + checkpoint.getLastKey() + " of " + checkpoint.getEndKey() + " (attempt "
+		        + checkpoint.getResumeAttempts() + " of " + maxAttempts + ")");
+		loadFact(runUuid, checkpoint.isIncremental(), checkpoint);
+		swapShadowSchema(runUuid, checkpoint.getSchema());
+	}
+	
+	/**
+	 * @return the shadow schema to build the tables in, or null to rebuild them in place when it is
+	 *         disabled or cannot be set up
+	 */
+	private String prepareShadowSchema(String runUuid) {
+		long startTime = System.currentTimeMillis();
+		try {
+			String schema = dao.prepareShadowSchema(Context.getAdministrationService().getGlobalProperty(
+			    GlobalPropertiesManagement.MAMBA_SHADOW_SCHEMA));
+			saveStageRun(runUuid, false, SHADOW_SCHEMA_STAGE, startTime, null, null);
+			return schema;
+		}
+		catch (RuntimeException e) {
+			saveStageRun(runUuid, false, SHADOW_SCHEMA_STAGE, startTime, null, e);
+			log.warn("Unable to set up the shadow schema, the MambaETL tables are rebuilt in place", e);
+			return null;
+		}
+	}
+	
+	private void swapShadowSchema(String runUuid, String schema) {
+		if (schema == null) {
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		try {
+			dao.swapShadowSchema(schema);
+		}
+		catch (RuntimeException e) {
+			saveStageRun(runUuid, false, SWAP_STAGE, startTime, null, e);
+			throw e;
+		}
+		saveStageRun(runUuid, false, SWAP_STAGE, startTime, null, null);
+	}
+	
+	private void loadFact(String runUuid, boolean incremental, EtlCheckpoint checkpoint) {
+		int chunkSize = getFactLoadChunkSize();
+		long startTime = System.currentTimeMillis();
+		long rowsBefore = checkpoint.getRowsLoaded();
+		
+		try {
+			while (!checkpoint.isFinished()) {
+				long chunkStartTime = System.currentTimeMillis();
+				int rows = dao.loadFactChunk(checkpoint, chunkSize);
+				long elapsed = System.currentTimeMillis() - chunkStartTime;
+				log.info(checkpoint.getStage() + ": " + rows + " rows up to global bill " + checkpoint.getLastKey()
+				        + " of " + checkpoint.getEndKey() + " in " + elapsed + " ms (" + rowsPerSecond(rows, elapsed)
+				        + " rows/s)");
+			}
+			dao.finishFactLoad(checkpoint);
+		}
+		catch (RuntimeException e) {
+			saveStageRun(runUuid, incremental, FACT_STAGE, startTime, checkpoint.getRowsLoaded() - rowsBefore, e);
+			throw e;
+		}
+		
+		long elapsed = System.currentTimeMillis() - startTime;
+		long rows = checkpoint.getRowsLoaded() - rowsBefore;
+		saveStageRun(runUuid, incremental, FACT_STAGE, startTime, rows, null);
+		log.info(checkpoint.getStage() + ": loaded " + rows + " rows in " + elapsed + " ms (" + rowsPerSecond(rows, elapsed)
+		        + " rows/s), " + checkpoint.getRowsLoaded() + " rows since the load started on " + checkpoint.getStartedOn());
+	}
+	
+	private void saveStageRun(String runUuid, boolean incremental, String stage, long startTime, Long rows,
+	        RuntimeException error) {
+		EtlStageRun stageRun = new EtlStageRun();
+		stageRun.setRunUuid(runUuid);
+		stageRun.setIncremental(incremental);
+		stageRun.setStage(stage);
+		stageRun.setStartedOn(new Date(startTime));
+		stageRun.setDurationMillis(System.currentTimeMillis() - startTime);
+		stageRun.setRows(rows);
+		stageRun.setStatus(error == null ? EtlStageRun.SUCCESS : EtlStageRun.FAILED);
+		stageRun.setError(error == null ? null : error.getMessage());
+		try {
+			dao.saveStageRun(stageRun);
+		}
+		catch (RuntimeException e) {
+			// the history must not fail the ETL
+			log.warn("Unable to save the run history of stage " + stage, e);
+		}
+		log.info(stage + ": " + stageRun.getStatus() + " in " + stageRun.getDurationMillis() + " ms"
+		        + (rows == null ? "" : ", " + rows + " rows"));
+	}
+	
+	private long rowsPerSecond(long rows, long elapsedMillis) {
+		return elapsedMillis > 0 ? rows * 1000 / elapsedMillis : rows;
+	}
+	
+	/**
+	 * @return the flat tables of the config files listed in "reports.mambaJavaPivotConfigs"
+	 */
+	private List<FlatTableConfig> getJavaPivotTables() {
+		List<FlatTableConfig> flatTables = new ArrayList<FlatTableConfig>();
+		String configs = Context.getAdministrationService().getGlobalProperty(
+		    GlobalPropertiesManagement.MAMBA_JAVA_PIVOT_CONFIGS);
+		if (StringUtils.isBlank(configs)) {
+			return flatTables;
+		}
+		
+		ObjectMapper mapper = new ObjectMapper();
+		for (String config : configs.split(",")) {
+			InputStream is = OpenmrsClassLoader.getInstance().getResourceAsStream(config.trim());
+			if (is == null) {
+				throw new APIException("Unable to find the flat table config " + config.trim());
+			}
+			try {
+				// closes the stream once it is read
+				flatTables.add(mapper.readValue(is, FlatTableConfig.class));
+			}
+			catch (IOException e) {
+				throw new APIException("Unable to read the flat table config " + config.trim(), e);
+			}
+		}
+		return flatTables;
+	}
+	
+	private int getFactLoadChunkSize() {
+		return getPositiveIntegerGlobalProperty(GlobalPropertiesManagement.MAMBA_FACT_LOAD_CHUNK_SIZE,
+		    DEFAULT_FACT_LOAD_CHUNK_SIZE);
+	}
+	
+	private int getPositiveIntegerGlobalProperty(String globalPropertyName, int defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
+		try {
+			int intValue = Integer.parseInt(value.trim());
+			return intValue > 0 ? intValue : defaultValue;
+		}
+		catch (Exception e) {
+			return defaultValue;
+		}
 	}
 }
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.openmrs.module.reporting.dataset.definition.BaseDataSetDefinition;
 import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+import org.openmrs.module.rwandareports.indicator.DisaggregatedEncounterIndicator;
 import org.openmrs.module.rwandareports.indicator.EncounterIndicator;
 
 /**
@@ -17,6 +18,9 @@ public class EncounterIndicatorDataSetDefinition extends BaseDataSetDefinition {
 	@ConfigurationProperty
 	List<EncounterIndicator> columns = new ArrayList<EncounterIndicator>();
 	
+	@ConfigurationProperty
+	List<DisaggregatedEncounterIndicator> disaggregatedColumns = new ArrayList<DisaggregatedEncounterIndicator>();
+	
 	//***** CONSTRUCTORS *****
 	
 	/**
@@ -37,4 +41,19 @@ public class EncounterIndicatorDataSetDefinition extends BaseDataSetDefinition {
 	public void setColumns(List<EncounterIndicator> columns) {
 		this.columns = columns;
 	}
+	
+	/**
+	 * Adds a column for every cell of the indicator, all of them filled by one run of its query
+	 */
+	public void addDisaggregatedColumn(DisaggregatedEncounterIndicator indicator) {
+		disaggregatedColumns.add(indicator);
+	}
+	
+	public List<DisaggregatedEncounterIndicator> getDisaggregatedColumns() {
+		return disaggregatedColumns;
+	}
+	
+	public void setDisaggregatedColumns(List<DisaggregatedEncounterIndicator> disaggregatedColumns) {
+		this.disaggregatedColumns = disaggregatedColumns;
+	}
 }
@@ -40,6 +40,9 @@ public class HIVARTRegisterDataSetDefinition2 extends BaseDataSetDefinition {
 	@ConfigurationProperty
 	private List<CohortDefinition> filters;
 	
+	@ConfigurationProperty
+	private Boolean batchEvaluation = Boolean.FALSE;
+	
 	/**
 	 * Constructor
 	 */
@@ -96,4 +99,19 @@ public class HIVARTRegisterDataSetDefinition2 extends BaseDataSetDefinition {
 		getFilters().add(cohort);
 	}
 	
+	/**
+	 * @return true if the columns should be evaluated for the whole cohort at once rather than patient
+	 *         by patient
+	 */
+	public Boolean getBatchEvaluation() {
+		return batchEvaluation;
+	}
+	
+	/**
+	 * @param batchEvaluation the batchEvaluation to set
+	 */
+	public void setBatchEvaluation(Boolean batchEvaluation) {
+		this.batchEvaluation = batchEvaluation;
+	}
+	
 }
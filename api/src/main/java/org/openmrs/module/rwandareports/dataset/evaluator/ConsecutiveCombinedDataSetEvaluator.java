@@ -1,11 +1,8 @@
 package org.openmrs.module.rwandareports.dataset.evaluator;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.openmrs.annotation.Handler;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.common.ObjectUtil;
 import org.openmrs.module.reporting.dataset.DataSet;
 import org.openmrs.module.reporting.dataset.DataSetColumn;
@@ -14,10 +11,8 @@ import org.openmrs.module.reporting.dataset.DataSetRowList;
 import org.openmrs.module.reporting.dataset.SimpleDataSet;
 import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
-import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
-import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.rowperpatientreports.dataset.definition.RowPerPatientDataSetDefinition;
 import org.openmrs.module.rwandareports.dataset.ConsecutiveCombinedDataSetDefinition;
 
@@ -43,24 +38,8 @@ public class ConsecutiveCombinedDataSetEvaluator implements DataSetEvaluator {
 		
 		boolean sample = true;
 		
-		for (int i = 0; i < dsd.getNumberOfIterations(); i++) {
-			context = ObjectUtil.nvl(context, new EvaluationContext());
-			if (context == null) {
-				context = new EvaluationContext();
-			}
-			
-			String parameter = "${startDate}";
-			
-			if (i > 0) {
-				parameter = "${startDate+" + i + "d}";
-			}
-			Map<String, Object> mappings = new HashMap<String, Object>();
-			mappings.put("endDate", parameter);
-			
-			EvaluationContext ec = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(base,
-			        mappings));
-			
-			SimpleDataSet day = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ec);
+		context = ObjectUtil.nvl(context, new EvaluationContext());
+		for (SimpleDataSet day : DayDataSetEvaluation.evaluateDays(base, context, dsd.getNumberOfIterations())) {
 			
 			if (day.getRows().size() > 0 && sample) {
 				addColumns(result, day);
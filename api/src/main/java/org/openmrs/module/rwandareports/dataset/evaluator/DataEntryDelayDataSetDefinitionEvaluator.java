@@ -4,12 +4,11 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeSet;
 
-import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
 import org.openmrs.Location;
 import org.openmrs.User;
@@ -25,10 +24,8 @@ import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
-import org.openmrs.module.reporting.evaluation.parameter.Parameter;
-import org.openmrs.module.reporting.query.encounter.EncounterQueryResult;
-import org.openmrs.module.reporting.query.encounter.definition.SqlEncounterQuery;
-import org.openmrs.module.reporting.query.encounter.service.EncounterQueryService;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.rwandareports.dataset.DataEntryDelayDataSetDefinition;
 import org.openmrs.module.rwandareports.util.GlobalPropertiesManagement;
 import org.openmrs.module.rwandareports.widget.AllLocation;
@@ -36,12 +33,6 @@ import org.openmrs.module.rwandareports.widget.AllLocation;
 @Handler(supports = { DataEntryDelayDataSetDefinition.class })
 public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluator {
 	
-	private static String LOCATION = "LOCATION";
-	
-	private static String HIERARCHY = "HIERARCHY";
-	
-	private static String ALL_SITES = "ALL_SITES";
-	
 	private GlobalPropertiesManagement gp = new GlobalPropertiesManagement();
 	
 	public DataEntryDelayDataSetDefinitionEvaluator() {
@@ -63,18 +54,21 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 		
 		SimpleDataSet ret = new SimpleDataSet(dataSetDefinition, context);
 		
+		// the rows of the data set, in order, and the locations whose encounters each of them counts
+		List<IterationStats> iterations = new ArrayList<IterationStats>();
+		Map<Integer, List<IterationStats>> iterationsByLocation = new HashMap<Integer, List<IterationStats>>();
+		IterationStats allSites = null;
+		
 		AllLocation location = lhdsd.getLocation();
 		if (location != null) {
 			if (!location.isAllSites() && location.getHierarchy().equals(AllLocation.LOCATION)) {
-				addIteration(ret,
-				    getEncounters(location.getValue(), LOCATION, location.getValue(), lhdsd.getEncounterTypes()),
-				    location.getValue(), context, lhdsd);
+				addLocationIteration(iterations, iterationsByLocation,
+				    Context.getLocationService().getLocation(location.getValue()), location.getValue());
 			} else if (!location.isAllSites()) {
 				List<Location> allLocations = Context.getLocationService().getAllLocations(false);
 				
-				addIteration(ret,
-				    getEncounters(location.getValue(), HIERARCHY, location.getHierarchy(), lhdsd.getEncounterTypes()),
-				    location.getValue() + " " + location.getDisplayHierarchy(), context, lhdsd);
+				addHierarchyIteration(iterations, iterationsByLocation, allLocations, location.getHierarchy(),
+				    location.getValue(), location.getValue() + " " + location.getDisplayHierarchy());
 				
 				for (Location l : allLocations) {
 					String hierarchyValue = (String) ReflectionUtil.getPropertyValue(l, location.getHierarchy());
@@ -84,13 +78,12 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 					}
 					
 					if (location.getValue() != null && location.getValue().toUpperCase().equals(hierarchyValue)) {
-						addIteration(ret, getEncounters(l.getName(), LOCATION, l.getName(), lhdsd.getEncounterTypes()),
-						    l.getName(), context, lhdsd);
+						addLocationIteration(iterations, iterationsByLocation, l, l.getName());
 					}
 				}
 			} else {
-				addIteration(ret, getEncounters("All Sites", ALL_SITES, "All Sites", lhdsd.getEncounterTypes()),
-				    "All Sites", context, lhdsd);
+				allSites = new IterationStats("All Sites");
+				iterations.add(allSites);
 				
 				List<Location> allLocations = Context.getLocationService().getAllLocations(false);
 				
@@ -119,139 +112,134 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 					}
 					
 					for (String hLoc : allLoc) {
-						addIteration(ret, getEncounters(hLoc, HIERARCHY, hVal, lhdsd.getEncounterTypes()), hLoc + " "
-						        + hDisplay, context, lhdsd);
+						addHierarchyIteration(iterations, iterationsByLocation, allLocations, hVal, hLoc, hLoc + " "
+						        + hDisplay);
 					}
 				}
 				
 				for (Location l : allLocations) {
-					addIteration(ret, getEncounters(l.getName(), LOCATION, l.getName(), lhdsd.getEncounterTypes()),
-					    l.getName(), context, lhdsd);
+					addLocationIteration(iterations, iterationsByLocation, l, l.getName());
 				}
 			}
 		}
 		
-		return ret;
-	}
-	
-	private SqlEncounterQuery getEncounters(String location, String hierarchy, String hierarchyValue,
-	        List<EncounterType> encounterTypes) {
+		if (iterations.isEmpty()) {
+			return ret;
+		}
 		
-		if (hierarchy.equals(LOCATION)) {
-			Location loc = Context.getLocationService().getLocation(location);
-			
-			SqlEncounterQuery locationCohort = new SqlEncounterQuery();
-			//String sql = "select encounter_id from encounter where form_id is not null and date_created >= :startDate and date_created <= :endDate and voided=0 and location_id =" + loc.getLocationId();
-			String sql = "select encounter_id from encounter where date_created >= :startDate and date_created <= :endDate and voided=0 and location_id ="
-			        + loc.getLocationId();
+		try {
+			int acceptance = gp.getGlobalPropertyAsInt(GlobalPropertiesManagement.DATA_ENTRY_DELAY_ACCEPTABLE);
+			int delayThreshold = gp.getGlobalPropertyAsInt(GlobalPropertiesManagement.DATA_ENTRY_DELAY);
 			
-			if (encounterTypes != null && encounterTypes.size() > 0) {
-				sql = sql + " and encounter_type in (" + getCommaSeparatedEncounterTypes(encounterTypes) + ")";
+			SqlQueryBuilder sb = new SqlQueryBuilder();
+			sb.append("select encounter_id, creator, encounter_type, location_id, date_created, encounter_datetime ");
+			sb.append("from encounter ");
+			sb.append("where date_created >= :startDate and date_created <= :endDate and voided = 0 ");
+			if (lhdsd.getEncounterTypes() != null && lhdsd.getEncounterTypes().size() > 0) {
+				List<Integer> encounterTypeIds = new ArrayList<Integer>();
+				for (EncounterType et : lhdsd.getEncounterTypes()) {
+					encounterTypeIds.add(et.getEncounterTypeId());
+				}
+				sb.append("and encounter_type in (:encounterTypes) ");
+				sb.addParameter("encounterTypes", encounterTypeIds);
 			}
-			locationCohort.setQuery(sql);
-			locationCohort.addParameter(new Parameter("startDate", "startDate", Date.class));
-			locationCohort.addParameter(new Parameter("endDate", "endDate", Date.class));
-			
-			return locationCohort;
-		} else if (hierarchy.equals(HIERARCHY)) {
-			
-			String hVal = resolveDatabaseColumnName(hierarchyValue);
-			
-			SqlEncounterQuery locationCohort = new SqlEncounterQuery();
-			/*String sql = "select encounter_id from encounter where form_id is not null and date_created >= :startDate and date_created <= :endDate and voided=0 and location_id in (select location_id from location where retired = 0 and "
-			                + hVal + " = '" + location + "')";*/
-			String sql = "select encounter_id from encounter where date_created >= :startDate and date_created <= :endDate and voided=0 and location_id in (select location_id from location where retired = 0 and "
-			        + hVal + " = '" + location + "')";
-			if (encounterTypes != null && encounterTypes.size() > 0) {
-				sql = sql + " and encounter_type in (" + getCommaSeparatedEncounterTypes(encounterTypes) + ")";
+			if (allSites == null) {
+				sb.append("and location_id in (:locations) ");
+				sb.addParameter("locations", iterationsByLocation.keySet());
 			}
-			locationCohort.setQuery(sql);
-			locationCohort.addParameter(new Parameter("startDate", "startDate", Date.class));
-			locationCohort.addParameter(new Parameter("endDate", "endDate", Date.class));
+			sb.addParameter("startDate", context.getParameterValue("startDate"));
+			sb.addParameter("endDate", context.getParameterValue("endDate"));
 			
-			return locationCohort;
-		} else {
-			
-			SqlEncounterQuery locationCohort = new SqlEncounterQuery();
-			//String sql = "select encounter_id from encounter where form_id is not null and date_created >= :startDate and date_created <= :endDate and voided=0";
-			String sql = "select encounter_id from encounter where date_created >= :startDate and date_created <= :endDate and voided=0";
-			
-			if (encounterTypes != null && encounterTypes.size() > 0) {
-				sql = sql + " and encounter_type in (" + getCommaSeparatedEncounterTypes(encounterTypes) + ")";
+			// a single pass over the projected encounters, each counted in every row it belongs to
+			List<Object[]> encounters = new ArrayList<Object[]>();
+			if (allSites != null || !iterationsByLocation.isEmpty()) {
+				encounters = Context.getService(EvaluationService.class).evaluateToList(sb, context);
+			}
+			for (Object[] encounter : encounters) {
+				EncounterDelay e = new EncounterDelay(encounter, acceptance, delayThreshold);
+				if (allSites != null) {
+					allSites.add(e);
+				}
+				List<IterationStats> locationIterations = iterationsByLocation.get(e.locationId);
+				if (locationIterations != null) {
+					for (IterationStats iteration : locationIterations) {
+						iteration.add(e);
+					}
+				}
 			}
-			locationCohort.setQuery(sql);
-			locationCohort.addParameter(new Parameter("startDate", "startDate", Date.class));
-			locationCohort.addParameter(new Parameter("endDate", "endDate", Date.class));
 			
-			return locationCohort;
-		}
-	}
-	
-	private void addIteration(SimpleDataSet resultsSet, SqlEncounterQuery cohort, String locationDisplay,
-	        EvaluationContext context, DataEntryDelayDataSetDefinition dataSetDefinition) throws EvaluationException {
-		
-		if (cohort != null) {
-			try {
-				EncounterQueryService eqs = Context.getService(EncounterQueryService.class);
-				
-				EncounterQueryResult eqr = eqs.evaluate(cohort, context);
-				
-				Set<Integer> encounters = eqr.getMemberIds();
-				List<Encounter> encs = getEncounters(encounters);
-				
-				SimpleDataSet summary = getSummaryDataSetForLocation(encs, dataSetDefinition, context);
-				
+			Names names = new Names();
+			for (IterationStats iteration : iterations) {
 				DataSetRow row = new DataSetRow();
-				row.addColumnValue(new DataSetColumn("locationDisplay", "locationDisplay", String.class), locationDisplay);
-				
-				addResults(row, summary, "summary");
+				row.addColumnValue(new DataSetColumn("locationDisplay", "locationDisplay", String.class),
+				    iteration.locationDisplay);
 				
-				List<EncounterType> encTypes = dataSetDefinition.getEncounterTypes();
+				addResults(row, getSummaryDataSetForLocation(iteration, names, dataSetDefinition, context), "summary");
 				
-				for (EncounterType et : encTypes) {
-					SimpleDataSet encType = getEncounterSummaryDataSetForLocation(et, encs, dataSetDefinition, context);
+				for (EncounterType et : lhdsd.getEncounterTypes()) {
+					SimpleDataSet encType = getEncounterSummaryDataSetForLocation(
+					    iteration.byEncounterType.get(et.getEncounterTypeId()), names, dataSetDefinition, context);
 					addResults(row, encType, et.getName());
 				}
 				
-				SimpleDataSet bigDelay = getExtraLongDelayDataSet(encs, dataSetDefinition, context);
-				addResults(row, bigDelay, "delayCases");
+				addResults(row, getExtraLongDelayDataSet(iteration.delayCases, names, dataSetDefinition, context),
+				    "delayCases");
 				
-				resultsSet.addRow(row);
-			}
-			catch (Exception ex) {
-				
-				throw new EvaluationException("baseCohort", ex);
+				ret.addRow(row);
 			}
 		}
+		catch (Exception ex) {
+			
+			throw new EvaluationException("baseCohort", ex);
+		}
+		
+		return ret;
 	}
 	
-	private void addResults(DataSetRow row, SimpleDataSet dataSet, String name) {
-		
-		row.addColumnValue(new DataSetColumn(name, name, SimpleDataSet.class), dataSet);
+	private void addLocationIteration(List<IterationStats> iterations,
+	        Map<Integer, List<IterationStats>> iterationsByLocation, Location location, String locationDisplay) {
+		IterationStats iteration = new IterationStats(locationDisplay);
+		iterations.add(iteration);
+		if (location != null) {
+			addIterationForLocation(iterationsByLocation, location.getLocationId(), iteration);
+		}
 	}
 	
-	private String resolveDatabaseColumnName(String value) {
-		if (value.equals("cityVillage")) {
-			return "city_village";
-		} else if (value.equals("stateProvince")) {
-			return "state_province";
-		} else if (value.equals("postalCode")) {
-			return "postal_code";
-		} else if (value.equals("countyDistrict")) {
-			return "county_district";
-		} else if (value.equals("neighbourhoodCell")) {
-			return "address3";
+	/**
+	 * Adds a row counting the encounters of all the non retired locations with the given value of the
+	 * hierarchy property
+	 */
+	private void addHierarchyIteration(List<IterationStats> iterations,
+	        Map<Integer, List<IterationStats>> iterationsByLocation, List<Location> allLocations, String hierarchy,
+	        String hierarchyValue, String locationDisplay) {
+		IterationStats iteration = new IterationStats(locationDisplay);
+		iterations.add(iteration);
+		for (Location l : allLocations) {
+			Object value = ReflectionUtil.getPropertyValue(l, hierarchy);
+			if (value != null && hierarchyValue != null
+			        && value.toString().trim().equalsIgnoreCase(hierarchyValue.trim())) {
+				addIterationForLocation(iterationsByLocation, l.getLocationId(), iteration);
+			}
 		}
-		
-		else if (value.equals("townshipDivision")) {
-			return "township_division";
+	}
+	
+	private void addIterationForLocation(Map<Integer, List<IterationStats>> iterationsByLocation, Integer locationId,
+	        IterationStats iteration) {
+		List<IterationStats> locationIterations = iterationsByLocation.get(locationId);
+		if (locationIterations == null) {
+			locationIterations = new ArrayList<IterationStats>();
+			iterationsByLocation.put(locationId, locationIterations);
 		}
+		locationIterations.add(iteration);
+	}
+	
+	private void addResults(DataSetRow row, SimpleDataSet dataSet, String name) {
 		
-		return value;
+		row.addColumnValue(new DataSetColumn(name, name, SimpleDataSet.class), dataSet);
 	}
 	
-	private SimpleDataSet getSummaryDataSetForLocation(List<Encounter> encounters, DataSetDefinition dataSetDefinition,
-	        EvaluationContext context) {
+	private SimpleDataSet getSummaryDataSetForLocation(IterationStats iteration, Names names,
+	        DataSetDefinition dataSetDefinition, EvaluationContext context) {
 		SimpleDataSet dataSet = new SimpleDataSet(dataSetDefinition, context);
 		
 		DataSetColumn dataOfficer = new DataSetColumn("dataOfficer", "dataOfficer", String.class);
@@ -278,82 +266,33 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 		DataSetColumn proportion = new DataSetColumn("proportion", "proportion", String.class);
 		dataSet.getMetaData().addColumn(proportion);
 		
-		Map<User, List<Encounter>> encounterMap = new HashMap<User, List<Encounter>>();
-		for (Encounter enc : encounters) {
-			User user = enc.getCreator();
-			
-			if (encounterMap.containsKey(user)) {
-				encounterMap.get(user).add(enc);
-			} else {
-				List<Encounter> userList = new ArrayList<Encounter>();
-				userList.add(enc);
-				encounterMap.put(user, userList);
-			}
-		}
-		
-		for (User user : encounterMap.keySet()) {
-			
-			List<Encounter> encs = encounterMap.get(user);
-			addEncounterValues(encs, user.getGivenName() + " " + user.getFamilyName(), dataSet, dataOfficer,
-			    totalEncounters, numberAcceptable, proportion, longestDelay, shortestDelay, meanDelay, modeDelay);
+		for (Map.Entry<Integer, DelayStats> user : iteration.total.byCreator.entrySet()) {
+			addEncounterValues(user.getValue(), names.getUserName(user.getKey()), dataSet, dataOfficer, totalEncounters,
+			    numberAcceptable, proportion, longestDelay, shortestDelay, meanDelay, modeDelay);
 		}
 		
-		addEncounterValues(encounters, "Total", dataSet, dataOfficer, totalEncounters, numberAcceptable, proportion,
-		    longestDelay, shortestDelay, meanDelay, modeDelay);
+		addEncounterValues(iteration.total.total, "Total", dataSet, dataOfficer, totalEncounters, numberAcceptable,
+		    proportion, longestDelay, shortestDelay, meanDelay, modeDelay);
 		return dataSet;
 	}
 	
-	private void addEncounterValues(List<Encounter> encounters, String userName, SimpleDataSet dataSet,
-	        DataSetColumn dataOfficer, DataSetColumn totalEncounters, DataSetColumn numberAcceptable,
-	        DataSetColumn proportion, DataSetColumn longestDelay, DataSetColumn shortestDelay, DataSetColumn meanDelay,
-	        DataSetColumn modeDelay) {
+	private void addEncounterValues(DelayStats stats, String userName, SimpleDataSet dataSet, DataSetColumn dataOfficer,
+	        DataSetColumn totalEncounters, DataSetColumn numberAcceptable, DataSetColumn proportion,
+	        DataSetColumn longestDelay, DataSetColumn shortestDelay, DataSetColumn meanDelay, DataSetColumn modeDelay) {
 		DataSetRow row = new DataSetRow();
 		
 		row.addColumnValue(dataOfficer, userName);
 		
-		row.addColumnValue(totalEncounters, encounters.size());
-		
-		Integer longest = null;
-		Integer shortest = null;
-		double mean = 0;
-		int[] mode = new int[encounters.size()];
-		int i = 0;
-		Integer acceptable = 0;
-		
-		Integer acceptance = gp.getGlobalPropertyAsInt(GlobalPropertiesManagement.DATA_ENTRY_DELAY_ACCEPTABLE);
+		row.addColumnValue(totalEncounters, stats.count);
 		
-		for (Encounter e : encounters) {
-			Date created = e.getDateCreated();
-			Date encDate = e.getEncounterDatetime();
-			
-			long diff = created.getTime() - encDate.getTime();
-			diff = (diff / (1000 * 60 * 60 * 24));
-			
-			Integer delay = (int) diff;
-			
-			if (delay <= acceptance) {
-				acceptable++;
-			}
-			
-			if (longest == null || delay > longest) {
-				longest = delay;
-			}
-			if (shortest == null || delay < shortest) {
-				shortest = delay;
-			}
-			mean = mean + delay;
-			mode[i] = delay;
-			
-			i++;
-		}
-		row.addColumnValue(longestDelay, longest);
-		row.addColumnValue(shortestDelay, shortest);
+		row.addColumnValue(longestDelay, stats.longest);
+		row.addColumnValue(shortestDelay, stats.shortest);
 		
 		DecimalFormat df = new DecimalFormat("#.##");
 		
-		if (encounters.size() > 0) {
-			double numerator = acceptable;
-			double denominator = encounters.size();
+		if (stats.count > 0) {
+			double numerator = stats.acceptable;
+			double denominator = stats.count;
 			
 			double prop = numerator / denominator;
 			row.addColumnValue(proportion, df.format(prop));
@@ -361,39 +300,20 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 			row.addColumnValue(proportion, "");
 		}
 		
-		mean = mean / encounters.size();
+		double mean = stats.sum / stats.count;
 		
 		row.addColumnValue(meanDelay, df.format(mean));
 		
-		row.addColumnValue(modeDelay, getModeDelay(mode));
+		row.addColumnValue(modeDelay, stats.getMode());
 		
-		row.addColumnValue(numberAcceptable, acceptable);
+		row.addColumnValue(numberAcceptable, stats.acceptable);
 		
 		dataSet.addRow(row);
 	}
 	
-	private SimpleDataSet getEncounterSummaryDataSetForLocation(EncounterType encounterType, List<Encounter> encounters,
+	private SimpleDataSet getEncounterSummaryDataSetForLocation(GroupStats encountersOfType, Names names,
 	        DataSetDefinition dataSetDefinition, EvaluationContext context) {
 		
-		Map<User, List<Encounter>> encounterMap = new HashMap<User, List<Encounter>>();
-		List<Encounter> encountersOfType = new ArrayList<Encounter>();
-		for (Encounter enc : encounters) {
-			if (enc.getEncounterType().equals(encounterType)) {
-				
-				encountersOfType.add(enc);
-				
-				User user = enc.getCreator();
-				
-				if (encounterMap.containsKey(user)) {
-					encounterMap.get(user).add(enc);
-				} else {
-					List<Encounter> userList = new ArrayList<Encounter>();
-					userList.add(enc);
-					encounterMap.put(user, userList);
-				}
-			}
-		}
-		
 		SimpleDataSet dataSet = new SimpleDataSet(dataSetDefinition, context);
 		
 		DataSetColumn dataOfficer = new DataSetColumn("dataOfficer", "dataOfficer", String.class);
@@ -420,14 +340,12 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 		DataSetColumn proportion = new DataSetColumn("proportion", "proportion", String.class);
 		dataSet.getMetaData().addColumn(proportion);
 		
-		if (encounterMap.size() > 0) {
-			for (User user : encounterMap.keySet()) {
-				
-				List<Encounter> encs = encounterMap.get(user);
-				addEncounterValues(encs, user.getGivenName() + " " + user.getFamilyName(), dataSet, dataOfficer,
+		if (encountersOfType != null) {
+			for (Map.Entry<Integer, DelayStats> user : encountersOfType.byCreator.entrySet()) {
+				addEncounterValues(user.getValue(), names.getUserName(user.getKey()), dataSet, dataOfficer,
 				    totalEncounters, numberAcceptable, proportion, longestDelay, shortestDelay, meanDelay, modeDelay);
 			}
-			addEncounterValues(encountersOfType, "Total", dataSet, dataOfficer, totalEncounters, numberAcceptable,
+			addEncounterValues(encountersOfType.total, "Total", dataSet, dataOfficer, totalEncounters, numberAcceptable,
 			    proportion, longestDelay, shortestDelay, meanDelay, modeDelay);
 		} else {
 			DataSetRow row = new DataSetRow();
@@ -445,8 +363,8 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 		return dataSet;
 	}
 	
-	private SimpleDataSet getExtraLongDelayDataSet(List<Encounter> encounters, DataSetDefinition dataSetDefinition,
-	        EvaluationContext context) {
+	private SimpleDataSet getExtraLongDelayDataSet(List<EncounterDelay> delayCases, Names names,
+	        DataSetDefinition dataSetDefinition, EvaluationContext context) {
 		
 		SimpleDataSet dataSet = new SimpleDataSet(dataSetDefinition, context);
 		
@@ -462,31 +380,19 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 		DataSetColumn encounterType = new DataSetColumn("encounterType", "encounterType", String.class);
 		dataSet.getMetaData().addColumn(encounterType);
 		
-		boolean includeBlank = true;
-		for (Encounter e : encounters) {
-			Date created = e.getDateCreated();
-			Date encDate = e.getEncounterDatetime();
+		for (EncounterDelay e : delayCases) {
+			DataSetRow row = new DataSetRow();
 			
-			long diff = created.getTime() - encDate.getTime();
-			diff = (diff / (1000 * 60 * 60 * 24));
+			row.addColumnValue(dataOfficer, names.getUserName(e.creator));
 			
-			int delayThreshold = gp.getGlobalPropertyAsInt(GlobalPropertiesManagement.DATA_ENTRY_DELAY);
-			if (diff > delayThreshold) {
-				includeBlank = false;
-				DataSetRow row = new DataSetRow();
-				
-				User user = e.getCreator();
-				row.addColumnValue(dataOfficer, user.getGivenName() + " " + user.getFamilyName());
-				
-				row.addColumnValue(encounterId, e.getId());
-				row.addColumnValue(delay, diff);
-				row.addColumnValue(encounterType, e.getEncounterType().getName());
-				
-				dataSet.addRow(row);
-			}
+			row.addColumnValue(encounterId, e.encounterId);
+			row.addColumnValue(delay, e.delay);
+			row.addColumnValue(encounterType, names.getEncounterTypeName(e.encounterType));
+			
+			dataSet.addRow(row);
 		}
 		
-		if (includeBlank) {
+		if (delayCases.isEmpty()) {
 			DataSetRow row = new DataSetRow();
 			
 			row.addColumnValue(dataOfficer, "");
@@ -500,47 +406,166 @@ public class DataEntryDelayDataSetDefinitionEvaluator implements DataSetEvaluato
 		return dataSet;
 	}
 	
-	private Integer getModeDelay(int a[]) {
-		int maxValue = 0;
-		int maxCount = 0;
-		
-		for (int i = 0; i < a.length; ++i) {
-			int count = 0;
-			for (int j = 0; j < a.length; ++j) {
-				if (a[j] == a[i])
-					++count;
-			}
-			if (count > maxCount) {
-				maxCount = count;
-				maxValue = a[i];
+	/**
+	 * Names of the data officers and encounter types of one evaluation, each loaded once
+	 */
+	private static class Names {
+		
+		private Map<Integer, String> userNames = new HashMap<Integer, String>();
+		
+		private Map<Integer, String> encounterTypeNames = new HashMap<Integer, String>();
+		
+		private String getUserName(Integer userId) {
+			String name = userNames.get(userId);
+			if (name == null) {
+				User user = Context.getUserService().getUser(userId);
+				name = user.getGivenName() + " " + user.getFamilyName();
+				userNames.put(userId, name);
 			}
+			return name;
 		}
 		
-		return maxValue;
+		private String getEncounterTypeName(Integer encounterTypeId) {
+			String name = encounterTypeNames.get(encounterTypeId);
+			if (name == null) {
+				name = Context.getEncounterService().getEncounterType(encounterTypeId).getName();
+				encounterTypeNames.put(encounterTypeId, name);
+			}
+			return name;
+		}
 	}
 	
-	private List<Encounter> getEncounters(Set<Integer> encounterIds) {
-		List<Encounter> encs = new ArrayList<Encounter>();
+	/**
+	 * The delay of one encounter, computed from its projected columns
+	 */
+	private static class EncounterDelay {
+		
+		private Integer encounterId;
 		
-		for (Integer eId : encounterIds) {
-			Encounter e = Context.getEncounterService().getEncounter(eId);
+		private Integer creator;
+		
+		private Integer encounterType;
+		
+		private Integer locationId;
+		
+		private int delay;
+		
+		private boolean acceptable;
+		
+		private boolean extraLong;
+		
+		private EncounterDelay(Object[] row, int acceptance, int delayThreshold) {
+			encounterId = ((Number) row[0]).intValue();
+			creator = ((Number) row[1]).intValue();
+			encounterType = ((Number) row[2]).intValue();
+			locationId = row[3] == null ? null : ((Number) row[3]).intValue();
+			
+			long diff = ((Date) row[4]).getTime() - ((Date) row[5]).getTime();
+			diff = (diff / (1000 * 60 * 60 * 24));
 			
-			if (e != null) {
-				encs.add(e);
+			delay = (int) diff;
+			acceptable = delay <= acceptance;
+			extraLong = diff > delayThreshold;
+		}
+	}
+	
+	/**
+	 * Running totals of the delays of a group of encounters
+	 */
+	private static class DelayStats {
+		
+		private int count = 0;
+		
+		private Integer acceptable = 0;
+		
+		private Integer longest = null;
+		
+		private Integer shortest = null;
+		
+		private double sum = 0;
+		
+		private Map<Integer, Integer> delayCounts = new LinkedHashMap<Integer, Integer>();
+		
+		private void add(EncounterDelay e) {
+			count++;
+			if (e.acceptable) {
+				acceptable++;
+			}
+			if (longest == null || e.delay > longest) {
+				longest = e.delay;
+			}
+			if (shortest == null || e.delay < shortest) {
+				shortest = e.delay;
+			}
+			sum = sum + e.delay;
+			Integer delayCount = delayCounts.get(e.delay);
+			delayCounts.put(e.delay, delayCount == null ? 1 : delayCount + 1);
+		}
+		
+		/**
+		 * @return the most frequent delay, the first one seen on a tie, or 0 if there are none
+		 */
+		private Integer getMode() {
+			int maxValue = 0;
+			int maxCount = 0;
+			for (Map.Entry<Integer, Integer> delayCount : delayCounts.entrySet()) {
+				if (delayCount.getValue() > maxCount) {
+					maxCount = delayCount.getValue();
+					maxValue = delayCount.getKey();
+				}
 			}
+			return maxValue;
 		}
+	}
+	
+	/**
+	 * The delays of a group of encounters, in total and per data officer
+	 */
+	private static class GroupStats {
+		
+		private DelayStats total = new DelayStats();
 		
-		return encs;
+		private Map<Integer, DelayStats> byCreator = new LinkedHashMap<Integer, DelayStats>();
+		
+		private void add(EncounterDelay e) {
+			total.add(e);
+			DelayStats creatorStats = byCreator.get(e.creator);
+			if (creatorStats == null) {
+				creatorStats = new DelayStats();
+				byCreator.put(e.creator, creatorStats);
+			}
+			creatorStats.add(e);
+		}
 	}
 	
-	private String getCommaSeparatedEncounterTypes(List<EncounterType> encounterTypes) {
-		StringBuilder result = new StringBuilder();
-		for (EncounterType et : encounterTypes) {
-			if (result.length() > 0) {
-				result.append(",");
+	/**
+	 * Everything one row of the data set reports on, filled in as the encounters are read
+	 */
+	private static class IterationStats {
+		
+		private String locationDisplay;
+		
+		private GroupStats total = new GroupStats();
+		
+		private Map<Integer, GroupStats> byEncounterType = new HashMap<Integer, GroupStats>();
+		
+		private List<EncounterDelay> delayCases = new ArrayList<EncounterDelay>();
+		
+		private IterationStats(String locationDisplay) {
+			this.locationDisplay = locationDisplay;
+		}
+		
+		private void add(EncounterDelay e) {
+			total.add(e);
+			GroupStats typeStats = byEncounterType.get(e.encounterType);
+			if (typeStats == null) {
+				typeStats = new GroupStats();
+				byEncounterType.put(e.encounterType, typeStats);
+			}
+			typeStats.add(e);
+			if (e.extraLong) {
+				delayCases.add(e);
 			}
-			result.append(et.getId());
 		}
-		return result.toString();
 	}
 }
@@ -2,18 +2,19 @@ package org.openmrs.module.rwandareports.dataset.evaluator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.openmrs.Cohort;
-import org.openmrs.Encounter;
-import org.openmrs.EncounterProvider;
 import org.openmrs.EncounterType;
 import org.openmrs.Location;
-import org.openmrs.Person;
 import org.openmrs.Program;
-import org.openmrs.User;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.cohort.definition.InProgramCohortDefinition;
@@ -27,12 +28,14 @@ import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
-import org.openmrs.module.reporting.evaluation.parameter.Parameter;
-import org.openmrs.module.reporting.query.encounter.EncounterQueryResult;
-import org.openmrs.module.reporting.query.encounter.definition.SqlEncounterQuery;
-import org.openmrs.module.reporting.query.encounter.service.EncounterQueryService;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.rwandareports.dataset.DataEntryQuantityReport;
 
+/**
+ * Counts the encounters of every form, location, creator, provider and month in one pass over a
+ * projection of the encounters
+ */
 @Handler(supports = { DataEntryQuantityReport.class })
 public class DataEntryQuantityReportEvaluator implements DataSetEvaluator {
 	
@@ -53,10 +56,6 @@ public class DataEntryQuantityReportEvaluator implements DataSetEvaluator {
 			lhdsd.addEncounterType((EncounterType) context.getParameterValue("encounterType"));
 		}
 		
-		//get base cohort
-		SqlEncounterQuery encounterCohort = getEncountersCohort(lhdsd.getProgram(), lhdsd.getEncounterTypes(), startDate,
-		    endDate);
-		
 		SimpleDataSet ret = new SimpleDataSet(dataSetDefinition, context);
 		//set columns
 		DataSetColumn formName = new DataSetColumn("form name", "form name", Integer.class);
@@ -78,163 +77,177 @@ public class DataEntryQuantityReportEvaluator implements DataSetEvaluator {
 		        Integer.class);
 		ret.getMetaData().addColumn(noOfEncounters);
 		
-		if (encounterCohort != null) {
-			List<Encounter> encs = new ArrayList<Encounter>();
-			try {
-				EncounterQueryService eqs = Context.getService(EncounterQueryService.class);
-				
-				EncounterQueryResult eqr = eqs.evaluate(encounterCohort, context);
-				
-				Set<Integer> encounters = eqr.getMemberIds();
-				
-				encs = getEncounters(encounters);
-				
-				List<Integer> encounterMonths = new ArrayList<Integer>();
-				List<String> encFormNames = new ArrayList<String>();
-				List<Location> encLocations = new ArrayList<Location>();
-				List<Person> encProviders = new ArrayList<Person>();
-				List<User> encCreators = new ArrayList<User>();
-				//getting base value criteria
-				for (Encounter enc : encs) {
-					int encMonth = enc.getEncounterDatetime().getMonth();
-					String encFormName = enc.getForm().getName();
-					Location encLocation = enc.getLocation();
-					User encCreator = enc.getCreator();
-					if (!encounterMonths.contains(encMonth)) {
-						encounterMonths.add(encMonth);
-					}
-					if (!encFormNames.contains(encFormName)) {
-						encFormNames.add(encFormName);
-					}
-					if (!encLocations.contains(encLocation)) {
-						encLocations.add(encLocation);
-					}
-					if (enc.getEncounterProviders() != null) {
-						for (EncounterProvider ep : enc.getEncounterProviders()) {
-							Person encProvider = ep.getProvider().getPerson();
-							if (!encProviders.contains(encProvider)) {
-								encProviders.add(encProvider);
-							}
-						}
-					}
-					if (!encCreators.contains(encCreator)) {
-						encCreators.add(encCreator);
-					}
+		try {
+			// one row per encounter of a non voided patient and person providing it
+			SqlQueryBuilder sb = new SqlQueryBuilder();
+			sb.append("select distinct e.encounter_id, f.name, e.location_id, e.creator, pr.person_id, ");
+			sb.append("e.encounter_datetime ");
+			sb.append("from encounter e ");
+			sb.append("inner join form f on f.form_id = e.form_id ");
+			sb.append("inner join patient p on p.patient_id = e.patient_id and p.voided = 0 ");
+			sb.append("inner join encounter_provider ep on ep.encounter_id = e.encounter_id ");
+			sb.append("inner join provider pr on pr.provider_id = ep.provider_id ");
+			sb.append("where e.encounter_datetime >= :startDate and e.encounter_datetime <= :endDate and e.voided = 0 ");
+			sb.append("and pr.person_id is not null ");
+			if (!lhdsd.getEncounterTypes().isEmpty()) {
+				List<Integer> encounterTypeIds = new ArrayList<Integer>();
+				for (EncounterType et : lhdsd.getEncounterTypes()) {
+					encounterTypeIds.add(et.getEncounterTypeId());
 				}
-				
-				for (String form : encFormNames) {
-					for (Location theLocation : encLocations) {
-						for (User theCreator : encCreators) {
-							for (Person theProvider : encProviders) {
-								for (Integer Month : encounterMonths) {
-									int numberOfOccurrence = getNoOfOccurancesGivenVariables(encs, Month, theCreator, form,
-									    theLocation, theProvider);
-									if (numberOfOccurrence >= 1) {
-										DataSetRow row = new DataSetRow();
-										row.addColumnValue(formName, form);
-										row.addColumnValue(location, theLocation);
-										row.addColumnValue(creator, theCreator.getNames());
-										row.addColumnValue(provider, theProvider.getNames());
-										row.addColumnValue(monthOfEncounter, Month + 1);
-										row.addColumnValue(noOfEncounters, numberOfOccurrence);
-										ret.addRow(row);
-									}
-								}
-							}
-						}
-					}
+				sb.append("and e.encounter_type in (:encounterTypes) ");
+				sb.addParameter("encounterTypes", encounterTypeIds);
+			}
+			if (lhdsd.getProgram() != null) {
+				Set<Integer> patientIds = getPatientsInProgram(lhdsd.getProgram(), endDate);
+				if (patientIds.isEmpty()) {
+					return ret;
 				}
+				sb.append("and e.patient_id in (:patients) ");
+				sb.addParameter("patients", patientIds);
 			}
-			catch (Exception ex) {
-				
-				throw new EvaluationException("baseCohort", ex);
+			if (context.getBaseCohort() != null) {
+				if (context.getBaseCohort().isEmpty()) {
+					return ret;
+				}
+				sb.append("and e.patient_id in (:baseCohort) ");
+				sb.addParameter("baseCohort", context.getBaseCohort().getMemberIds());
 			}
+			sb.append("order by e.encounter_id");
+			sb.addParameter("startDate", startDate);
+			sb.addParameter("endDate", endDate);
 			
+			// the values of every grouping column, in the order they are first seen
+			Map<String, Integer> forms = new LinkedHashMap<String, Integer>();
+			Map<Integer, Integer> locations = new LinkedHashMap<Integer, Integer>();
+			Map<Integer, Integer> creators = new LinkedHashMap<Integer, Integer>();
+			Map<Integer, Integer> providers = new LinkedHashMap<Integer, Integer>();
+			Map<Integer, Integer> months = new LinkedHashMap<Integer, Integer>();
+			Map<GroupKey, int[]> counts = new HashMap<GroupKey, int[]>();
+			
+			Calendar calendar = Calendar.getInstance();
+			for (Object[] encounter : Context.getService(EvaluationService.class).evaluateToList(sb, context)) {
+				calendar.setTime((Date) encounter[5]);
+				GroupKey key = new GroupKey(indexOf(forms, (String) encounter[1]), indexOf(locations,
+				    (Integer) encounter[2]), indexOf(creators, (Integer) encounter[3]), indexOf(providers,
+				    (Integer) encounter[4]), indexOf(months, calendar.get(Calendar.MONTH)));
+				int[] count = counts.get(key);
+				if (count == null) {
+					count = new int[1];
+					counts.put(key, count);
+				}
+				count[0]++;
+			}
+			
+			List<String> formValues = new ArrayList<String>(forms.keySet());
+			List<Location> locationValues = new ArrayList<Location>();
+			for (Integer locationId : locations.keySet()) {
+				locationValues.add(locationId == null ? null : Context.getLocationService().getLocation(locationId));
+			}
+			List<Object> creatorValues = new ArrayList<Object>();
+			for (Integer userId : creators.keySet()) {
+				creatorValues.add(Context.getUserService().getUser(userId).getNames());
+			}
+			List<Object> providerValues = new ArrayList<Object>();
+			for (Integer personId : providers.keySet()) {
+				providerValues.add(Context.getPersonService().getPerson(personId).getNames());
+			}
+			List<Integer> monthValues = new ArrayList<Integer>(months.keySet());
+			
+			List<GroupKey> keys = new ArrayList<GroupKey>(counts.keySet());
+			Collections.sort(keys);
+			for (GroupKey key : keys) {
+				DataSetRow row = new DataSetRow();
+				row.addColumnValue(formName, formValues.get(key.form));
+				row.addColumnValue(location, locationValues.get(key.location));
+				row.addColumnValue(creator, creatorValues.get(key.creator));
+				row.addColumnValue(provider, providerValues.get(key.provider));
+				row.addColumnValue(monthOfEncounter, monthValues.get(key.month) + 1);
+				row.addColumnValue(noOfEncounters, counts.get(key)[0]);
+				ret.addRow(row);
+			}
 		}
-		
-		return ret;
-	}
-	
-	private SqlEncounterQuery getEncountersCohort(Program program, List<EncounterType> encounterTypes, Date startDate,
-	        Date endDate) {
-		
-		SqlEncounterQuery encounterCohort = new SqlEncounterQuery();
-		
-		String sql = "select encounter_id from encounter where encounter_datetime >= :startDate and encounter_datetime <= :endDate and voided=0 and form_id is not null ";
-		if (!encounterTypes.isEmpty()) {
-			sql = sql + " and encounter_type in (" + getCommaSeparatedEncounterTypes(encounterTypes) + ")";
-		}
-		if (program != null) {
-			sql = sql + " and patient_id in (" + getCommaSeparatedPatientInProgram(program, endDate) + ")";
+		catch (Exception ex) {
 			
+			throw new EvaluationException("baseCohort", ex);
 		}
-		encounterCohort.setQuery(sql);
-		encounterCohort.addParameter(new Parameter("startDate", "startDate", Date.class));
-		encounterCohort.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		return encounterCohort;
 		
+		return ret;
 	}
 	
-	private String getCommaSeparatedEncounterTypes(List<EncounterType> encounterTypes) {
-		StringBuilder result = new StringBuilder();
-		for (EncounterType et : encounterTypes) {
-			if (result.length() > 0) {
-				result.append(",");
-			}
-			result.append(et.getId());
-		}
-		return result.toString();
-	}
-	
-	private String getCommaSeparatedPatientInProgram(Program program, Date endDate) {
+	private Set<Integer> getPatientsInProgram(Program program, Date endDate) {
 		InProgramCohortDefinition cd = new InProgramCohortDefinition();
 		cd.setPrograms(Arrays.asList(program));
 		cd.setOnOrBefore(endDate);
 		try {
 			Cohort cohort = Context.getService(CohortDefinitionService.class).evaluate(cd, new EvaluationContext());
-			return cohort.getCommaSeparatedPatientIds();
+			return cohort.getMemberIds();
 		}
 		catch (EvaluationException e) {
 			throw new IllegalStateException("Error eavaluating patients in program", e);
 		}
 	}
 	
-	private List<Encounter> getEncounters(Set<Integer> encounterIds) {
-		List<Encounter> encs = new ArrayList<Encounter>();
+	/**
+	 * @return the index of the value in the order the values are first seen
+	 */
+	private <T> int indexOf(Map<T, Integer> values, T value) {
+		Integer index = values.get(value);
+		if (index == null) {
+			index = values.size();
+			values.put(value, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * The form, location, creator, provider and month of a row, as indexes of their values. Rows are
+	 * sorted by form, then location, creator, provider and month.
+	 */
+	private static class GroupKey implements Comparable<GroupKey> {
 		
-		for (Integer eId : encounterIds) {
-			Encounter e = Context.getEncounterService().getEncounter(eId);
-			
-			if (e != null) {
-				encs.add(e);
+		private final int form;
+		
+		private final int location;
+		
+		private final int creator;
+		
+		private final int provider;
+		
+		private final int month;
+		
+		private GroupKey(int form, int location, int creator, int provider, int month) {
+			this.form = form;
+			this.location = location;
+			this.creator = creator;
+			this.provider = provider;
+			this.month = month;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof GroupKey)) {
+				return false;
 			}
+			GroupKey other = (GroupKey) o;
+			return form == other.form && location == other.location && creator == other.creator
+			        && provider == other.provider && month == other.month;
 		}
 		
-		return encs;
-	}
-	
-	private Integer getNoOfOccurancesGivenVariables(List<Encounter> encounters, Integer Month, User theCreator, String form,
-	        Location theLocation, Person theProvider) {
-		
-		int numberOfOccurences = 0;
-		for (Encounter enc : encounters) {
-			if (enc.getEncounterDatetime().getMonth() == Month && enc.getCreator().equals(theCreator)
-			        && enc.getForm().getName().equals(form) && enc.getLocation().equals(theLocation)
-			        && !enc.getPatient().isVoided()) {
-				boolean keep = (theProvider == null);
-				if (theProvider != null) {
-					for (EncounterProvider ep : enc.getEncounterProviders()) {
-						if (ep.getProvider().getPerson().equals(theProvider)) {
-							keep = true;
-						}
-					}
-				}
-				if (keep) {
-					numberOfOccurences++;
+		@Override
+		public int hashCode() {
+			return (((form * 31 + location) * 31 + creator) * 31 + provider) * 31 + month;
+		}
+		
+		@Override
+		public int compareTo(GroupKey other) {
+			int[] these = { form, location, creator, provider, month };
+			int[] others = { other.form, other.location, other.creator, other.provider, other.month };
+			for (int i = 0; i < these.length; i++) {
+				if (these[i] != others[i]) {
+					return these[i] < others[i] ? -1 : 1;
 				}
 			}
+			return 0;
 		}
-		return numberOfOccurences;
 	}
 }
@@ -0,0 +1,39 @@
+package org.openmrs.module.rwandareports.dataset.evaluator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.dataset.SimpleDataSet;
+import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.rowperpatientreports.dataset.definition.RowPerPatientDataSetDefinition;
+
+/**
+ * Evaluates a row per patient data set for consecutive days, with endDate set to startDate, then the
+ * next day and so on. The days are evaluated one after the other in the session of the report, on
+ * children of its context, so they share its evaluation cache and the cohorts they have in common are
+ * evaluated once.
+ */
+class DayDataSetEvaluation {
+	
+	/**
+	 * @return the data set of every day, in order
+	 */
+	static List<SimpleDataSet> evaluateDays(RowPerPatientDataSetDefinition base, EvaluationContext context,
+	        int numberOfDays) throws EvaluationException {
+		List<SimpleDataSet> days = new ArrayList<SimpleDataSet>();
+		for (int i = 0; i < numberOfDays; i++) {
+			Map<String, Object> mappings = new HashMap<String, Object>();
+			mappings.put("endDate", i > 0 ? "${startDate+" + i + "d}" : "${startDate}");
+			EvaluationContext dayContext = EvaluationContext.cloneForChild(context,
+			    new Mapped<RowPerPatientDataSetDefinition>(base, mappings));
+			days.add((SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, dayContext));
+		}
+		return days;
+	}
+}
@@ -1,5 +1,10 @@
 package org.openmrs.module.rwandareports.dataset.evaluator;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.common.ObjectUtil;
@@ -11,10 +16,16 @@ import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.reporting.indicator.IndicatorResult;
 import org.openmrs.module.reporting.indicator.service.IndicatorService;
+import org.openmrs.module.reporting.query.encounter.EncounterQueryResult;
+import org.openmrs.module.reporting.query.encounter.definition.SqlEncounterQuery;
 import org.openmrs.module.rwandareports.dataset.EncounterIndicatorDataSetDefinition;
+import org.openmrs.module.rwandareports.indicator.DisaggregatedEncounterIndicator;
 import org.openmrs.module.rwandareports.indicator.EncounterIndicator;
+import org.openmrs.module.rwandareports.indicator.EncounterIndicatorResult;
 
 @Handler(supports = { EncounterIndicatorDataSetDefinition.class })
 public class EncounterIndicatorDataSetEvaluator implements DataSetEvaluator {
@@ -45,6 +56,83 @@ public class EncounterIndicatorDataSetEvaluator implements DataSetEvaluator {
 			ret.addRow(row);
 		}
 		
+		for (DisaggregatedEncounterIndicator indicator : edsd.getDisaggregatedColumns()) {
+			for (EncounterIndicatorResult result : evaluate(indicator, context)) {
+				String name = result.getIndicator().getName();
+				DataSetRow row = new DataSetRow();
+				row.addColumnValue(new DataSetColumn(name, name, Object.class), result);
+				ret.addRow(row);
+			}
+		}
+		
 		return ret;
 	}
+	
+	/**
+	 * Runs the query of the indicator once, along with the gender and the age of the patient of every
+	 * encounter, and adds each encounter to the cells of its gender and age
+	 *
+	 * @return the result of every cell, in the order of the cells
+	 */
+	private List<EncounterIndicatorResult> evaluate(DisaggregatedEncounterIndicator indicator, EvaluationContext context)
+	        throws EvaluationException {
+		SqlEncounterQuery query = indicator.getEncounterQuery().getParameterizable();
+		EvaluationContext queryContext = EvaluationContext.cloneForChild(context, indicator.getEncounterQuery());
+		
+		List<EncounterIndicatorResult> results = new ArrayList<EncounterIndicatorResult>();
+		if (context.getBaseCohort() != null && context.getBaseCohort().isEmpty()) {
+			for (DisaggregatedEncounterIndicator.Cell cell : indicator.getCells()) {
+				results.add(createResult(indicator, cell, new EncounterQueryResult(query, queryContext), context));
+			}
+			return results;
+		}
+		
+		Date ageDate = (Date) queryContext.getParameterValue("endDate");
+		SqlQueryBuilder sb = new SqlQueryBuilder();
+		sb.append("select e.encounter_id, p.gender, datediff(:ageDate, p.birthdate) ");
+		sb.append("from encounter e ");
+		sb.append("inner join person p on p.person_id = e.patient_id ");
+		sb.append("where e.encounter_id in (" + query.getQuery() + ") ");
+		if (context.getBaseCohort() != null) {
+			sb.append("and e.patient_id in (:baseCohort) ");
+			sb.addParameter("baseCohort", context.getBaseCohort().getMemberIds());
+		}
+		for (Map.Entry<String, Object> parameter : queryContext.getParameterValues().entrySet()) {
+			sb.addParameter(parameter.getKey(), parameter.getValue());
+		}
+		sb.addParameter("ageDate", ageDate != null ? ageDate : context.getEvaluationDate());
+		
+		List<EncounterQueryResult> cells = new ArrayList<EncounterQueryResult>();
+		for (int i = 0; i < indicator.getCells().size(); i++) {
+			cells.add(new EncounterQueryResult(query, queryContext));
+		}
+		for (Object[] encounter : Context.getService(EvaluationService.class).evaluateToList(sb, context)) {
+			Integer encounterId = ((Number) encounter[0]).intValue();
+			String gender = (String) encounter[1];
+			Integer ageInDays = encounter[2] != null ? ((Number) encounter[2]).intValue() : null;
+			for (int i = 0; i < cells.size(); i++) {
+				if (indicator.getCells().get(i).contains(gender, ageInDays)) {
+					cells.get(i).getMemberIds().add(encounterId);
+				}
+			}
+		}
+		
+		for (int i = 0; i < cells.size(); i++) {
+			results.add(createResult(indicator, indicator.getCells().get(i), cells.get(i), context));
+		}
+		return results;
+	}
+	
+	private EncounterIndicatorResult createResult(DisaggregatedEncounterIndicator indicator,
+	        DisaggregatedEncounterIndicator.Cell cell, EncounterQueryResult cellResult, EvaluationContext context) {
+		EncounterIndicator cellIndicator = new EncounterIndicator();
+		cellIndicator.setName(cell.getName());
+		cellIndicator.setEncounterQuery(indicator.getEncounterQuery());
+		
+		EncounterIndicatorResult result = new EncounterIndicatorResult();
+		result.setContext(context);
+		result.setIndicator(cellIndicator);
+		result.setResult(cellResult);
+		return result;
+	}
 }
@@ -150,24 +150,35 @@ public class HIVARTRegisterDataSetDefinition2Evaluator implements DataSetEvaluat
 		EvaluatedPatientData patientData = Context.getService(PatientDataService.class).evaluate(
 		    new PatientObjectDataDefinition(), allPatientContext);
 		
-		for (Object patientObj : patientData.getData().values()) {
-			DataSetRow row = new DataSetRow();
-			Patient p = (Patient) patientObj;
-			
-			for (RowPerPatientData pd : definition.getColumns()) {
-				pd.setPatient(p);
-				pd.setPatientId(p.getPatientId());
-				long startTime = System.currentTimeMillis();
-				PatientDataResult patientDataResult = Context.getService(RowPerPatientDataService.class).evaluate(pd,
-				    context);
-				long timeTake = System.currentTimeMillis() - startTime;
-				log.info(pd.getName() + ": " + timeTake);
+		if (Boolean.TRUE.equals(definition.getBatchEvaluation())) {
+			List<Patient> patients = new ArrayList<Patient>();
+			for (Object patientObj : patientData.getData().values()) {
+				patients.add((Patient) patientObj);
+			}
+			for (DataSetRow row : new RowPerPatientColumnBatchEvaluator().evaluate(patients, cohort,
+			    definition.getColumns(), context)) {
+				dataSet.addRow(row);
+			}
+		} else {
+			for (Object patientObj : patientData.getData().values()) {
+				DataSetRow row = new DataSetRow();
+				Patient p = (Patient) patientObj;
 				
-				DataSetColumn c = new DataSetColumn(patientDataResult.getName(), patientDataResult.getDescription(),
-				        patientDataResult.getColumnClass());
-				row.addColumnValue(c, patientDataResult);
+				for (RowPerPatientData pd : definition.getColumns()) {
+					pd.setPatient(p);
+					pd.setPatientId(p.getPatientId());
+					long startTime = System.currentTimeMillis();
+					PatientDataResult patientDataResult = Context.getService(RowPerPatientDataService.class).evaluate(pd,
+					    context);
+					long timeTake = System.currentTimeMillis() - startTime;
+					log.info(pd.getName() + ": " + timeTake);
+					
+					DataSetColumn c = new DataSetColumn(patientDataResult.getName(), patientDataResult.getDescription(),
+					        patientDataResult.getColumnClass());
+					row.addColumnValue(c, patientDataResult);
+				}
+				dataSet.addRow(row);
 			}
-			dataSet.addRow(row);
 		}
 		
 		dataSet = transformDataSet(dataSet, dataSetDefinition, context);
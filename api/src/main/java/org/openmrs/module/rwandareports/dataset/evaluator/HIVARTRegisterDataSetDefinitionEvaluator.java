@@ -151,28 +151,39 @@ public class HIVARTRegisterDataSetDefinitionEvaluator implements DataSetEvaluato
 		EvaluatedPatientData patientData = Context.getService(PatientDataService.class).evaluate(
 		    new PatientObjectDataDefinition(), allPatientContext);
 		
-		for (Object patientObj : patientData.getData().values()) {
-			DataSetRow row = new DataSetRow();
-			Patient p = (Patient) patientObj;
-			
-			for (RowPerPatientData pd : definition.getColumns()) {
-				pd.setPatient(p);
-				pd.setPatientId(p.getPatientId());
-				long startTime = System.currentTimeMillis();
-				PatientDataResult patientDataResult;
-				try {
-					patientDataResult = Context.getService(RowPerPatientDataService.class).evaluate(pd, context);
-					DataSetColumn c = new DataSetColumn(patientDataResult.getName(), patientDataResult.getDescription(),
-					        patientDataResult.getColumnClass());
-					row.addColumnValue(c, patientDataResult);
-				}
-				catch (EvaluationException e) {
-					log.debug("Error evaluating dataSet", e);
+		if (Boolean.TRUE.equals(definition.getBatchEvaluation())) {
+			List<Patient> patients = new ArrayList<Patient>();
+			for (Object patientObj : patientData.getData().values()) {
+				patients.add((Patient) patientObj);
+			}
+			for (DataSetRow row : new RowPerPatientColumnBatchEvaluator().evaluate(patients, cohort,
+			    definition.getColumns(), context)) {
+				dataSet.addRow(row);
+			}
+		} else {
+			for (Object patientObj : patientData.getData().values()) {
+				DataSetRow row = new DataSetRow();
+				Patient p = (Patient) patientObj;
+				
+				for (RowPerPatientData pd : definition.getColumns()) {
+					pd.setPatient(p);
+					pd.setPatientId(p.getPatientId());
+					long startTime = System.currentTimeMillis();
+					PatientDataResult patientDataResult;
+					try {
+						patientDataResult = Context.getService(RowPerPatientDataService.class).evaluate(pd, context);
+						DataSetColumn c = new DataSetColumn(patientDataResult.getName(), patientDataResult.getDescription(),
+						        patientDataResult.getColumnClass());
+						row.addColumnValue(c, patientDataResult);
+					}
+					catch (EvaluationException e) {
+						log.debug("Error evaluating dataSet", e);
+					}
+					long timeTake = System.currentTimeMillis() - startTime;
+					log.info(pd.getName() + ": " + timeTake);
 				}
-				long timeTake = System.currentTimeMillis() - startTime;
-				log.info(pd.getName() + ": " + timeTake);
+				dataSet.addRow(row);
 			}
-			dataSet.addRow(row);
 		}
 		
 		dataSet = transformDataSet(dataSet, dataSetDefinition, context);
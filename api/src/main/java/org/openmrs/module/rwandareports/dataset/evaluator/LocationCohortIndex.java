@@ -0,0 +1,101 @@
+package org.openmrs.module.rwandareports.dataset.evaluator;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmrs.Cohort;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+
+/**
+ * Index from health facility (the Location valued person attribute) to patients, loaded with a single
+ * query per evaluation. Patients are kept per location and rolled up per value of one address
+ * hierarchy column of the non retired locations (county_district, state_province, ...), as bit sets
+ * of patient ids.
+ */
+public class LocationCohortIndex {
+	
+	private Map<Integer, BitSet> patientsByLocation = new HashMap<Integer, BitSet>();
+	
+	private Map<String, BitSet> patientsByHierarchyValue = new HashMap<String, BitSet>();
+	
+	private LocationCohortIndex() {
+	}
+	
+	/**
+	 * @param hierarchyColumn the location table column to roll the patients up by, or null if only
+	 *            the per location sets are needed
+	 * @param context the evaluation context to run the query in
+	 * @return the loaded index
+	 */
+	public static LocationCohortIndex load(String hierarchyColumn, EvaluationContext context) {
+		if (hierarchyColumn != null && !hierarchyColumn.matches("[a-z_0-9]+")) {
+			throw new IllegalArgumentException("Invalid location hierarchy column: " + hierarchyColumn);
+		}
+		
+		SqlQueryBuilder sb = new SqlQueryBuilder();
+		sb.append("select pa.person_id, l.location_id, l.retired, ");
+		sb.append(hierarchyColumn != null ? "l." + hierarchyColumn + " " : "null ");
+		sb.append("from person_attribute pa ");
+		sb.append("inner join person_attribute_type pat on pat.person_attribute_type_id = pa.person_attribute_type_id ");
+		sb.append("inner join patient p on p.patient_id = pa.person_id ");
+		sb.append("inner join location l on l.location_id = pa.value ");
+		sb.append("where pat.format = 'org.openmrs.Location' ");
+		sb.append("and pa.voided = 0 ");
+		sb.append("group by pa.person_id, l.location_id");
+		
+		LocationCohortIndex index = new LocationCohortIndex();
+		for (Object[] row : Context.getService(EvaluationService.class).evaluateToList(sb, context)) {
+			int patientId = ((Number) row[0]).intValue();
+			index.add(index.patientsByLocation, ((Number) row[1]).intValue(), patientId);
+			boolean retired = Boolean.TRUE.equals(row[2]) || "1".equals(String.valueOf(row[2]));
+			if (!retired && row[3] != null) {
+				index.add(index.patientsByHierarchyValue, normalize(row[3].toString()), patientId);
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * @return the patients whose health facility is the given location
+	 */
+	public Cohort getLocationCohort(Integer locationId) {
+		return toCohort(patientsByLocation.get(locationId));
+	}
+	
+	/**
+	 * @return the patients whose health facility has the given value in the hierarchy column the index
+	 *         was loaded with
+	 */
+	public Cohort getHierarchyCohort(String hierarchyValue) {
+		return toCohort(patientsByHierarchyValue.get(normalize(hierarchyValue)));
+	}
+	
+	private <K> void add(Map<K, BitSet> map, K key, int patientId) {
+		BitSet patients = map.get(key);
+		if (patients == null) {
+			patients = new BitSet();
+			map.put(key, patients);
+		}
+		patients.set(patientId);
+	}
+	
+	private static String normalize(String value) {
+		return value == null ? null : value.trim().toUpperCase();
+	}
+	
+	private static Cohort toCohort(BitSet patients) {
+		Set<Integer> memberIds = new HashSet<Integer>();
+		if (patients != null) {
+			for (int id = patients.nextSetBit(0); id >= 0; id = patients.nextSetBit(id + 1)) {
+				memberIds.add(id);
+			}
+		}
+		return new Cohort(memberIds);
+	}
+}
@@ -1,19 +1,24 @@
 package org.openmrs.module.rwandareports.dataset.evaluator;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.openmrs.Cohort;
 import org.openmrs.Location;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
 import org.openmrs.module.htmlwidgets.util.ReflectionUtil;
 import org.openmrs.module.reporting.cohort.CohortUtil;
-import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
-import org.openmrs.module.reporting.cohort.definition.service.CohortDefinitionService;
 import org.openmrs.module.reporting.common.ObjectUtil;
 import org.openmrs.module.reporting.dataset.DataSet;
 import org.openmrs.module.reporting.dataset.DataSetColumn;
@@ -29,6 +34,7 @@ import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.rowperpatientreports.dataset.definition.RowPerPatientDataSetDefinition;
 import org.openmrs.module.rwandareports.dataset.EncounterIndicatorDataSetDefinition;
 import org.openmrs.module.rwandareports.dataset.LocationHierachyIndicatorDataSetDefinition;
+import org.openmrs.module.rwandareports.util.GlobalPropertiesManagement;
 import org.openmrs.module.rwandareports.widget.AllLocation;
 
 @Handler(supports = { LocationHierachyIndicatorDataSetDefinition.class })
@@ -59,16 +65,24 @@ public class LocationHierachyIndicatorDataSetEvaluator implements DataSetEvaluat
 		
 		SimpleDataSet ret = new SimpleDataSet(dataSetDefinition, context);
 		
+		List<Iteration> iterations = new ArrayList<Iteration>();
+		
 		AllLocation location = lhdsd.getLocation();
 		if (location != null) {
+			String hierarchyColumn = null;
+			if (!location.isAllSites() && !location.getHierarchy().equals(AllLocation.LOCATION)) {
+				hierarchyColumn = resolveDatabaseColumnName(location.getHierarchy());
+			}
+			LocationCohortIndex index = LocationCohortIndex.load(hierarchyColumn, context);
+			
 			if (!location.isAllSites() && location.getHierarchy().equals(AllLocation.LOCATION)) {
-				addIteration(ret, getBaseCohort(location.getValue(), LOCATION, location.getValue()), location.getValue(),
-				    context, lhdsd.getBaseDefinition());
+				iterations.add(new Iteration(getBaseCohort(location.getValue(), LOCATION, location.getValue(), index),
+				        location.getValue()));
 			} else if (!location.isAllSites()) {
 				List<Location> allLocations = Context.getLocationService().getAllLocations(false);
 				
-				addIteration(ret, getBaseCohort(location.getValue(), HIERARCHY, location.getHierarchy()),
-				    location.getValue() + " " + location.getDisplayHierarchy(), context, lhdsd.getBaseDefinition());
+				iterations.add(new Iteration(getBaseCohort(location.getValue(), HIERARCHY, location.getHierarchy(), index),
+				        location.getValue() + " " + location.getDisplayHierarchy()));
 				
 				for (Location l : allLocations) {
 					String hierarchyValue = (String) ReflectionUtil.getPropertyValue(l, location.getHierarchy());
@@ -78,13 +92,12 @@ public class LocationHierachyIndicatorDataSetEvaluator implements DataSetEvaluat
 					}
 					
 					if (location.getValue() != null && location.getValue().toUpperCase().equals(hierarchyValue)) {
-						addIteration(ret, getBaseCohort(l.getName(), LOCATION, l.getName()), l.getName(), context,
-						    lhdsd.getBaseDefinition());
+						iterations.add(new Iteration(getBaseCohort(l.getName(), LOCATION, l.getName(), index), l
+						        .getName()));
 					}
 				}
 			} else {
-				addIteration(ret, getBaseCohort("All Sites", ALL_SITES, "All Sites"), "All Sites", context,
-				    lhdsd.getBaseDefinition());
+				iterations.add(new Iteration(getBaseCohort("All Sites", ALL_SITES, "All Sites", null), "All Sites"));
 				
 				List<Location> allLocations = Context.getLocationService().getAllLocations(false);
 				
@@ -119,70 +132,145 @@ public class LocationHierachyIndicatorDataSetEvaluator implements DataSetEvaluat
 				//				}
 				
 				for (Location l : allLocations) {
-					addIteration(ret, getBaseCohort(l.getName(), LOCATION, l.getName()), l.getName(), context,
-					    lhdsd.getBaseDefinition());
+					iterations.add(new Iteration(getBaseCohort(l.getName(), LOCATION, l.getName(), index), l.getName()));
 				}
 			}
 		} else if (location == null) {
-			addIteration(ret, null, null, context, lhdsd.getBaseDefinition());
+			iterations.add(new Iteration(null, null));
+		}
+		
+		if (location != null && location.isAllSites() && iterations.size() > 1
+		        && !hasRowPerPatientDefinition(lhdsd.getBaseDefinition())) {
+			addIterationsInParallel(ret, iterations, context, lhdsd.getBaseDefinition());
+		} else {
+			for (Iteration iteration : iterations) {
+				ret.addRow(evaluateIteration(iteration.cohort, iteration.locationDisplay, context,
+				    lhdsd.getBaseDefinition()));
+			}
 		}
 		
 		return ret;
 	}
 	
-	private SqlCohortDefinition getBaseCohort(String location, String hierarchy, String hierarchyValue) {
+	/**
+	 * Evaluates the per location iterations on a bounded pool of worker threads, each with its own
+	 * OpenMRS session and a clone of the evaluation context, and adds the rows in the original order.
+	 * The pool size comes from {@link GlobalPropertiesManagement#LOCATION_HIERARCHY_EVALUATION_THREADS}.
+	 * The workers share the base definitions, so they must only be indicator definitions, whose results
+	 * are plain values that outlive the session of the worker.
+	 */
+	private void addIterationsInParallel(SimpleDataSet resultsSet, List<Iteration> iterations,
+	        final EvaluationContext context, final List<DataSetDefinition> baseDefinition) throws EvaluationException {
+		
+		int threads = getNumberOfThreads();
+		if (threads <= 1) {
+			for (Iteration iteration : iterations) {
+				resultsSet.addRow(evaluateIteration(iteration.cohort, iteration.locationDisplay, context, baseDefinition));
+			}
+			return;
+		}
+		
+		final UserContext userContext = Context.getUserContext();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, iterations.size()));
+		try {
+			List<Future<DataSetRow>> rows = new ArrayList<Future<DataSetRow>>();
+			for (final Iteration iteration : iterations) {
+				rows.add(executor.submit(new Callable<DataSetRow>() {
+					
+					@Override
+					public DataSetRow call() throws Exception {
+						Context.openSession();
+						try {
+							Context.setUserContext(userContext);
+							// the clone shares the cache of the parent context, which is not safe across threads
+							EvaluationContext iterationContext = EvaluationContext.clone(context);
+							iterationContext.setCache(new HashMap<String, Object>());
+							return evaluateIteration(iteration.cohort, iteration.locationDisplay, iterationContext,
+							    baseDefinition);
+						}
+						finally {
+							Context.closeSession();
+						}
+					}
+				}));
+			}
+			
+			for (Future<DataSetRow> row : rows) {
+				resultsSet.addRow(row.get());
+			}
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof EvaluationException) {
+				throw (EvaluationException) ex.getCause();
+			}
+			throw new EvaluationException("baseDefinition", ex.getCause());
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new EvaluationException("baseDefinition", ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * @return true if one of the definitions is a row per patient data set, its evaluation sets the
+	 *         patient of the current row on the column definitions and its rows hold the patients loaded
+	 *         in the session of the evaluation, so it is evaluated in the session of the report only
+	 */
+	private boolean hasRowPerPatientDefinition(List<DataSetDefinition> baseDefinition) {
+		for (DataSetDefinition bd : baseDefinition) {
+			if (bd instanceof RowPerPatientDataSetDefinition) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private int getNumberOfThreads() {
+		String threads = Context.getAdministrationService().getGlobalProperty(
+		    GlobalPropertiesManagement.LOCATION_HIERARCHY_EVALUATION_THREADS);
+		try {
+			return Integer.parseInt(threads.trim());
+		}
+		catch (Exception e) {
+			return 1;
+		}
+	}
+	
+	private Cohort getBaseCohort(String location, String hierarchy, String hierarchyValue, LocationCohortIndex index) {
 		
 		if (hierarchy.equals(LOCATION)) {
 			Location loc = Context.getLocationService().getLocation(location);
-			
-			SqlCohortDefinition locationCohort = new SqlCohortDefinition();
-			locationCohort
-			        .setQuery("select p.patient_id from patient p, person_attribute pa, person_attribute_type pat where p.patient_id = pa.person_id and pat.format ='org.openmrs.Location' and pat.person_attribute_type_id = pa.person_attribute_type_id and pa.voided = 0 and pa.value = '"
-			                + loc.getLocationId() + "'");
-			
-			return locationCohort;
+			return index.getLocationCohort(loc.getLocationId());
 		} else if (hierarchy.equals(HIERARCHY)) {
-			
-			String hVal = resolveDatabaseColumnName(hierarchyValue);
-			
-			SqlCohortDefinition locationCohort = new SqlCohortDefinition();
-			locationCohort
-			        .setQuery("select p.patient_id from patient p, person_attribute pa, person_attribute_type pat where p.patient_id = pa.person_id and pat.format ='org.openmrs.Location' and pat.person_attribute_type_id = pa.person_attribute_type_id and pa.voided = 0 and pa.value in (select location_id from location where retired = 0 and "
-			                + hVal + " = '" + location + "')");
-			
-			return locationCohort;
+			return index.getHierarchyCohort(location);
 		}
 		
 		return null;
 	}
 	
-	private void addIteration(SimpleDataSet resultsSet, SqlCohortDefinition cohort, String locationDisplay,
-	        EvaluationContext context, List<DataSetDefinition> baseDefinition) throws EvaluationException {
+	private DataSetRow evaluateIteration(Cohort cohort, String locationDisplay, EvaluationContext context,
+	        List<DataSetDefinition> baseDefinition) throws EvaluationException {
 		Map<DataSetDefinition, DataSet> evaluatedDataSets = new HashMap<DataSetDefinition, DataSet>();
 		
+		Cohort baseCohort = context.getBaseCohort();
+		if (cohort != null) {
+			baseCohort = cohort;
+			if (context.getBaseCohort() != null) {
+				baseCohort = CohortUtil.intersect(cohort, context.getBaseCohort());
+			}
+		}
+		
 		for (DataSetDefinition bd : baseDefinition) {
 			
 			EvaluationContext ec = new EvaluationContext(context);
 			//EvaluationContext ec = EvaluationContext.cloneForChild(context, new Mapped<DataSetDefinition>(bd, new HashMap<String, Object>()));
 			//EvaluationContext ec = EvaluationContext.clone(context);
 			
-			if (cohort != null) {
-				try {
-					Cohort baseCohort = Context.getService(CohortDefinitionService.class).evaluate(cohort, ec);
-					
-					if (context.getBaseCohort() != null) {
-						baseCohort = CohortUtil.intersect(baseCohort, context.getBaseCohort());
-					}
-					
-					ec.setBaseCohort(baseCohort);
-					
-				}
-				catch (Exception ex) {
-					
-					throw new EvaluationException("baseCohort", ex);
-				}
-			} else if (context.getBaseCohort() != null) {
-				ec.setBaseCohort(context.getBaseCohort());
+			if (baseCohort != null) {
+				ec.setBaseCohort(baseCohort);
 			}
 			
 			DataSet ds;
@@ -195,11 +283,10 @@ public class LocationHierachyIndicatorDataSetEvaluator implements DataSetEvaluat
 			}
 		}
 		
-		sortResults(resultsSet, locationDisplay, evaluatedDataSets);
+		return sortResults(locationDisplay, evaluatedDataSets);
 	}
 	
-	private void sortResults(SimpleDataSet resultSet, String locationDisplay,
-	        Map<DataSetDefinition, DataSet> evaluatedDataSets) {
+	private DataSetRow sortResults(String locationDisplay, Map<DataSetDefinition, DataSet> evaluatedDataSets) {
 		DataSetRow row = new DataSetRow();
 		
 		Iterator<Entry<DataSetDefinition, DataSet>> iterator = evaluatedDataSets.entrySet().iterator();
@@ -225,7 +312,7 @@ public class LocationHierachyIndicatorDataSetEvaluator implements DataSetEvaluat
 				}
 			}
 		}
-		resultSet.addRow(row);
+		return row;
 	}
 	
 	private String resolveDatabaseColumnName(String value) {
@@ -247,4 +334,16 @@ public class LocationHierachyIndicatorDataSetEvaluator implements DataSetEvaluat
 		
 		return value;
 	}
+	
+	private static class Iteration {
+		
+		private Cohort cohort;
+		
+		private String locationDisplay;
+		
+		private Iteration(Cohort cohort, String locationDisplay) {
+			this.cohort = cohort;
+			this.locationDisplay = locationDisplay;
+		}
+	}
 }
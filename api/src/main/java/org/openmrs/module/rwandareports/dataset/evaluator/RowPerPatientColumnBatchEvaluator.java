@@ -0,0 +1,229 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.rwandareports.dataset.evaluator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.DataSetRow;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.rowperpatientreports.patientdata.definition.AllDrugOrdersRestrictedByConcept;
+import org.openmrs.module.rowperpatientreports.patientdata.definition.AllDrugOrdersRestrictedByConceptSet;
+import org.openmrs.module.rowperpatientreports.patientdata.definition.AllObservationValues;
+import org.openmrs.module.rowperpatientreports.patientdata.definition.RowPerPatientData;
+import org.openmrs.module.rowperpatientreports.patientdata.result.AllDrugOrdersResult;
+import org.openmrs.module.rowperpatientreports.patientdata.result.AllObservationValuesResult;
+import org.openmrs.module.rowperpatientreports.patientdata.result.PatientDataResult;
+import org.openmrs.module.rowperpatientreports.patientdata.service.RowPerPatientDataService;
+
+/**
+ * Evaluates a list of {@link RowPerPatientData} columns column by column for a whole cohort instead of
+ * patient by patient. Columns that only need a plain fetch of obs or drug orders (unfiltered and
+ * unparameterized {@link AllObservationValues}, {@link AllDrugOrdersRestrictedByConcept} and
+ * {@link AllDrugOrdersRestrictedByConceptSet}) are loaded with one query for all cohort members and
+ * fanned out to the rows; every other column falls back to {@link RowPerPatientDataService}.
+ * <p>
+ * Program and workflow state columns are not batched. The registers restrict their patients to a
+ * program and current state with cohort filters, which are evaluated for the whole cohort before the
+ * columns. Their one workflow state column, the date of the ART commencement state, is also the
+ * reference date of the age, initial obs and initial regimen columns, whose rowperpatientreports
+ * evaluators look it up again for every patient. A cohort-wide patient_state fetch would only replace
+ * one of those lookups, and would have to copy which state that evaluator picks.
+ */
+public class RowPerPatientColumnBatchEvaluator {
+	
+	protected Log log = LogFactory.getLog(this.getClass());
+	
+	/**
+	 * @param patients the patients to produce rows for, in row order
+	 * @param cohort the cohort the patients were loaded from
+	 * @param columns the columns to evaluate, in column order
+	 * @param context the evaluation context of the data set
+	 * @return one row per patient, with the columns in the same order as a per-patient evaluation
+	 * @throws EvaluationException if a column falling back to {@link RowPerPatientDataService} fails
+	 */
+	public List<DataSetRow> evaluate(List<Patient> patients, Cohort cohort, List<RowPerPatientData> columns,
+	        EvaluationContext context) throws EvaluationException {
+		
+		EvaluationContext batchContext = context.shallowCopy();
+		batchContext.setBaseCohort(cohort);
+		
+		List<Map<Integer, PatientDataResult>> columnResults = new ArrayList<Map<Integer, PatientDataResult>>();
+		for (RowPerPatientData pd : columns) {
+			long startTime = System.currentTimeMillis();
+			columnResults.add(evaluateColumn(pd, patients, batchContext, context));
+			log.info(pd.getName() + ": " + (System.currentTimeMillis() - startTime));
+		}
+		
+		List<DataSetRow> rows = new ArrayList<DataSetRow>();
+		for (Patient p : patients) {
+			DataSetRow row = new DataSetRow();
+			for (Map<Integer, PatientDataResult> results : columnResults) {
+				PatientDataResult patientDataResult = results.get(p.getPatientId());
+				if (patientDataResult != null) {
+					DataSetColumn c = new DataSetColumn(patientDataResult.getName(), patientDataResult.getDescription(),
+					        patientDataResult.getColumnClass());
+					row.addColumnValue(c, patientDataResult);
+				}
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	private Map<Integer, PatientDataResult> evaluateColumn(RowPerPatientData pd, List<Patient> patients,
+	        EvaluationContext batchContext, EvaluationContext context) throws EvaluationException {
+		
+		if (pd instanceof AllObservationValues && isSimpleColumn(pd)
+		        && ((AllObservationValues) pd).getFilter() == null && ((AllObservationValues) pd).getOutputFilter() == null) {
+			
+			List<Concept> concepts = new ArrayList<Concept>();
+			concepts.add(((AllObservationValues) pd).getConcept());
+			Map<Integer, List<Obs>> obsByPatient = getObs(concepts, batchContext);
+			
+			Map<Integer, PatientDataResult> results = new HashMap<Integer, PatientDataResult>();
+			for (Patient p : patients) {
+				pd.setPatient(p);
+				pd.setPatientId(p.getPatientId());
+				AllObservationValuesResult par = new AllObservationValuesResult(pd, context);
+				par.setValue(valuesFor(obsByPatient, p.getPatientId()));
+				results.put(p.getPatientId(), par);
+			}
+			return results;
+		}
+		
+		if ((pd instanceof AllDrugOrdersRestrictedByConcept || pd instanceof AllDrugOrdersRestrictedByConceptSet)
+		        && isSimpleColumn(pd)) {
+			
+			List<Concept> concepts = new ArrayList<Concept>();
+			if (pd instanceof AllDrugOrdersRestrictedByConcept) {
+				concepts.add(((AllDrugOrdersRestrictedByConcept) pd).getConcept());
+			} else {
+				concepts.addAll(Context.getConceptService().getConceptsByConceptSet(
+				    ((AllDrugOrdersRestrictedByConceptSet) pd).getDrugConceptSetConcept()));
+			}
+			Map<Integer, List<DrugOrder>> ordersByPatient = getDrugOrders(concepts, batchContext);
+			
+			Map<Integer, PatientDataResult> results = new HashMap<Integer, PatientDataResult>();
+			for (Patient p : patients) {
+				pd.setPatient(p);
+				pd.setPatientId(p.getPatientId());
+				AllDrugOrdersResult par = new AllDrugOrdersResult(pd, context);
+				par.setValue(valuesFor(ordersByPatient, p.getPatientId()));
+				results.put(p.getPatientId(), par);
+			}
+			return results;
+		}
+		
+		Map<Integer, PatientDataResult> results = new HashMap<Integer, PatientDataResult>();
+		for (Patient p : patients) {
+			pd.setPatient(p);
+			pd.setPatientId(p.getPatientId());
+			results.put(p.getPatientId(), Context.getService(RowPerPatientDataService.class).evaluate(pd, context));
+		}
+		return results;
+	}
+	
+	/**
+	 * Columns with parameters (start/end dates and the like) are evaluated per patient so that their
+	 * date restrictions are applied by their own evaluator.
+	 */
+	private boolean isSimpleColumn(RowPerPatientData pd) {
+		return pd.getParameters() == null || pd.getParameters().isEmpty();
+	}
+	
+	/**
+	 * @return the non voided obs of the given concepts for all members of the context base cohort,
+	 *         grouped by patient and ordered by obs date
+	 */
+	private Map<Integer, List<Obs>> getObs(Collection<Concept> concepts, EvaluationContext context) {
+		Map<Integer, List<Obs>> ret = new HashMap<Integer, List<Obs>>();
+		if (concepts.isEmpty()) {
+			return ret;
+		}
+		
+		HqlQueryBuilder q = new HqlQueryBuilder();
+		q.select("o.person.personId", "o");
+		q.from(Obs.class, "o");
+		q.whereEqual("o.voided", false);
+		q.whereIn("o.concept", concepts);
+		q.wherePersonIn("o.person.personId", context);
+		q.orderAsc("o.obsDatetime");
+		
+		for (Object[] row : Context.getService(EvaluationService.class).evaluateToList(q, context)) {
+			addValue(ret, (Integer) row[0], (Obs) row[1]);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return the non voided drug orders of the given concepts for all members of the context base
+	 *         cohort, grouped by patient and ordered by activation date
+	 */
+	private Map<Integer, List<DrugOrder>> getDrugOrders(Collection<Concept> concepts, EvaluationContext context) {
+		Map<Integer, List<DrugOrder>> ret = new HashMap<Integer, List<DrugOrder>>();
+		if (concepts.isEmpty()) {
+			return ret;
+		}
+		
+		HqlQueryBuilder q = new HqlQueryBuilder();
+		q.select("d.patient.patientId", "d");
+		q.from(DrugOrder.class, "d");
+		q.whereEqual("d.voided", false);
+		q.whereIn("d.concept", concepts);
+		q.wherePatientIn("d.patient.patientId", context);
+		q.orderAsc("d.dateActivated");
+		
+		for (Object[] row : Context.getService(EvaluationService.class).evaluateToList(q, context)) {
+			DrugOrder order = (DrugOrder) row[1];
+			if (order.getAction() != Order.Action.DISCONTINUE) {
+				addValue(ret, (Integer) row[0], order);
+			}
+		}
+		return ret;
+	}
+	
+	private <T> void addValue(Map<Integer, List<T>> map, Integer patientId, T value) {
+		List<T> values = map.get(patientId);
+		if (values == null) {
+			values = new ArrayList<T>();
+			map.put(patientId, values);
+		}
+		values.add(value);
+	}
+	
+	private <T> List<T> valuesFor(Map<Integer, List<T>> map, Integer patientId) {
+		List<T> values = map.get(patientId);
+		if (values == null) {
+			return new ArrayList<T>();
+		}
+		return values;
+	}
+}
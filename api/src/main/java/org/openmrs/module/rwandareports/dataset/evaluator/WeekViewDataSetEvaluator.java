@@ -6,7 +6,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.openmrs.annotation.Handler;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.common.ObjectUtil;
 import org.openmrs.module.reporting.dataset.DataSet;
 import org.openmrs.module.reporting.dataset.DataSetColumn;
@@ -15,10 +14,8 @@ import org.openmrs.module.reporting.dataset.DataSetRowList;
 import org.openmrs.module.reporting.dataset.SimpleDataSet;
 import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
-import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
-import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.rowperpatientreports.dataset.definition.RowPerPatientDataSetDefinition;
 import org.openmrs.module.rwandareports.dataset.WeekViewDataSetDefinition;
 
@@ -43,49 +40,14 @@ public class WeekViewDataSetEvaluator implements DataSetEvaluator {
 		WeekViewDataSetDefinition dsd = (WeekViewDataSetDefinition) dataSetDefinition;
 		RowPerPatientDataSetDefinition base = dsd.getBaseDefinition();
 		
-		Map<String, Object> mappingsMon = new HashMap<String, Object>();
-		mappingsMon.put("endDate", "${startDate}");
-		
-		Map<String, Object> mappingsTues = new HashMap<String, Object>();
-		mappingsTues.put("endDate", "${startDate+1d}");
-		
-		Map<String, Object> mappingsWed = new HashMap<String, Object>();
-		mappingsWed.put("endDate", "${startDate+2d}");
-		
-		Map<String, Object> mappingsThurs = new HashMap<String, Object>();
-		mappingsThurs.put("endDate", "${startDate+3d}");
-		
-		Map<String, Object> mappingsFri = new HashMap<String, Object>();
-		mappingsFri.put("endDate", "${startDate+4d}");
-		
-		Map<String, Object> mappingsSat = new HashMap<String, Object>();
-		mappingsSat.put("endDate", "${startDate+5d}");
-		
-		Map<String, Object> mappingsSun = new HashMap<String, Object>();
-		mappingsSun.put("endDate", "${startDate+6d}");
-		
-		EvaluationContext ecMon = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(base,
-		        mappingsMon));
-		EvaluationContext ecTues = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(base,
-		        mappingsTues));
-		EvaluationContext ecWed = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(base,
-		        mappingsWed));
-		EvaluationContext ecThurs = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(
-		        base, mappingsThurs));
-		EvaluationContext ecFri = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(base,
-		        mappingsFri));
-		EvaluationContext ecSat = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(base,
-		        mappingsSat));
-		EvaluationContext ecSun = EvaluationContext.cloneForChild(context, new Mapped<RowPerPatientDataSetDefinition>(base,
-		        mappingsSun));
-		
-		SimpleDataSet monday = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ecMon);
-		SimpleDataSet tuesday = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ecTues);
-		SimpleDataSet wednesday = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ecWed);
-		SimpleDataSet thursday = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ecThurs);
-		SimpleDataSet friday = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ecFri);
-		SimpleDataSet saturday = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ecSat);
-		SimpleDataSet sunday = (SimpleDataSet) Context.getService(DataSetDefinitionService.class).evaluate(base, ecSun);
+		List<SimpleDataSet> days = DayDataSetEvaluation.evaluateDays(base, context, 7);
+		SimpleDataSet monday = days.get(0);
+		SimpleDataSet tuesday = days.get(1);
+		SimpleDataSet wednesday = days.get(2);
+		SimpleDataSet thursday = days.get(3);
+		SimpleDataSet friday = days.get(4);
+		SimpleDataSet saturday = days.get(5);
+		SimpleDataSet sunday = days.get(6);
 		
 		Map<SimpleDataSet, String> week = new HashMap<SimpleDataSet, String>();
 		week.put(monday, "monday");
@@ -46,6 +46,11 @@ public class DrugsActiveCohortDefinitionEvaluator implements CohortDefinitionEva
 	public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context) {
 		DrugsActiveCohortDefinition definition = (DrugsActiveCohortDefinition) cohortDefinition;
 		
+		EvaluatedCohort ret = new EvaluatedCohort(cohortDefinition, context);
+		if (context.getBaseCohort() != null && context.getBaseCohort().isEmpty()) {
+			return ret;
+		}
+		
 		List<Integer> drugIds = new ArrayList<Integer>();
 		for (Drug drug : definition.getDrugs()) {
 			drugIds.add(drug.getDrugId());
@@ -70,17 +75,16 @@ public class DrugsActiveCohortDefinitionEvaluator implements CohortDefinitionEva
 		}
 		sb.append("and drug.retired = false ");
 		sb.append("and orders.voided = false ");
+		if (context.getBaseCohort() != null) {
+			sb.append("and orders.patient_id in (:baseCohort) ");
+			sb.addParameter("baseCohort", context.getBaseCohort().getMemberIds());
+		}
 		sb.append("group by orders.patient_id ");
 		
 		sb.addParameter("drugIds", drugIds);
 		sb.addParameter("asOfDate", definition.getAsOfDate());
 		
 		List<Integer> l = Context.getService(EvaluationService.class).evaluateToList(sb, Integer.class, context);
-		if (context.getBaseCohort() != null) {
-			l.retainAll(context.getBaseCohort().getMemberIds());
-		}
-		
-		EvaluatedCohort ret = new EvaluatedCohort(cohortDefinition, context);
 		ret.setMemberIds(new HashSet<Integer>(l));
 		return ret;
 	}
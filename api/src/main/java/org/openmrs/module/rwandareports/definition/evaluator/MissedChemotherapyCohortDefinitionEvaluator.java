@@ -15,25 +15,27 @@ package org.openmrs.module.rwandareports.definition.evaluator;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 import org.openmrs.Cohort;
-import org.openmrs.DrugOrder;
-import org.openmrs.Encounter;
 import org.openmrs.Form;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
-import org.openmrs.module.orderextension.api.OrderExtensionService;
 import org.openmrs.module.reporting.cohort.EvaluatedCohort;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.rwandareports.definition.MissedChemotherapyCohortDefinition;
 import org.openmrs.module.rwandareports.util.GlobalPropertiesManagement;
 import org.openmrs.util.OpenmrsUtil;
 
 /**
- * 
+ * The patients with an IV drug order for the chemotherapy indication that started in the six months
+ * before the date, after the last chemotherapy treatment summary of the patient. The orders and the
+ * date of the last treatment summary of their patient are read with a single query.
  */
 @Handler(supports = { MissedChemotherapyCohortDefinition.class })
 public class MissedChemotherapyCohortDefinitionEvaluator implements CohortDefinitionEvaluator {
@@ -54,9 +56,12 @@ public class MissedChemotherapyCohortDefinitionEvaluator implements CohortDefini
 		Form treatmentAdminForm = gp.getForm(GlobalPropertiesManagement.CHEMOTHERAPY_TREATMENT_SUMMARY_FORM);
 		Form treatmentAdminFormShort = gp.getForm(GlobalPropertiesManagement.CHEMOTHERAPY_TREATMENT_SUMMARY_FORM_SHORT);
 		
-		List<Form> forms = new ArrayList<Form>();
-		forms.add(treatmentAdminForm);
-		forms.add(treatmentAdminFormShort);
+		List<Integer> forms = new ArrayList<Integer>();
+		for (Form form : new Form[] { treatmentAdminForm, treatmentAdminFormShort }) {
+			if (form != null) {
+				forms.add(form.getFormId());
+			}
+		}
 		
 		MissedChemotherapyCohortDefinition definition = (MissedChemotherapyCohortDefinition) cohortDefinition;
 		
@@ -66,27 +71,50 @@ public class MissedChemotherapyCohortDefinitionEvaluator implements CohortDefini
 		}
 		from.add(Calendar.MONTH, -6);
 		
-		List<DrugOrder> orders = Context.getService(OrderExtensionService.class).getDrugOrders(null,
-		    definition.getChemotherapyIndication(), from.getTime(), definition.getBeforeDate());
-		Cohort cohort = new Cohort();
-		
 		Calendar formEndDate = Calendar.getInstance();
 		formEndDate.setTime(definition.getBeforeDate());
 		formEndDate.add(Calendar.DAY_OF_YEAR, 1);
 		
-		for (DrugOrder order : orders) {
-			if (order.getRoute() != null
-			        && gp.getConceptList(GlobalPropertiesManagement.IV_CONCEPT).contains(order.getRoute())) {
-				List<Encounter> lastChemo = Context.getEncounterService().getEncounters(order.getPatient(), null, null,
-				    formEndDate.getTime(), forms, null, null, null, null, false);
-				if (lastChemo.size() > 0) {
-					Encounter lastEncounter = lastChemo.get(lastChemo.size() - 1);
-					if (OpenmrsUtil.compare(order.getEffectiveStartDate(), lastEncounter.getEncounterDatetime()) > 0) {
-						cohort.addMember(order.getPatient().getId());
-					}
-				} else {
-					cohort.addMember(order.getPatient().getId());
-				}
+		Cohort cohort = new Cohort();
+		List<Integer> ivRoutes = UpcomingChemotherapyCohortDefinitionEvaluator.getConceptIds(gp
+		        .getConceptList(GlobalPropertiesManagement.IV_CONCEPT));
+		if (ivRoutes.isEmpty() || (context.getBaseCohort() != null && context.getBaseCohort().isEmpty())) {
+			return new EvaluatedCohort(cohort, cohortDefinition, context);
+		}
+		
+		SqlQueryBuilder sb = new SqlQueryBuilder();
+		sb.append("select o.patient_id, ifnull(o.scheduled_date, o.date_activated), ");
+		if (forms.isEmpty()) {
+			sb.append("null ");
+		} else {
+			sb.append("(select max(e.encounter_datetime) from encounter e ");
+			sb.append(" where e.patient_id = o.patient_id and e.voided = 0 and e.form_id in (:forms) ");
+			sb.append(" and e.encounter_datetime <= :formEndDate) ");
+			sb.addParameter("forms", forms);
+			sb.addParameter("formEndDate", formEndDate.getTime());
+		}
+		sb.append("from orders o ");
+		sb.append("inner join drug_order d on d.order_id = o.order_id ");
+		sb.append("where o.voided = 0 ");
+		sb.append("and d.route in (:ivRoutes) ");
+		if (definition.getChemotherapyIndication() != null) {
+			sb.append("and o.order_reason = :indication ");
+			sb.addParameter("indication", definition.getChemotherapyIndication().getConceptId());
+		}
+		sb.append("and ifnull(o.scheduled_date, o.date_activated) >= :from ");
+		sb.append("and ifnull(o.scheduled_date, o.date_activated) <= :beforeDate ");
+		if (context.getBaseCohort() != null) {
+			sb.append("and o.patient_id in (:baseCohort) ");
+			sb.addParameter("baseCohort", context.getBaseCohort().getMemberIds());
+		}
+		sb.addParameter("ivRoutes", ivRoutes);
+		sb.addParameter("from", from.getTime());
+		sb.addParameter("beforeDate", definition.getBeforeDate());
+		
+		for (Object[] order : Context.getService(EvaluationService.class).evaluateToList(sb, context)) {
+			Date lastChemo = (Date) order[2];
+			if (lastChemo == null || OpenmrsUtil.compare((Date) order[1], lastChemo) > 0) {
+				cohort.addMember(((Number) order[0]).intValue());
 			}
 		}
 		return new EvaluatedCohort(cohort, cohortDefinition, context);
@@ -49,7 +49,9 @@ public class PatientCohortDefinitionEvaluator implements CohortDefinitionEvaluat
 		}
 		//TODO fix paramter stuff
 		Cohort c = new Cohort();
-		c.addMember(definition.getPatient().getId());
+		if (context.getBaseCohort() == null || context.getBaseCohort().contains(definition.getPatient().getId())) {
+			c.addMember(definition.getPatient().getId());
+		}
 		
 		return new EvaluatedCohort(c, cohortDefinition, context);
 	}
@@ -13,22 +13,25 @@
  */
 package org.openmrs.module.rwandareports.definition.evaluator;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
-import org.openmrs.Cohort;
-import org.openmrs.DrugOrder;
+import org.openmrs.Concept;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
-import org.openmrs.module.orderextension.api.OrderExtensionService;
 import org.openmrs.module.reporting.cohort.EvaluatedCohort;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.rwandareports.definition.UpcomingChemotherapyCohortDefinition;
 import org.openmrs.module.rwandareports.util.GlobalPropertiesManagement;
 
 /**
- * 
+ * The patients with an IV drug order for the chemotherapy indication starting in the period, read
+ * with a single query on the order tables instead of loading the drug orders
  */
 @Handler(supports = { UpcomingChemotherapyCohortDefinition.class })
 public class UpcomingChemotherapyCohortDefinitionEvaluator implements CohortDefinitionEvaluator {
@@ -47,16 +50,50 @@ public class UpcomingChemotherapyCohortDefinitionEvaluator implements CohortDefi
 	public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context) {
 		UpcomingChemotherapyCohortDefinition definition = (UpcomingChemotherapyCohortDefinition) cohortDefinition;
 		
-		List<DrugOrder> orders = Context.getService(OrderExtensionService.class).getDrugOrders(null,
-		    definition.getChemotherapyIndication(), definition.getAsOfDate(), definition.getUntilDate());
-		Cohort cohort = new Cohort();
+		EvaluatedCohort ret = new EvaluatedCohort(cohortDefinition, context);
+		List<Integer> ivRoutes = getConceptIds(gp.getConceptList(GlobalPropertiesManagement.IV_CONCEPT));
+		if (ivRoutes.isEmpty() || (context.getBaseCohort() != null && context.getBaseCohort().isEmpty())) {
+			return ret;
+		}
+		
+		SqlQueryBuilder sb = new SqlQueryBuilder();
+		sb.append("select distinct o.patient_id ");
+		sb.append("from orders o ");
+		sb.append("inner join drug_order d on d.order_id = o.order_id ");
+		sb.append("where o.voided = 0 ");
+		sb.append("and d.route in (:ivRoutes) ");
+		if (definition.getChemotherapyIndication() != null) {
+			sb.append("and o.order_reason = :indication ");
+			sb.addParameter("indication", definition.getChemotherapyIndication().getConceptId());
+		}
+		if (definition.getAsOfDate() != null) {
+			sb.append("and ifnull(o.scheduled_date, o.date_activated) >= :asOfDate ");
+			sb.addParameter("asOfDate", definition.getAsOfDate());
+		}
+		if (definition.getUntilDate() != null) {
+			sb.append("and ifnull(o.scheduled_date, o.date_activated) <= :untilDate ");
+			sb.addParameter("untilDate", definition.getUntilDate());
+		}
+		if (context.getBaseCohort() != null) {
+			sb.append("and o.patient_id in (:baseCohort) ");
+			sb.addParameter("baseCohort", context.getBaseCohort().getMemberIds());
+		}
+		sb.addParameter("ivRoutes", ivRoutes);
 		
-		for (DrugOrder order : orders) {
-			if (order.getRoute() != null
-			        && gp.getConceptList(GlobalPropertiesManagement.IV_CONCEPT).contains(order.getRoute())) {
-				cohort.addMember(order.getPatient().getId());
+		ret.setMemberIds(new HashSet<Integer>(Context.getService(EvaluationService.class).evaluateToList(sb,
+		    Integer.class, context)));
+		return ret;
+	}
+	
+	static List<Integer> getConceptIds(List<Concept> concepts) {
+		List<Integer> ids = new ArrayList<Integer>();
+		if (concepts != null) {
+			for (Concept concept : concepts) {
+				if (concept != null) {
+					ids.add(concept.getConceptId());
+				}
 			}
 		}
-		return new EvaluatedCohort(cohort, cohortDefinition, context);
+		return ids;
 	}
 }
@@ -19,7 +19,7 @@ import javax.annotation.Generated;
 
 @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
 @Generated("org.jsonschema2pojo")
-@JsonPropertyOrder({ "dataElement", "value", "categoryOptionCombo", "comment" })
+@JsonPropertyOrder({ "dataElement", "period", "orgUnit", "value", "categoryOptionCombo", "comment" })
 public class DHISDataValue {
 	
 	@JsonProperty("dataElement")
@@ -34,6 +34,12 @@ public class DHISDataValue {
 	@JsonProperty("comment")
 	private String comment;
 	
+	@JsonProperty("period")
+	private String period;
+	
+	@JsonProperty("orgUnit")
+	private String orgUnit;
+	
 	@JsonProperty("categoryOptionCombo")
 	public String getCategoryOptionCombo() {
 		return categoryOptionCombo;
@@ -86,4 +92,36 @@ public class DHISDataValue {
 		this.value = value;
 	}
 	
+	/**
+	 * @return The period, only set when it differs from the one of the data value set
+	 */
+	@JsonProperty("period")
+	public String getPeriod() {
+		return period;
+	}
+	
+	/**
+	 * @param period The period
+	 */
+	@JsonProperty("period")
+	public void setPeriod(String period) {
+		this.period = period;
+	}
+	
+	/**
+	 * @return The orgUnit, only set when it differs from the one of the data value set
+	 */
+	@JsonProperty("orgUnit")
+	public String getOrgUnit() {
+		return orgUnit;
+	}
+	
+	/**
+	 * @param orgUnit The orgUnit
+	 */
+	@JsonProperty("orgUnit")
+	public void setOrgUnit(String orgUnit) {
+		this.orgUnit = orgUnit;
+	}
+	
 }
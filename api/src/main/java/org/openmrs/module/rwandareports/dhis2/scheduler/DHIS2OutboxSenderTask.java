@@ -0,0 +1,24 @@
+package org.openmrs.module.rwandareports.dhis2.scheduler;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.rwandareports.api.DHIS2OutboxService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Sends the data value sets of the DHIS2 outbox whose next attempt is due, those that failed earlier
+ * and those that could not be sent when their report was evaluated
+ */
+public class DHIS2OutboxSenderTask extends AbstractTask {
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	@Override
+	public void execute() {
+		int sent = Context.getService(DHIS2OutboxService.class).sendPending();
+		if (sent > 0) {
+			log.info("Sent " + sent + " data value set(s) from the DHIS2 outbox");
+		}
+	}
+}
@@ -1,10 +1,15 @@
 package org.openmrs.module.rwandareports.dhis2.scheduler;
 
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -14,16 +19,25 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.joda.time.DateTime;
 import org.openmrs.Location;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
 import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.report.Report;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
 import org.openmrs.module.reporting.report.definition.service.ReportDefinitionService;
+import org.openmrs.module.rwandareports.RwandaReportsModuleActivator;
+import org.openmrs.module.rwandareports.api.DHIS2OutboxEntry;
+import org.openmrs.module.rwandareports.api.DHIS2OutboxService;
 import org.openmrs.module.rwandareports.dhis2.util.DHIS2Util;
 import org.openmrs.scheduler.tasks.AbstractTask;
 
 /**
  * A scheduled task for sending HMIS Cancer Screening Monthly Indicator Report to DHIS2 . Scheduled
  * Tasks are regularly timed tasks that can run every few seconds, every day, every week, etc. See
- * Admin-->Manager Scheduled Tasks for the administration of them.
+ * Admin-->Manager Scheduled Tasks for the administration of them. The facilities are evaluated on a
+ * bounded pool of threads and each facility is pushed as soon as its report is ready, while the
+ * others are still being evaluated. Every facility and push runs in its own daemon thread, with its own
+ * session and user context. The evaluated data values go through the DHIS2 outbox, so a
+ * failed push is retried without evaluating the report again.
  * 
  * @author Bailly RURANGIRWA
  */
@@ -42,6 +56,7 @@ public class HMISReportAutoRunTask extends AbstractTask {
 		String locationsMapping = Context.getAdministrationService().getGlobalProperty("reports.LocationsToOrgUnitsMapping");
 		ObjectMapper mapper = new ObjectMapper();
 		JsonNode actualObj;
+		Map<Location, String> orgUnits = new LinkedHashMap<Location, String>();
 		try {
 			actualObj = mapper.readTree(locationsMapping);
 			Iterator<Entry<String, JsonNode>> locationsIterator = actualObj.getFields();
@@ -49,9 +64,7 @@ public class HMISReportAutoRunTask extends AbstractTask {
 				Map.Entry<String, JsonNode> entry = locationsIterator.next();
 				Location location = Context.getLocationService().getLocation(entry.getKey());
 				if (location != null && hmisReportDefinition != null) {
-					log.error("Running report for " + location.getName());
-					DHIS2Util.runAndPushReportToDHIS(hmisReportDefinition, startDate, endDate, location, entry.getValue()
-					        .asText());
+					orgUnits.put(location, entry.getValue().asText());
 				}
 			}
 		}
@@ -63,5 +76,144 @@ public class HMISReportAutoRunTask extends AbstractTask {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		
+		if (!orgUnits.isEmpty()) {
+			runAndPushReports(hmisReportDefinition, startDate, endDate, orgUnits);
+		}
+	}
+	
+	/**
+	 * Evaluates the report of every facility on a pool of "reports.HMISReportEvaluationThreads" threads,
+	 * stores each evaluated data value set in the DHIS2 outbox and hands it to a single sender thread,
+	 * so that pushing a facility overlaps with evaluating the next ones. A facility whose entry for the
+	 * period is still pending is not evaluated again, its entry is sent as it is. The others are
+	 * evaluated again so that data entered late is sent, the outbox does not send a payload again when
+	 * it is unchanged since it was sent. Failed pushes are retried by the {@link DHIS2OutboxSenderTask}.
+	 * Returns once every facility has been tried.
+	 */
+	private void runAndPushReports(final ReportDefinition reportDefinition, final Date startDate, final Date endDate,
+	        Map<Location, String> orgUnits) {
+		
+		final String period = DHIS2Util.getPeriod(LocalDate.now());
+		int threads = getIntegerGlobalProperty("reports.HMISReportEvaluationThreads", 1);
+		
+		final CountDownLatch done = new CountDownLatch(orgUnits.size());
+		final ExecutorService sender = Executors.newSingleThreadExecutor();
+		ExecutorService evaluator = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, orgUnits.size())));
+		try {
+			for (final Map.Entry<Location, String> orgUnit : orgUnits.entrySet()) {
+				evaluator.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							runInDaemonThread(new Runnable() {
+								
+								@Override
+								public void run() {
+									evaluate(reportDefinition, startDate, endDate, period, orgUnit, sender, done);
+								}
+							});
+						}
+						catch (Exception e) {
+							log.error("Unable to run the HMIS report for " + orgUnit.getKey().getName(), e);
+							done.countDown();
+						}
+					}
+				});
+			}
+			done.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			evaluator.shutdownNow();
+			sender.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Evaluates the report of the facility unless its entry is still pending and hands the entry to the
+	 * sender, the latch is counted down once the facility is done
+	 */
+	private void evaluate(ReportDefinition reportDefinition, Date startDate, Date endDate, String period,
+	        Map.Entry<Location, String> orgUnit, ExecutorService sender, CountDownLatch done) {
+		DHIS2OutboxService outbox = Context.getService(DHIS2OutboxService.class);
+		try {
+			// the location is loaded again in the session of this thread
+			Location location = Context.getLocationService().getLocation(orgUnit.getKey().getId());
+			DHIS2OutboxEntry entry = outbox.getEntry(reportDefinition.getUuid(), period, orgUnit.getValue());
+			if (entry != null && DHIS2OutboxEntry.PENDING.equals(entry.getStatus())) {
+				log.info("HMIS report for " + location.getName() + " already evaluated, " + entry.getStatus());
+			} else {
+				log.info("Running report for " + location.getName());
+				Report ranReport = DHIS2Util.runIndicatorReport(reportDefinition, startDate, endDate, location);
+				if (ranReport != null) {
+					entry = outbox.enqueue(reportDefinition.getUuid(),
+					    DHIS2Util.buildDataValueSet(ranReport, orgUnit.getValue()));
+				}
+			}
+			if (entry == null || DHIS2OutboxEntry.SENT.equals(entry.getStatus())) {
+				done.countDown();
+			} else {
+				sender.execute(new SendTask(entry, done));
+			}
+		}
+		catch (Exception e) {
+			log.error("Unable to run the HMIS report for " + orgUnit.getKey().getName(), e);
+			done.countDown();
+		}
+	}
+	
+	/**
+	 * Runs the runnable in a new daemon thread, with its own session, and waits for it
+	 */
+	private static void runInDaemonThread(Runnable runnable) throws InterruptedException {
+		Daemon.runInDaemonThread(runnable, RwandaReportsModuleActivator.getDaemonToken()).join();
+	}
+	
+	private int getIntegerGlobalProperty(String globalPropertyName, int defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (Exception e) {
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Makes the first attempt to send an outbox entry, the outbox schedules the next ones if it fails
+	 */
+	private static class SendTask implements Runnable {
+		
+		private final DHIS2OutboxEntry entry;
+		
+		private final CountDownLatch done;
+		
+		SendTask(DHIS2OutboxEntry entry, CountDownLatch done) {
+			this.entry = entry;
+			this.done = done;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				runInDaemonThread(new Runnable() {
+					
+					@Override
+					public void run() {
+						Context.getService(DHIS2OutboxService.class).send(entry);
+					}
+				});
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				done.countDown();
+			}
+		}
 	}
 }
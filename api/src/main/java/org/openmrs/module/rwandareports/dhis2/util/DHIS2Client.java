@@ -0,0 +1,204 @@
+package org.openmrs.module.rwandareports.dhis2.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.auth.AuthenticationException;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectWriter;
+import org.openmrs.module.rwandareports.dhis2.model.DHISDataValue;
+import org.openmrs.module.rwandareports.dhis2.model.DHISDataValueSet;
+
+/**
+ * Long lived client for the DHIS2 dataValueSets endpoint. Connections are pooled and kept alive
+ * between pushes and the basic authentication header is computed once. Several data value sets can
+ * be sent in a single request, each data value then carries the org unit and period of its set.
+ * Connecting, waiting for a pooled connection and waiting for the response all time out, so a DHIS2
+ * server that does not answer fails the push instead of holding the thread. A client that is replaced
+ * is retired, it is closed once the requests it is sending are done.
+ */
+public class DHIS2Client implements Closeable {
+	
+	protected final static Log log = LogFactory.getLog(DHIS2Client.class);
+	
+	private static final int MAX_CONNECTIONS = 10;
+	
+	private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+	
+	private static final int CONNECTION_REQUEST_TIMEOUT_MILLIS = 60 * 1000;
+	
+	/**
+	 * DHIS2 answers once the whole data value set is imported, which can take a few minutes
+	 */
+	private static final int SOCKET_TIMEOUT_MILLIS = 5 * 60 * 1000;
+	
+	private final String postUrl;
+	
+	private final Header authorization;
+	
+	private final boolean compress;
+	
+	private final CloseableHttpClient client;
+	
+	private final ObjectWriter writer = new ObjectMapper().writer();
+	
+	private int inFlight;
+	
+	private boolean retired;
+	
+	/**
+	 * @param postUrl the dataValueSets URL to post to
+	 * @param username the DHIS2 user
+	 * @param password the password of the DHIS2 user
+	 * @param compress whether the request bodies are gzip compressed
+	 */
+	public DHIS2Client(String postUrl, String username, String password, boolean compress) throws AuthenticationException {
+		this.postUrl = postUrl;
+		this.compress = compress;
+		this.authorization = new BasicScheme().authenticate(new UsernamePasswordCredentials(username, password),
+		    new HttpPost(postUrl), new BasicHttpContext());
+		
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(MAX_CONNECTIONS);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+		RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+		        .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MILLIS).setSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+		        .build();
+		this.client = HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig)
+		        .build();
+	}
+	
+	/**
+	 * Posts the data value sets in a single request
+	 * 
+	 * @return the response body
+	 * @throws IOException if they could not be sent, DHIS2 did not accept them or the client is retired
+	 */
+	public String post(List<DHISDataValueSet> dataValueSets) throws IOException {
+		synchronized (this) {
+			if (retired) {
+				throw new IOException("The DHIS2 client was replaced, the data value sets can be sent again");
+			}
+			inFlight++;
+		}
+		try {
+			return doPost(dataValueSets);
+		}
+		finally {
+			boolean close;
+			synchronized (this) {
+				inFlight--;
+				close = retired && inFlight == 0;
+			}
+			if (close) {
+				closeQuietly();
+			}
+		}
+	}
+	
+	private String doPost(List<DHISDataValueSet> dataValueSets) throws IOException {
+		String json = writer.writeValueAsString(merge(dataValueSets));
+		log.debug("Posting data..." + json);
+		
+		HttpPost httpPost = new HttpPost(postUrl);
+		HttpEntity entity = new StringEntity(json, ContentType.APPLICATION_JSON);
+		httpPost.setEntity(compress ? new GzipCompressingEntity(entity) : entity);
+		httpPost.setHeader("Accept", "application/json");
+		httpPost.setHeader(authorization);
+		
+		CloseableHttpResponse response = client.execute(httpPost);
+		try {
+			// reading the body releases the connection back to the pool
+			String body = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity());
+			int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode < 200 || statusCode >= 300) {
+				throw new IOException("DHIS2 responded with " + response.getStatusLine() + " for "
+				        + dataValueSets.size() + " data value set(s): " + body);
+			}
+			return body;
+		}
+		finally {
+			response.close();
+		}
+	}
+	
+	/**
+	 * @return the only data value set, or one set holding the values of all of them with the org unit
+	 *         and period set on every value
+	 */
+	DHISDataValueSet merge(List<DHISDataValueSet> dataValueSets) {
+		if (dataValueSets.isEmpty()) {
+			throw new IllegalArgumentException("No data value sets to send");
+		}
+		if (dataValueSets.size() == 1) {
+			return dataValueSets.get(0);
+		}
+		
+		DHISDataValueSet first = dataValueSets.get(0);
+		DHISDataValueSet batch = new DHISDataValueSet();
+		batch.setDataSet(first.getDataSet());
+		batch.setCompleteData(first.getCompleteData());
+		for (DHISDataValueSet dataValueSet : dataValueSets) {
+			if (first.getDataSet() != null && !first.getDataSet().equals(dataValueSet.getDataSet())) {
+				throw new IllegalArgumentException("Only data value sets of the same data set can be sent together");
+			}
+			for (DHISDataValue dataValue : dataValueSet.getDataValues()) {
+				DHISDataValue dv = new DHISDataValue();
+				dv.setDataElement(dataValue.getDataElement());
+				dv.setCategoryOptionCombo(dataValue.getCategoryOptionCombo());
+				dv.setValue(dataValue.getValue());
+				dv.setComment(dataValue.getComment());
+				dv.setOrgUnit(dataValue.getOrgUnit() != null ? dataValue.getOrgUnit() : dataValueSet.getOrgUnit());
+				dv.setPeriod(dataValue.getPeriod() != null ? dataValue.getPeriod() : dataValueSet.getPeriod());
+				batch.addDataValue(dv);
+			}
+		}
+		return batch;
+	}
+	
+	/**
+	 * Takes the client out of use, it is closed now or once the requests it is sending are done
+	 */
+	public void retire() {
+		boolean close;
+		synchronized (this) {
+			retired = true;
+			close = inFlight == 0;
+		}
+		if (close) {
+			closeQuietly();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+	
+	private void closeQuietly() {
+		try {
+			close();
+		}
+		catch (IOException e) {
+			log.warn("Unable to close the DHIS2 client", e);
+		}
+	}
+}
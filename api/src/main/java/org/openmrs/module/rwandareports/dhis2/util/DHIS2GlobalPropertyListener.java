@@ -0,0 +1,33 @@
+package org.openmrs.module.rwandareports.dhis2.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+
+/**
+ * Drops the DHIS2 client and the parsed indicator mapping cached by {@link DHIS2Util} when one of the
+ * global properties they are built from changes
+ */
+public class DHIS2GlobalPropertyListener implements GlobalPropertyListener {
+	
+	private static final List<String> PROPERTIES = Arrays.asList("reports.DHIS2PostURL",
+	    "reports.DHIS2AuthorizationUsername", "reports.DHIS2AuthorizationPassword", "reports.DHIS2CompressRequests",
+	    "reports.HMISIndicatorToDataElementsMapping");
+	
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return PROPERTIES.contains(propertyName);
+	}
+	
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		DHIS2Util.clearCache();
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		DHIS2Util.clearCache();
+	}
+}
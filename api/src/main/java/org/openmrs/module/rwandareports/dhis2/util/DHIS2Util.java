@@ -10,25 +10,12 @@ import java.util.List;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.Header;
 import org.apache.http.auth.AuthenticationException;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.protocol.BasicHttpContext;
-import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.JsonProcessingException;
-import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.ObjectWriter;
 import org.openmrs.Location;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.dataset.DataSet;
 import org.openmrs.module.reporting.dataset.DataSetColumn;
@@ -50,13 +37,9 @@ public class DHIS2Util {
 	
 	protected final static Log log = LogFactory.getLog(DHIS2Util.class);
 	
-	public static void runAndPushReportToDHIS(ReportDefinition reportDefinition, Date startDate, Date endDate,
-	        Location location, String orgUnitUid) {
-		Report ranReport = runIndicatorReport(reportDefinition, startDate, endDate, location);
-		if (ranReport != null) {
-			sendReportDataToDHIS(ranReport, orgUnitUid);
-		}
-	}
+	private static DHIS2Client client;
+	
+	private static JsonNode indicatorsMapping;
 	
 	public static Report runIndicatorReport(ReportDefinition reportDef, Date startDate, Date endDate, Location location) {
 		
@@ -76,7 +59,11 @@ public class DHIS2Util {
 		return Context.getService(ReportService.class).runReport(request);
 	}
 	
-	public static Object sendReportDataToDHIS(Report ranReport, String orgUnitUid) {
+	/**
+	 * @return the data values of the HMIS data set of the report, mapped to the DHIS2 data elements
+	 * @throws APIException if the indicators mapping cannot be read, nothing must be sent then
+	 */
+	public static DHISDataValueSet buildDataValueSet(Report ranReport, String orgUnitUid) {
 		
 		DHISDataValueSet dataValueSet = new DHISDataValueSet();
 		String datasetToSend = Context.getAdministrationService().getGlobalProperty("reports.HMISDataSetToSend");
@@ -86,12 +73,9 @@ public class DHIS2Util {
 		List<DHISDataValue> dataValues = new ArrayList<DHISDataValue>();
 		String dataSetId = Context.getAdministrationService().getGlobalProperty("reports.HMISDataSetId");
 		
-		String indicatorsMapping = Context.getAdministrationService().getGlobalProperty(
-		    "reports.HMISIndicatorToDataElementsMapping");
-		ObjectMapper mapper = new ObjectMapper();
 		JsonNode actualObj = null;
 		try {
-			actualObj = mapper.readTree(indicatorsMapping);
+			actualObj = getIndicatorsMapping();
 			
 			for (int i = 0; i < columns.size(); i++) {
 				DHISDataValue dv = new DHISDataValue();
@@ -112,44 +96,29 @@ public class DHIS2Util {
 				}
 			}
 		}
-		catch (JsonProcessingException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-		catch (IOException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
+		catch (IOException e) {
+			log.error("Unable to read the DHIS2 indicators mapping", e);
+			throw new APIException("Unable to read the DHIS2 indicators mapping, the data values of " + orgUnitUid
+			        + " are not sent", e);
 		}
 		dataValueSet.setDataValues(dataValues);
 		dataValueSet.setOrgUnit(orgUnitUid);
 		dataValueSet.setCompleteData(getCompleteDate(new Date()));
 		dataValueSet.setPeriod(getPeriod(LocalDate.now()));
 		dataValueSet.setDataSet(dataSetId);
-		
-		ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-		try {
-			String json = ow.writeValueAsString(dataValueSet);
-			log.error("Posting data..." + json);
-			postDataToDhis2(json);
-		}
-		catch (JsonGenerationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		catch (JsonMappingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		catch (AuthenticationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		
-		return null;
+		return dataValueSet;
+	}
+	
+	/**
+	 * Posts the data value sets of several org units to DHIS2 in a single request
+	 * 
+	 * @throws IOException if they could not be sent or DHIS2 did not accept them, the push can be
+	 *             retried
+	 */
+	public static void pushDataValueSets(List<DHISDataValueSet> dataValueSets) throws IOException,
+	        AuthenticationException {
+		String response = getClient().post(dataValueSets);
+		log.info("DHIS2 import summary: " + response);
 	}
 	
 	public static String getCompleteDate(Date completeDate) {
@@ -166,28 +135,41 @@ public class DHIS2Util {
 	}
 	
 	/**
-	 * Creates a JSON post request to a configured URL from "dhis2.postURL" global property.
-	 * 
-	 * @param jsonData The actual json to post
-	 * @throws ClientProtocolException
-	 * @throws IOException
-	 * @throws AuthenticationException
+	 * @return the client posting to the "reports.DHIS2PostURL" global property, created on first use
+	 *         and kept until one of the DHIS2 global properties changes
 	 */
-	public static CloseableHttpResponse postDataToDhis2(String jsonData) throws ClientProtocolException, IOException,
-	        AuthenticationException {
-		String DHIS2Username = Context.getAdministrationService().getGlobalProperty("reports.DHIS2AuthorizationUsername");
-		String DHIS2Password = Context.getAdministrationService().getGlobalProperty("reports.DHIS2AuthorizationPassword");
-		HttpPost httpPost = new HttpPost(Context.getAdministrationService().getGlobalProperty("reports.DHIS2PostURL"));
-		Credentials DHIS2Credentials = new UsernamePasswordCredentials(DHIS2Username, DHIS2Password);
-		Header authenticateScheme = new BasicScheme().authenticate(DHIS2Credentials, httpPost, new BasicHttpContext());
-		httpPost.setEntity(new StringEntity(jsonData));
-		httpPost.setHeader("Accept", "application/json");
-		httpPost.setHeader("Content-type", "application/json");
-		httpPost.setHeader("Authorization", authenticateScheme.getValue());
-		
-		CloseableHttpClient client = HttpClients.createDefault();
-		CloseableHttpResponse response = client.execute(httpPost);
-		client.close();
-		return response;
+	public static synchronized DHIS2Client getClient() throws AuthenticationException {
+		if (client == null) {
+			AdministrationService as = Context.getAdministrationService();
+			boolean compress = "true".equalsIgnoreCase(as.getGlobalProperty("reports.DHIS2CompressRequests"));
+			client = new DHIS2Client(as.getGlobalProperty("reports.DHIS2PostURL"),
+			        as.getGlobalProperty("reports.DHIS2AuthorizationUsername"),
+			        as.getGlobalProperty("reports.DHIS2AuthorizationPassword"), compress);
+		}
+		return client;
+	}
+	
+	/**
+	 * @return the parsed "reports.HMISIndicatorToDataElementsMapping" global property, kept until it
+	 *         changes
+	 */
+	public static synchronized JsonNode getIndicatorsMapping() throws IOException {
+		if (indicatorsMapping == null) {
+			indicatorsMapping = new ObjectMapper().readTree(Context.getAdministrationService().getGlobalProperty(
+			    "reports.HMISIndicatorToDataElementsMapping"));
+		}
+		return indicatorsMapping;
+	}
+	
+	/**
+	 * Retires the client and drops the parsed mapping, they are recreated from the global properties on
+	 * next use. The pushes the client is sending are finished before it is closed.
+	 */
+	public static synchronized void clearCache() {
+		if (client != null) {
+			client.retire();
+			client = null;
+		}
+		indicatorsMapping = null;
 	}
 }
@@ -0,0 +1,131 @@
+package org.openmrs.module.rwandareports.indicator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.indicator.BaseIndicator;
+import org.openmrs.module.reporting.query.encounter.definition.SqlEncounterQuery;
+
+/**
+ * A set of encounter indicators that share one encounter query and differ only in the gender and the
+ * age band of the patient, such as the male and female under 5, 5 to 19 and 20 and above columns of
+ * the HMIS report. The query is run once and every cell is filled from its rows, instead of running a
+ * query per cell. The query selects the encounter_id of the encounters, without any gender or age
+ * condition.
+ */
+public class DisaggregatedEncounterIndicator extends BaseIndicator {
+	
+	@ConfigurationProperty
+	private Mapped<? extends SqlEncounterQuery> encounterQuery;
+	
+	@ConfigurationProperty
+	private List<Cell> cells = new ArrayList<Cell>();
+	
+	/**
+	 * The ages of a band, in days on the endDate of the query as DATEDIFF(:endDate, birthdate) gives
+	 * them
+	 */
+	public static class AgeBand {
+		
+		private Integer minDays;
+		
+		private Integer maxDays;
+		
+		/**
+		 * @param minDays the youngest age of the band, null if there is none
+		 * @param maxDays the first age past the band, null if there is none
+		 */
+		public AgeBand(Integer minDays, Integer maxDays) {
+			this.minDays = minDays;
+			this.maxDays = maxDays;
+		}
+		
+		public Integer getMinDays() {
+			return minDays;
+		}
+		
+		public Integer getMaxDays() {
+			return maxDays;
+		}
+		
+		/**
+		 * @return true if the age, null when the birthdate is unknown, is in the band
+		 */
+		public boolean contains(Integer days) {
+			if (days == null) {
+				return minDays == null && maxDays == null;
+			}
+			return (minDays == null || days >= minDays) && (maxDays == null || days < maxDays);
+		}
+	}
+	
+	/**
+	 * An indicator of the set, counting the encounters of the patients of a gender and an age band
+	 */
+	public static class Cell {
+		
+		private String name;
+		
+		private String gender;
+		
+		private AgeBand ageBand;
+		
+		/**
+		 * @param gender M or F, null for every gender
+		 * @param ageBand null for every age
+		 */
+		public Cell(String name, String gender, AgeBand ageBand) {
+			this.name = name;
+			this.gender = gender;
+			this.ageBand = ageBand;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public String getGender() {
+			return gender;
+		}
+		
+		public AgeBand getAgeBand() {
+			return ageBand;
+		}
+		
+		/**
+		 * @return true if the encounters of a patient of the gender and age belong to the cell
+		 */
+		public boolean contains(String gender, Integer ageInDays) {
+			return (this.gender == null || this.gender.equals(gender))
+			        && (ageBand == null || ageBand.contains(ageInDays));
+		}
+	}
+	
+	public Mapped<? extends SqlEncounterQuery> getEncounterQuery() {
+		return encounterQuery;
+	}
+	
+	public void setEncounterQuery(Mapped<? extends SqlEncounterQuery> encounterQuery) {
+		this.encounterQuery = encounterQuery;
+	}
+	
+	/**
+	 * @return the cells, in the order of the rows of the data set
+	 */
+	public List<Cell> getCells() {
+		return cells;
+	}
+	
+	public void setCells(List<Cell> cells) {
+		this.cells = cells;
+	}
+	
+	/**
+	 * @param name the name of the column of the cell in the data set
+	 */
+	public void addCell(String name, String gender, AgeBand ageBand) {
+		cells.add(new Cell(name, gender, ageBand));
+	}
+}
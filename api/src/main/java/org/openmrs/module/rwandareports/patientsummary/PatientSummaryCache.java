@@ -0,0 +1,156 @@
+package org.openmrs.module.rwandareports.patientsummary;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.rwandareports.util.MetadataCache;
+
+/**
+ * Keeps the report definition of every patient summary, built once per type, and the values last
+ * evaluated for a patient by a user. The values are kept per user, they are evaluated with the
+ * privileges of the user and are not shown to another one. A definition is built again when metadata changes, see
+ * {@link MetadataCache#getVersion()}. The values of a patient are dropped by the
+ * {@link PatientSummaryCacheAdvice} when data of the patient is saved, and expire at the end of the
+ * day since the summaries show what is active today.
+ */
+public class PatientSummaryCache {
+	
+	private static final int MAX_PATIENTS = 1000;
+	
+	/**
+	 * A patient summary and its report definition
+	 */
+	public static class Summary {
+		
+		private final PatientSummaryManager manager;
+		
+		private final ReportDefinition reportDefinition;
+		
+		private final long metadataVersion;
+		
+		private Summary(PatientSummaryManager manager, long metadataVersion) {
+			this.manager = manager;
+			this.reportDefinition = manager.constructReportDefinition();
+			this.metadataVersion = metadataVersion;
+		}
+		
+		public PatientSummaryManager getManager() {
+			return manager;
+		}
+		
+		public ReportDefinition getReportDefinition() {
+			return reportDefinition;
+		}
+	}
+	
+	private static class Values {
+		
+		private final Summary summary;
+		
+		private final Date day;
+		
+		private final Map<String, Object> values;
+		
+		private Values(Summary summary, Date day, Map<String, Object> values) {
+			this.summary = summary;
+			this.day = day;
+			this.values = values;
+		}
+	}
+	
+	private static final Map<Class<?>, Summary> summaries = new ConcurrentHashMap<Class<?>, Summary>();
+	
+	/**
+	 * The values by patient summary type, user and patient, the least recently viewed are dropped first
+	 */
+	private static final Map<String, Values> values = new LinkedHashMap<String, Values>(16, 0.75f, true) {
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Values> eldest) {
+			return size() > MAX_PATIENTS;
+		}
+	};
+	
+	/**
+	 * Counts the evictions, values evaluated while data was saved are not kept
+	 */
+	private static final AtomicLong evictions = new AtomicLong();
+	
+	/**
+	 * @return the patient summary of the type with its report definition
+	 */
+	public static Summary getSummary(Class<? extends PatientSummaryManager> type) throws Exception {
+		long metadataVersion = MetadataCache.getVersion();
+		Summary summary = summaries.get(type);
+		if (summary == null || summary.metadataVersion != metadataVersion) {
+			summary = new Summary(type.newInstance(), metadataVersion);
+			summaries.put(type, summary);
+		}
+		return summary;
+	}
+	
+	/**
+	 * @return the stamp to pass to {@link #putValues(Summary, Integer, Map, long)} for values about to be
+	 *         evaluated
+	 */
+	public static long getStamp() {
+		return evictions.get();
+	}
+	
+	/**
+	 * @return the values evaluated today for the patient with the summary by the authenticated user, or
+	 *         null
+	 */
+	public static synchronized Map<String, Object> getValues(Summary summary, Integer patientId) {
+		Values v = values.get(getKey(summary, patientId));
+		if (v == null || v.summary != summary || !v.day.equals(DateUtil.getStartOfDay(new Date()))) {
+			return null;
+		}
+		return v.values;
+	}
+	
+	/**
+	 * Keeps the values unless data of a patient was saved since the stamp was taken
+	 */
+	public static synchronized void putValues(Summary summary, Integer patientId, Map<String, Object> patientValues,
+	        long stamp) {
+		if (evictions.get() == stamp) {
+			values.put(getKey(summary, patientId), new Values(summary, DateUtil.getStartOfDay(new Date()), patientValues));
+		}
+	}
+	
+	/**
+	 * Drops the values of the patient
+	 */
+	public static synchronized void evict(Integer patientId) {
+		evictions.incrementAndGet();
+		String suffix = ":" + patientId;
+		for (Iterator<String> i = values.keySet().iterator(); i.hasNext();) {
+			if (i.next().endsWith(suffix)) {
+				i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Drops the definitions and the values
+	 */
+	public static synchronized void clear() {
+		evictions.incrementAndGet();
+		summaries.clear();
+		values.clear();
+	}
+	
+	private static String getKey(Summary summary, Integer patientId) {
+		User user = Context.getAuthenticatedUser();
+		return summary.manager.getClass().getName() + ":" + (user == null ? null : user.getUserId()) + ":" + patientId;
+	}
+}
@@ -0,0 +1,49 @@
+package org.openmrs.module.rwandareports.patientsummary;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PatientProgram;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Drops the patient summary values of a patient when an encounter, obs, order, enrollment, name or
+ * identifier of the patient is saved, voided or purged
+ */
+public class PatientSummaryCacheAdvice implements AfterReturningAdvice {
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		String name = method.getName();
+		if (args == null || args.length == 0
+		        || !(name.startsWith("save") || name.startsWith("void") || name.startsWith("unvoid")
+		                || name.startsWith("purge") || name.startsWith("discontinue"))) {
+			return;
+		}
+		
+		Person person = null;
+		if (args[0] instanceof Encounter) {
+			person = ((Encounter) args[0]).getPatient();
+		} else if (args[0] instanceof Obs) {
+			person = ((Obs) args[0]).getPerson();
+		} else if (args[0] instanceof Order) {
+			person = ((Order) args[0]).getPatient();
+		} else if (args[0] instanceof PatientProgram) {
+			person = ((PatientProgram) args[0]).getPatient();
+		} else if (args[0] instanceof PatientIdentifier) {
+			person = ((PatientIdentifier) args[0]).getPatient();
+		} else if (args[0] instanceof PersonName) {
+			person = ((PersonName) args[0]).getPerson();
+		} else if (args[0] instanceof Person) {
+			person = (Person) args[0];
+		}
+		if (person != null && person.getPersonId() != null) {
+			PatientSummaryCache.evict(person.getPersonId());
+		}
+	}
+}
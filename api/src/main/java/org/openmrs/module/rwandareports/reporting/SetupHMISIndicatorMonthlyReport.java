@@ -35,13 +35,12 @@ import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.evaluation.parameter.ParameterizableUtil;
 import org.openmrs.module.reporting.indicator.CohortIndicator;
-import org.openmrs.module.reporting.query.encounter.definition.EncounterQuery;
 import org.openmrs.module.reporting.query.encounter.definition.SqlEncounterQuery;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
 import org.openmrs.module.rwandareports.dataset.EncounterIndicatorDataSetDefinition;
 import org.openmrs.module.rwandareports.dataset.LocationHierachyIndicatorDataSetDefinition;
-import org.openmrs.module.rwandareports.indicator.EncounterIndicator;
+import org.openmrs.module.rwandareports.indicator.DisaggregatedEncounterIndicator;
 import org.openmrs.module.rwandareports.util.Cohorts;
 import org.openmrs.module.rwandareports.util.Indicators;
 import org.openmrs.module.rwandareports.widget.AllLocation;
@@ -51,6 +50,19 @@ public class SetupHMISIndicatorMonthlyReport implements SetupReport {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	/**
+	 * The names of the parts II to IX of the monthly report, in order
+	 */
+	public static final String[] MONTHLY_REPORT_NAMES = {
+	        "District Hospital Monthly HMIS Report - II. Outpatient Consultations",
+	        "District Hospital Monthly HMIS Report - III. Mental Health",
+	        "District Hospital Monthly HMIS Report - IV. Chronic Diseases",
+	        "District Hospital Monthly HMIS Report - V. Other Cardiovascular and Kidney diseases",
+	        "District Hospital Monthly HMIS Report - VI. Injuries",
+	        "District Hospital Monthly HMIS Report - VII. Palliative care",
+	        "District Hospital Monthly HMIS Report - VIII. Community Checkup",
+	        "District Hospital Monthly HMIS Report - IX. Cancer screening" };
+	
 	// properties
 	
 	private List<Form> OPDForms;
@@ -264,14 +276,9 @@ public class SetupHMISIndicatorMonthlyReport implements SetupReport {
 	}
 	
 	public void delete() {
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - II. Outpatient Consultations");
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - III. Mental Health");
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - IV. Chronic Diseases");
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - V. Other Cardiovascular and Kidney diseases");
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - VI. Injuries");
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - VII. Palliative care");
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - VIII. Community Checkup");
-		Helper.purgeReportDefinition("District Hospital Monthly HMIS Report - IX. Cancer screening");
+		for (String name : MONTHLY_REPORT_NAMES) {
+			Helper.purgeReportDefinition(name);
+		}
 	}
 	
 	public ReportDefinition createReportDefinition(String name, Properties properties) {
@@ -483,274 +490,45 @@ public class SetupHMISIndicatorMonthlyReport implements SetupReport {
 		
 		//New Case
 		
-		// Male Under 5 years
-		
-		SqlEncounterQuery outpatientVisitsNewCaseMaleUnder5Years = new SqlEncounterQuery();
-		outpatientVisitsNewCaseMaleUnder5Years.setName("outpatientVisitsNewCaseMaleUnder5Years");
-		outpatientVisitsNewCaseMaleUnder5Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='M' and DATEDIFF(:endDate , p.birthdate) < 1825 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + newCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		// adultHivVisits.setQuery("select e.encounter_id from encounter e, person p where e.encounter_type in ("+pediHIVEncounterType.getEncounterTypeId()+","+adultHIVEncounterType.getEncounterTypeId()+") and e.encounter_datetime >= :startDate and e.encounter_datetime <= :endDate and p.person_id = e.patient_id and DATEDIFF(:endDate , p.birthdate) >=5475 and e.voided=0 and p.voided=0");
-		outpatientVisitsNewCaseMaleUnder5Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsNewCaseMaleUnder5Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsNewCaseMaleUnder5YearsIndicator = new EncounterIndicator();
-		outpatientVisitsNewCaseMaleUnder5YearsIndicator.setName("outpatientVisitsNewCaseMaleUnder5YearsIndicator");
-		outpatientVisitsNewCaseMaleUnder5YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsNewCaseMaleUnder5Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsNewCaseMaleUnder5YearsIndicator);
-		
-		// Female Under 5 years
-		
-		SqlEncounterQuery outpatientVisitsNewCaseFemaleUnder5Years = new SqlEncounterQuery();
-		outpatientVisitsNewCaseFemaleUnder5Years.setName("outpatientVisitsNewCaseFemaleUnder5Years");
-		outpatientVisitsNewCaseFemaleUnder5Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='F' and DATEDIFF(:endDate , p.birthdate) < 1825 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + newCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsNewCaseFemaleUnder5Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsNewCaseFemaleUnder5Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsNewCaseFemaleUnder5YearsIndicator = new EncounterIndicator();
-		outpatientVisitsNewCaseFemaleUnder5YearsIndicator.setName("outpatientVisitsNewCaseFemaleUnder5YearsIndicator");
-		outpatientVisitsNewCaseFemaleUnder5YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsNewCaseFemaleUnder5Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsNewCaseFemaleUnder5YearsIndicator);
-		
-		// Male >=5 - 19 y
-		
-		SqlEncounterQuery outpatientVisitsNewCaseMaleBetween5And19Years = new SqlEncounterQuery();
-		outpatientVisitsNewCaseMaleBetween5And19Years.setName("outpatientVisitsNewCaseMaleBetween5And19Years");
-		outpatientVisitsNewCaseMaleBetween5And19Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='M' and DATEDIFF(:endDate , p.birthdate) >= 1825 and DATEDIFF(:endDate , p.birthdate) < 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + newCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		// adultHivVisits.setQuery("select e.encounter_id from encounter e, person p where e.encounter_type in ("+pediHIVEncounterType.getEncounterTypeId()+","+adultHIVEncounterType.getEncounterTypeId()+") and e.encounter_datetime >= :startDate and e.encounter_datetime <= :endDate and p.person_id = e.patient_id and DATEDIFF(:endDate , p.birthdate) >=5475 and e.voided=0 and p.voided=0");
-		outpatientVisitsNewCaseMaleBetween5And19Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsNewCaseMaleBetween5And19Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsNewCaseMaleBetween5And19YearsIndicator = new EncounterIndicator();
-		outpatientVisitsNewCaseMaleBetween5And19YearsIndicator
-		        .setName("outpatientVisitsNewCaseMaleBetween5And19YearsIndicator");
-		outpatientVisitsNewCaseMaleBetween5And19YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsNewCaseMaleUnder5Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsNewCaseMaleBetween5And19YearsIndicator);
-		
-		// Female >=5 - 19 y
-		
-		SqlEncounterQuery outpatientVisitsNewCaseFemaleBetween5And19Years = new SqlEncounterQuery();
-		outpatientVisitsNewCaseFemaleBetween5And19Years.setName("outpatientVisitsNewCaseFemaleBetween5And19Years");
-		outpatientVisitsNewCaseFemaleBetween5And19Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='F' and DATEDIFF(:endDate , p.birthdate) >= 1825 and DATEDIFF(:endDate , p.birthdate) < 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + newCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsNewCaseFemaleBetween5And19Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsNewCaseFemaleBetween5And19Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsNewCaseFemaleBetween5And19YearsIndicator = new EncounterIndicator();
-		outpatientVisitsNewCaseFemaleBetween5And19YearsIndicator
-		        .setName("outpatientVisitsNewCaseFemaleBetween5And19YearsIndicator");
-		outpatientVisitsNewCaseFemaleBetween5And19YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsNewCaseFemaleBetween5And19Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsNewCaseFemaleBetween5And19YearsIndicator);
-		
-		// Male >=20 y
-		
-		SqlEncounterQuery outpatientVisitsNewCaseMaleEqualAndAbove20Years = new SqlEncounterQuery();
-		outpatientVisitsNewCaseMaleEqualAndAbove20Years.setName("outpatientVisitsNewCaseMaleEqualAndAbove20Years");
-		outpatientVisitsNewCaseMaleEqualAndAbove20Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='M' and DATEDIFF(:endDate , p.birthdate) >= 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + newCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsNewCaseMaleEqualAndAbove20Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsNewCaseMaleEqualAndAbove20Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsNewCaseMaleEqualAndAbove20YearsIndicator = new EncounterIndicator();
-		outpatientVisitsNewCaseMaleEqualAndAbove20YearsIndicator
-		        .setName("outpatientVisitsNewCaseMaleEqualAndAbove20YearsIndicator");
-		outpatientVisitsNewCaseMaleEqualAndAbove20YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsNewCaseMaleEqualAndAbove20Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsNewCaseMaleEqualAndAbove20YearsIndicator);
-		
-		// Female >=20 y
-		
-		SqlEncounterQuery outpatientVisitsNewCaseFemaleEqualAndAbove20Years = new SqlEncounterQuery();
-		outpatientVisitsNewCaseFemaleEqualAndAbove20Years.setName("outpatientVisitsNewCaseFemaleEqualAndAbove20Years");
-		outpatientVisitsNewCaseFemaleEqualAndAbove20Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='F' and DATEDIFF(:endDate , p.birthdate) >= 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + newCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsNewCaseFemaleEqualAndAbove20Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsNewCaseFemaleEqualAndAbove20Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsNewCaseFemaleEqualAndAbove20YearsIndicator = new EncounterIndicator();
-		outpatientVisitsNewCaseFemaleEqualAndAbove20YearsIndicator
-		        .setName("outpatientVisitsNewCaseFemaleEqualAndAbove20YearsIndicator");
-		outpatientVisitsNewCaseFemaleEqualAndAbove20YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsNewCaseFemaleEqualAndAbove20Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsNewCaseFemaleEqualAndAbove20YearsIndicator);
+		dsd.addDisaggregatedColumn(createOutpatientVisitsIndicator("outpatientVisitsNewCase", newCase));
 		
 		//===========================================
 		//Old Case									//
 		//===========================================
 		
-		// Male Under 5 years
-		
-		SqlEncounterQuery outpatientVisitsoldCaseMaleUnder5Years = new SqlEncounterQuery();
-		outpatientVisitsoldCaseMaleUnder5Years.setName("outpatientVisitsoldCaseMaleUnder5Years");
-		outpatientVisitsoldCaseMaleUnder5Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='M' and DATEDIFF(:endDate , p.birthdate) < 1825 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + oldCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		// adultHivVisits.setQuery("select e.encounter_id from encounter e, person p where e.encounter_type in ("+pediHIVEncounterType.getEncounterTypeId()+","+adultHIVEncounterType.getEncounterTypeId()+") and e.encounter_datetime >= :startDate and e.encounter_datetime <= :endDate and p.person_id = e.patient_id and DATEDIFF(:endDate , p.birthdate) >=5475 and e.voided=0 and p.voided=0");
-		outpatientVisitsoldCaseMaleUnder5Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsoldCaseMaleUnder5Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsoldCaseMaleUnder5YearsIndicator = new EncounterIndicator();
-		outpatientVisitsoldCaseMaleUnder5YearsIndicator.setName("outpatientVisitsoldCaseMaleUnder5YearsIndicator");
-		outpatientVisitsoldCaseMaleUnder5YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsoldCaseMaleUnder5Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsoldCaseMaleUnder5YearsIndicator);
-		
-		// Female Under 5 years
-		
-		SqlEncounterQuery outpatientVisitsoldCaseFemaleUnder5Years = new SqlEncounterQuery();
-		outpatientVisitsoldCaseFemaleUnder5Years.setName("outpatientVisitsoldCaseFemaleUnder5Years");
-		outpatientVisitsoldCaseFemaleUnder5Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='F' and DATEDIFF(:endDate , p.birthdate) < 1825 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + oldCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsoldCaseFemaleUnder5Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsoldCaseFemaleUnder5Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsoldCaseFemaleUnder5YearsIndicator = new EncounterIndicator();
-		outpatientVisitsoldCaseFemaleUnder5YearsIndicator.setName("outpatientVisitsoldCaseFemaleUnder5YearsIndicator");
-		outpatientVisitsoldCaseFemaleUnder5YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsoldCaseFemaleUnder5Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsoldCaseFemaleUnder5YearsIndicator);
-		
-		// Male >=5 - 19 y
-		
-		SqlEncounterQuery outpatientVisitsoldCaseMaleBetween5And19Years = new SqlEncounterQuery();
-		outpatientVisitsoldCaseMaleBetween5And19Years.setName("outpatientVisitsoldCaseMaleBetween5And19Years");
-		outpatientVisitsoldCaseMaleBetween5And19Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='M' and DATEDIFF(:endDate , p.birthdate) >= 1825 and DATEDIFF(:endDate , p.birthdate) < 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + oldCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		// adultHivVisits.setQuery("select e.encounter_id from encounter e, person p where e.encounter_type in ("+pediHIVEncounterType.getEncounterTypeId()+","+adultHIVEncounterType.getEncounterTypeId()+") and e.encounter_datetime >= :startDate and e.encounter_datetime <= :endDate and p.person_id = e.patient_id and DATEDIFF(:endDate , p.birthdate) >=5475 and e.voided=0 and p.voided=0");
-		outpatientVisitsoldCaseMaleBetween5And19Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsoldCaseMaleBetween5And19Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsoldCaseMaleBetween5And19YearsIndicator = new EncounterIndicator();
-		outpatientVisitsoldCaseMaleBetween5And19YearsIndicator
-		        .setName("outpatientVisitsoldCaseMaleBetween5And19YearsIndicator");
-		outpatientVisitsoldCaseMaleBetween5And19YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsoldCaseMaleUnder5Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsoldCaseMaleBetween5And19YearsIndicator);
-		
-		// Female >=5 - 19 y
-		
-		SqlEncounterQuery outpatientVisitsoldCaseFemaleBetween5And19Years = new SqlEncounterQuery();
-		outpatientVisitsoldCaseFemaleBetween5And19Years.setName("outpatientVisitsoldCaseFemaleBetween5And19Years");
-		outpatientVisitsoldCaseFemaleBetween5And19Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='F' and DATEDIFF(:endDate , p.birthdate) >= 1825 and DATEDIFF(:endDate , p.birthdate) < 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + oldCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsoldCaseFemaleBetween5And19Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsoldCaseFemaleBetween5And19Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsoldCaseFemaleBetween5And19YearsIndicator = new EncounterIndicator();
-		outpatientVisitsoldCaseFemaleBetween5And19YearsIndicator
-		        .setName("outpatientVisitsoldCaseFemaleBetween5And19YearsIndicator");
-		outpatientVisitsoldCaseFemaleBetween5And19YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsoldCaseFemaleBetween5And19Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsoldCaseFemaleBetween5And19YearsIndicator);
-		
-		// Male >=20 y
-		
-		SqlEncounterQuery outpatientVisitsoldCaseMaleEqualAndAbove20Years = new SqlEncounterQuery();
-		outpatientVisitsoldCaseMaleEqualAndAbove20Years.setName("outpatientVisitsoldCaseMaleEqualAndAbove20Years");
-		outpatientVisitsoldCaseMaleEqualAndAbove20Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='M' and DATEDIFF(:endDate , p.birthdate) >= 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + oldCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsoldCaseMaleEqualAndAbove20Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsoldCaseMaleEqualAndAbove20Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsoldCaseMaleEqualAndAbove20YearsIndicator = new EncounterIndicator();
-		outpatientVisitsoldCaseMaleEqualAndAbove20YearsIndicator
-		        .setName("outpatientVisitsoldCaseMaleEqualAndAbove20YearsIndicator");
-		outpatientVisitsoldCaseMaleEqualAndAbove20YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsoldCaseMaleEqualAndAbove20Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsoldCaseMaleEqualAndAbove20YearsIndicator);
-		
-		// Female >=20 y
-		
-		SqlEncounterQuery outpatientVisitsoldCaseFemaleEqualAndAbove20Years = new SqlEncounterQuery();
-		outpatientVisitsoldCaseFemaleEqualAndAbove20Years.setName("outpatientVisitsoldCaseFemaleEqualAndAbove20Years");
-		outpatientVisitsoldCaseFemaleEqualAndAbove20Years
-		        .setQuery("select e.encounter_id from encounter e, obs o, person p where e.encounter_id=o.encounter_id and o.person_id=p.person_id and p.gender='F' and DATEDIFF(:endDate , p.birthdate) >= 7300 and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
-		                + caseStatus.getConceptId()
-		                + " and o.value_coded="
-		                + oldCase.getConceptId()
-		                + " group by e.encounter_datetime");
-		outpatientVisitsoldCaseFemaleEqualAndAbove20Years.addParameter(new Parameter("startDate", "startDate", Date.class));
-		outpatientVisitsoldCaseFemaleEqualAndAbove20Years.addParameter(new Parameter("endDate", "endDate", Date.class));
-		
-		EncounterIndicator outpatientVisitsoldCaseFemaleEqualAndAbove20YearsIndicator = new EncounterIndicator();
-		outpatientVisitsoldCaseFemaleEqualAndAbove20YearsIndicator
-		        .setName("outpatientVisitsoldCaseFemaleEqualAndAbove20YearsIndicator");
-		outpatientVisitsoldCaseFemaleEqualAndAbove20YearsIndicator.setEncounterQuery(new Mapped<EncounterQuery>(
-		        outpatientVisitsoldCaseFemaleEqualAndAbove20Years, ParameterizableUtil
-		                .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
-		
-		dsd.addColumn(outpatientVisitsoldCaseFemaleEqualAndAbove20YearsIndicator);
-		
+		dsd.addDisaggregatedColumn(createOutpatientVisitsIndicator("outpatientVisitsoldCase", oldCase));
+	}
+	
+	/**
+	 * The outpatient visits with the case status, for male and female patients under 5, >=5 - 19 y and
+	 * >=20 y, all counted by one query
+	 */
+	private DisaggregatedEncounterIndicator createOutpatientVisitsIndicator(String name, Concept caseStatusAnswer) {
+		SqlEncounterQuery outpatientVisits = new SqlEncounterQuery();
+		outpatientVisits.setName(name);
+		outpatientVisits
+		        .setQuery("select e.encounter_id from encounter e, obs o where e.encounter_id=o.encounter_id and e.encounter_datetime>= :startDate and e.encounter_datetime<= :endDate and o.concept_id="
+		                + caseStatus.getConceptId() + " and o.value_coded=" + caseStatusAnswer.getConceptId());
+		outpatientVisits.addParameter(new Parameter("startDate", "startDate", Date.class));
+		outpatientVisits.addParameter(new Parameter("endDate", "endDate", Date.class));
+		
+		DisaggregatedEncounterIndicator indicator = new DisaggregatedEncounterIndicator();
+		indicator.setName(name + "Indicator");
+		indicator.setEncounterQuery(new Mapped<SqlEncounterQuery>(outpatientVisits, ParameterizableUtil
+		        .createParameterMappings("endDate=${endDate},startDate=${startDate}")));
+		
+		DisaggregatedEncounterIndicator.AgeBand under5Years = new DisaggregatedEncounterIndicator.AgeBand(null, 1825);
+		DisaggregatedEncounterIndicator.AgeBand between5And19Years = new DisaggregatedEncounterIndicator.AgeBand(1825,
+		        7300);
+		DisaggregatedEncounterIndicator.AgeBand equalAndAbove20Years = new DisaggregatedEncounterIndicator.AgeBand(7300,
+		        null);
+		indicator.addCell(name + "MaleUnder5YearsIndicator", "M", under5Years);
+		indicator.addCell(name + "FemaleUnder5YearsIndicator", "F", under5Years);
+		indicator.addCell(name + "MaleBetween5And19YearsIndicator", "M", between5And19Years);
+		indicator.addCell(name + "FemaleBetween5And19YearsIndicator", "F", between5And19Years);
+		indicator.addCell(name + "MaleEqualAndAbove20YearsIndicator", "M", equalAndAbove20Years);
+		indicator.addCell(name + "FemaleEqualAndAbove20YearsIndicator", "F", equalAndAbove20Years);
+		return indicator;
 	}
 	
 	// II. Outpatient Consultations/ Consultations Externes : CohortIndicatorDataSetDefinition
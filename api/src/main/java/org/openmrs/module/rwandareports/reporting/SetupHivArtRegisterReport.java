@@ -142,6 +142,7 @@ public class SetupHivArtRegisterReport implements SetupReport {
 		// Create new dataset definition 
 		HIVARTRegisterDataSetDefinition2 dataSetDefinition = new HIVARTRegisterDataSetDefinition2();
 		dataSetDefinition.setName(reportDefinition.getName() + " Data Set");
+		dataSetDefinition.setBatchEvaluation(true);
 		
 		if (pedi) {
 			dataSetDefinition.addFilter(Cohorts.createInProgram("hiv: In Pedi HIV Programs", pediHIVProgram));
@@ -1,5 +1,7 @@
 package org.openmrs.module.rwandareports.task;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.openmrs.api.context.Context;
 import org.openmrs.module.rwandareports.api.FlattenDatabaseService;
 import org.openmrs.scheduler.tasks.AbstractTask;
@@ -9,6 +11,12 @@ import org.openmrs.scheduler.tasks.AbstractTask;
  */
 public class FlattenTableTask extends AbstractTask {
 	
+	/**
+	 * Shared by the full and the incremental task so that they never run against the mamba tables
+	 * at the same time
+	 */
+	private static final AtomicBoolean ETL_RUNNING = new AtomicBoolean(false);
+	
 	//@Autowired
 	//FlattenDatabaseService flattenDatabaseService;
 	
@@ -17,13 +25,13 @@ public class FlattenTableTask extends AbstractTask {
 		
 		System.out.println("FlattenTableTask execute() called...");
 		
-		if (!isExecuting) {
+		if (!isExecuting && ETL_RUNNING.compareAndSet(false, true)) {
 			
 			System.out.println("FlattenTableTask running...");
 			startExecuting();
 			
 			try {
-				getService().flattenDatabase();
+				flatten(getService());
 			}
 			catch (Exception e) {
 				System.err.println("Error while running QueryLabResultsTask: " + e.getMessage());
@@ -31,6 +39,7 @@ public class FlattenTableTask extends AbstractTask {
 			}
 			finally {
 				stopExecuting();
+				ETL_RUNNING.set(false);
 				System.out.println("FlattenTableTask completed & stopped...");
 			}
 		} else {
@@ -38,6 +47,10 @@ public class FlattenTableTask extends AbstractTask {
 		}
 	}
 	
+	protected void flatten(FlattenDatabaseService service) {
+		service.flattenDatabase();
+	}
+	
 	private FlattenDatabaseService getService() {
 		return Context.getService(FlattenDatabaseService.class);
 	}
@@ -0,0 +1,15 @@
+package org.openmrs.module.rwandareports.task;
+
+import org.openmrs.module.rwandareports.api.FlattenDatabaseService;
+
+/**
+ * Loads the billing rows added or changed since the last MambaETL run, meant to be scheduled more
+ * often than the full {@link FlattenTableTask}
+ */
+public class IncrementalFlattenTableTask extends FlattenTableTask {
+	
+	@Override
+	protected void flatten(FlattenDatabaseService service) {
+		service.flattenDatabaseIncrementally();
+	}
+}
@@ -1,5 +1,6 @@
 package org.openmrs.module.rwandareports.util;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,104 +10,216 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.*;
 import org.openmrs.api.context.Context;
 
+/**
+ * Resolves metadata from the global properties that name it, through the {@link MetadataCache}
+ */
 public class GlobalPropertiesManagement {
 	
 	protected final static Log log = LogFactory.getLog(GlobalPropertiesManagement.class);
 	
-	public Program getProgram(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getProgram(globalProperty);
+	public Program getProgram(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.PROGRAM, "program:" + globalPropertyName, Arrays.asList(globalPropertyName),
+		    new MetadataCache.Loader<Program>() {
+			    
+			    @Override
+			    public Program load() {
+				    return MetadataLookup.getProgram(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public PatientIdentifierType getPatientIdentifier(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getPatientIdentifierType(globalProperty);
+	public PatientIdentifierType getPatientIdentifier(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.PATIENT_IDENTIFIER_TYPE, "patientIdentifierType:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<PatientIdentifierType>() {
+			    
+			    @Override
+			    public PatientIdentifierType load() {
+				    return MetadataLookup.getPatientIdentifierType(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public Concept getConcept(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getConcept(globalProperty);
+	public Concept getConcept(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.CONCEPT, "concept:" + globalPropertyName, Arrays.asList(globalPropertyName),
+		    new MetadataCache.Loader<Concept>() {
+			    
+			    @Override
+			    public Concept load() {
+				    return MetadataLookup.getConcept(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public List<Concept> getConceptList(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getConceptList(globalProperty);
+	public List<Concept> getConceptList(final String globalPropertyName) {
+		return MetadataCache.getList(MetadataCache.CONCEPT, "conceptList:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<List<Concept>>() {
+			    
+			    @Override
+			    public List<Concept> load() {
+				    return MetadataLookup.getConceptList(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public List<Concept> getConceptList(String globalPropertyName, String separator) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getConceptList(globalProperty, separator);
+	public List<Concept> getConceptList(final String globalPropertyName, final String separator) {
+		return MetadataCache.getList(MetadataCache.CONCEPT, "conceptList:" + globalPropertyName + ":" + separator,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<List<Concept>>() {
+			    
+			    @Override
+			    public List<Concept> load() {
+				    return MetadataLookup.getConceptList(getGlobalProperty(globalPropertyName), separator);
+			    }
+		    });
 	}
 	
-	public List<Concept> getConceptsByConceptSet(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		Concept c = MetadataLookup.getConcept(globalProperty);
-		return Context.getConceptService().getConceptsByConceptSet(c);
+	public List<Concept> getConceptsByConceptSet(final String globalPropertyName) {
+		return MetadataCache.getList(MetadataCache.CONCEPT, "conceptSet:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<List<Concept>>() {
+			    
+			    @Override
+			    public List<Concept> load() {
+				    Concept c = MetadataLookup.getConcept(getGlobalProperty(globalPropertyName));
+				    return Context.getConceptService().getConceptsByConceptSet(c);
+			    }
+		    });
 	}
 	
-	public Form getForm(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getForm(globalProperty);
+	public Form getForm(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.FORM, "form:" + globalPropertyName, Arrays.asList(globalPropertyName),
+		    new MetadataCache.Loader<Form>() {
+			    
+			    @Override
+			    public Form load() {
+				    return MetadataLookup.getForm(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public EncounterType getEncounterType(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getEncounterType(globalProperty);
+	public EncounterType getEncounterType(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.ENCOUNTER_TYPE, "encounterType:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<EncounterType>() {
+			    
+			    @Override
+			    public EncounterType load() {
+				    return MetadataLookup.getEncounterType(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public List<EncounterType> getEncounterTypeList(String globalPropertyName, String separator) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getEncounterTypeList(globalProperty, separator);
+	public List<EncounterType> getEncounterTypeList(final String globalPropertyName, final String separator) {
+		return MetadataCache.getList(MetadataCache.ENCOUNTER_TYPE, "encounterTypeList:" + globalPropertyName + ":"
+		        + separator, Arrays.asList(globalPropertyName), new MetadataCache.Loader<List<EncounterType>>() {
+			
+			@Override
+			public List<EncounterType> load() {
+				return MetadataLookup.getEncounterTypeList(getGlobalProperty(globalPropertyName), separator);
+			}
+		});
 	}
 	
-	public List<EncounterType> getEncounterTypeList(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getEncounterTypeList(globalProperty);
+	public List<EncounterType> getEncounterTypeList(final String globalPropertyName) {
+		return MetadataCache.getList(MetadataCache.ENCOUNTER_TYPE, "encounterTypeList:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<List<EncounterType>>() {
+			    
+			    @Override
+			    public List<EncounterType> load() {
+				    return MetadataLookup.getEncounterTypeList(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public List<Form> getFormList(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getFormList(globalProperty);
+	public List<Form> getFormList(final String globalPropertyName) {
+		return MetadataCache.getList(MetadataCache.FORM, "formList:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<List<Form>>() {
+			    
+			    @Override
+			    public List<Form> load() {
+				    return MetadataLookup.getFormList(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public List<Form> getFormList(String globalPropertyName, String separator) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getFormList(globalProperty, separator);
+	public List<Form> getFormList(final String globalPropertyName, final String separator) {
+		return MetadataCache.getList(MetadataCache.FORM, "formList:" + globalPropertyName + ":" + separator,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<List<Form>>() {
+			    
+			    @Override
+			    public List<Form> load() {
+				    return MetadataLookup.getFormList(getGlobalProperty(globalPropertyName), separator);
+			    }
+		    });
 	}
 	
-	public RelationshipType getRelationshipType(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getRelationshipType(globalProperty);
+	public RelationshipType getRelationshipType(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.RELATIONSHIP_TYPE, "relationshipType:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<RelationshipType>() {
+			    
+			    @Override
+			    public RelationshipType load() {
+				    return MetadataLookup.getRelationshipType(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public OrderType getOrderType(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getOrderType(globalProperty);
+	public OrderType getOrderType(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.ORDER_TYPE, "orderType:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<OrderType>() {
+			    
+			    @Override
+			    public OrderType load() {
+				    return MetadataLookup.getOrderType(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public PersonAttributeType getPersonAttributeType(String globalPropertyName) {
-		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getPersonAttributeType(globalProperty);
+	public PersonAttributeType getPersonAttributeType(final String globalPropertyName) {
+		return MetadataCache.get(MetadataCache.PERSON_ATTRIBUTE_TYPE, "personAttributeType:" + globalPropertyName,
+		    Arrays.asList(globalPropertyName), new MetadataCache.Loader<PersonAttributeType>() {
+			    
+			    @Override
+			    public PersonAttributeType load() {
+				    return MetadataLookup.getPersonAttributeType(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public ProgramWorkflow getProgramWorkflow(String globalPropertyName, String programName) {
-		String programGp = Context.getAdministrationService().getGlobalProperty(programName);
-		String workflowGp = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getProgramWorkflow(programGp, workflowGp);
+	public ProgramWorkflow getProgramWorkflow(final String globalPropertyName, final String programName) {
+		return MetadataCache.get(MetadataCache.PROGRAM_WORKFLOW, "programWorkflow:" + programName + ":"
+		        + globalPropertyName, Arrays.asList(programName, globalPropertyName),
+		    new MetadataCache.Loader<ProgramWorkflow>() {
+			    
+			    @Override
+			    public ProgramWorkflow load() {
+				    return MetadataLookup.getProgramWorkflow(getGlobalProperty(programName),
+				        getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public ProgramWorkflowState getProgramWorkflowState(String globalPropertyName, String workflowName, String programName) {
-		String programGp = Context.getAdministrationService().getGlobalProperty(programName);
-		String workflowGp = Context.getAdministrationService().getGlobalProperty(workflowName);
-		String stateGp = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getProgramWorkflowState(programGp, workflowGp, stateGp);
-		
+	public ProgramWorkflowState getProgramWorkflowState(final String globalPropertyName, final String workflowName,
+	        final String programName) {
+		return MetadataCache.get(MetadataCache.PROGRAM_WORKFLOW_STATE, "programWorkflowState:" + programName + ":"
+		        + workflowName + ":" + globalPropertyName, Arrays.asList(programName, workflowName, globalPropertyName),
+		    new MetadataCache.Loader<ProgramWorkflowState>() {
+			    
+			    @Override
+			    public ProgramWorkflowState load() {
+				    return MetadataLookup.getProgramWorkflowState(getGlobalProperty(programName),
+				        getGlobalProperty(workflowName), getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
-	public List<ProgramWorkflowState> getProgramWorkflowStateList(String globalPropertyName) {
-		String programGp = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
-		return MetadataLookup.getProgramWorkflowstateList(programGp);
-		
+	public List<ProgramWorkflowState> getProgramWorkflowStateList(final String globalPropertyName) {
+		return MetadataCache.getList(MetadataCache.PROGRAM_WORKFLOW_STATE, "programWorkflowStateList:"
+		        + globalPropertyName, Arrays.asList(globalPropertyName),
+		    new MetadataCache.Loader<List<ProgramWorkflowState>>() {
+			    
+			    @Override
+			    public List<ProgramWorkflowState> load() {
+				    return MetadataLookup.getProgramWorkflowstateList(getGlobalProperty(globalPropertyName));
+			    }
+		    });
 	}
 	
 	public Map<Concept, Double> getVialSizes() {
@@ -127,6 +240,10 @@ public class GlobalPropertiesManagement {
 		return vialSizes;
 	}
 	
+	private String getGlobalProperty(String globalPropertyName) {
+		return Context.getAdministrationService().getGlobalProperty(globalPropertyName);
+	}
+	
 	public Integer getGlobalPropertyAsInt(String globalPropertyName) {
 		String globalProperty = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
 		return Integer.parseInt(globalProperty);
@@ -1429,4 +1546,16 @@ public class GlobalPropertiesManagement {
 	
 	public final static String PATHOLOGICDIAGNOSIS = "reports.pathologyReport.pathologicDiagnosis";
 	
+	public final static String LOCATION_HIERARCHY_EVALUATION_THREADS = "reports.locationHierarchyEvaluationThreads";
+	
+	public final static String MAMBA_FACT_LOAD_CHUNK_SIZE = "reports.mambaFactLoadChunkSize";
+	
+	public final static String MAMBA_FACT_LOAD_RESUME_ATTEMPTS = "reports.mambaFactLoadResumeAttempts";
+	
+	public final static String MAMBA_SHADOW_SCHEMA = "reports.mambaShadowSchema";
+	
+	public final static String MAMBA_ETL_CONCURRENCY = "reports.mambaEtlConcurrency";
+	
+	public final static String MAMBA_JAVA_PIVOT_CONFIGS = "reports.mambaJavaPivotConfigs";
+	
 }
@@ -0,0 +1,277 @@
+package org.openmrs.module.rwandareports.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.EncounterType;
+import org.openmrs.Form;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.OrderType;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Program;
+import org.openmrs.ProgramWorkflow;
+import org.openmrs.ProgramWorkflowState;
+import org.openmrs.RelationshipType;
+import org.openmrs.api.context.Context;
+
+/**
+ * The metadata {@link GlobalPropertiesManagement} resolves from global properties, kept for the whole
+ * process. Only the ids are kept, the objects are loaded again by id in the session of the caller,
+ * which Hibernate answers from its caches instead of reading the global property and searching the
+ * metadata again. Entries are dropped by the {@link MetadataCacheGlobalPropertyListener} when one of
+ * their global properties changes and by the {@link MetadataCacheAdvice} when metadata is saved. Every
+ * clear starts a new version, an entry resolved during an older version is not kept.
+ */
+public class MetadataCache {
+	
+	protected final static Log log = LogFactory.getLog(MetadataCache.class);
+	
+	/**
+	 * Loads a type of metadata by id
+	 */
+	public static abstract class Type<T extends OpenmrsObject> {
+		
+		abstract T getById(Integer id);
+	}
+	
+	public static final Type<Concept> CONCEPT = new Type<Concept>() {
+		
+		@Override
+		Concept getById(Integer id) {
+			return Context.getConceptService().getConcept(id);
+		}
+	};
+	
+	public static final Type<Program> PROGRAM = new Type<Program>() {
+		
+		@Override
+		Program getById(Integer id) {
+			return Context.getProgramWorkflowService().getProgram(id);
+		}
+	};
+	
+	public static final Type<ProgramWorkflow> PROGRAM_WORKFLOW = new Type<ProgramWorkflow>() {
+		
+		@Override
+		ProgramWorkflow getById(Integer id) {
+			return Context.getProgramWorkflowService().getWorkflow(id);
+		}
+	};
+	
+	public static final Type<ProgramWorkflowState> PROGRAM_WORKFLOW_STATE = new Type<ProgramWorkflowState>() {
+		
+		@Override
+		ProgramWorkflowState getById(Integer id) {
+			return Context.getProgramWorkflowService().getState(id);
+		}
+	};
+	
+	public static final Type<EncounterType> ENCOUNTER_TYPE = new Type<EncounterType>() {
+		
+		@Override
+		EncounterType getById(Integer id) {
+			return Context.getEncounterService().getEncounterType(id);
+		}
+	};
+	
+	public static final Type<Form> FORM = new Type<Form>() {
+		
+		@Override
+		Form getById(Integer id) {
+			return Context.getFormService().getForm(id);
+		}
+	};
+	
+	public static final Type<PatientIdentifierType> PATIENT_IDENTIFIER_TYPE = new Type<PatientIdentifierType>() {
+		
+		@Override
+		PatientIdentifierType getById(Integer id) {
+			return Context.getPatientService().getPatientIdentifierType(id);
+		}
+	};
+	
+	public static final Type<RelationshipType> RELATIONSHIP_TYPE = new Type<RelationshipType>() {
+		
+		@Override
+		RelationshipType getById(Integer id) {
+			return Context.getPersonService().getRelationshipType(id);
+		}
+	};
+	
+	public static final Type<OrderType> ORDER_TYPE = new Type<OrderType>() {
+		
+		@Override
+		OrderType getById(Integer id) {
+			return Context.getOrderService().getOrderType(id);
+		}
+	};
+	
+	public static final Type<PersonAttributeType> PERSON_ATTRIBUTE_TYPE = new Type<PersonAttributeType>() {
+		
+		@Override
+		PersonAttributeType getById(Integer id) {
+			return Context.getPersonService().getPersonAttributeType(id);
+		}
+	};
+	
+	/**
+	 * Resolves metadata from its global properties when it is not cached
+	 */
+	public interface Loader<T> {
+		
+		T load();
+	}
+	
+	private static class Entry {
+		
+		private final List<String> globalProperties;
+		
+		private final List<Integer> ids;
+		
+		private Entry(List<String> globalProperties, List<Integer> ids) {
+			this.globalProperties = globalProperties;
+			this.ids = ids;
+		}
+	}
+	
+	private static final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	
+	/**
+	 * The global properties of the cached entries, the listener only handles these
+	 */
+	private static final Set<String> globalProperties = Collections
+	        .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	private static final AtomicLong version = new AtomicLong();
+	
+	private static final AtomicLong hits = new AtomicLong();
+	
+	private static final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * @param key the key of the entry, made of what is resolved and the names of its global properties
+	 * @param properties the names of the global properties the metadata is resolved from
+	 * @return the cached metadata, or the metadata of the loader which is then cached
+	 */
+	public static <T extends OpenmrsObject> T get(Type<T> type, String key, List<String> properties, Loader<T> loader) {
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			T cached = type.getById(entry.ids.get(0));
+			if (cached != null) {
+				hits.incrementAndGet();
+				return cached;
+			}
+		}
+		
+		misses.incrementAndGet();
+		long loadVersion = version.get();
+		T metadata = loader.load();
+		if (metadata != null && metadata.getId() != null) {
+			put(key, new Entry(properties, Arrays.asList(metadata.getId())), loadVersion);
+		}
+		return metadata;
+	}
+	
+	/**
+	 * @see #get(Type, String, List, Loader)
+	 */
+	public static <T extends OpenmrsObject> List<T> getList(Type<T> type, String key, List<String> properties,
+	        Loader<List<T>> loader) {
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			List<T> cached = new ArrayList<T>(entry.ids.size());
+			for (Integer id : entry.ids) {
+				T metadata = type.getById(id);
+				if (metadata == null) {
+					cached = null;
+					break;
+				}
+				cached.add(metadata);
+			}
+			if (cached != null) {
+				hits.incrementAndGet();
+				return cached;
+			}
+		}
+		
+		misses.incrementAndGet();
+		long loadVersion = version.get();
+		List<T> metadata = loader.load();
+		if (metadata != null) {
+			List<Integer> ids = new ArrayList<Integer>(metadata.size());
+			for (T m : metadata) {
+				if (m == null || m.getId() == null) {
+					return metadata;
+				}
+				ids.add(m.getId());
+			}
+			put(key, new Entry(properties, ids), loadVersion);
+		}
+		return metadata;
+	}
+	
+	private static synchronized void put(String key, Entry entry, long loadVersion) {
+		if (version.get() == loadVersion) {
+			globalProperties.addAll(entry.globalProperties);
+			entries.put(key, entry);
+		}
+	}
+	
+	/**
+	 * @return true if a cached entry is resolved from the global property
+	 */
+	public static boolean isCached(String globalProperty) {
+		return globalProperties.contains(globalProperty);
+	}
+	
+	/**
+	 * Drops the entries resolved from the global property
+	 */
+	public static synchronized void clear(String globalProperty) {
+		version.incrementAndGet();
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			if (entry.getValue().globalProperties.contains(globalProperty)) {
+				entries.remove(entry.getKey());
+			}
+		}
+		globalProperties.remove(globalProperty);
+	}
+	
+	/**
+	 * Drops every entry
+	 */
+	public static synchronized void clear() {
+		version.incrementAndGet();
+		if (log.isDebugEnabled()) {
+			log.debug("Clearing " + entries.size() + " metadata cache entries, " + hits.get() + " hits and "
+			        + misses.get() + " misses");
+		}
+		entries.clear();
+		globalProperties.clear();
+	}
+	
+	/**
+	 * @return the version of the metadata, it changes every time the cache is cleared
+	 */
+	public static long getVersion() {
+		return version.get();
+	}
+	
+	public static long getHits() {
+		return hits.get();
+	}
+	
+	public static long getMisses() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,24 @@
+package org.openmrs.module.rwandareports.util;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Concept;
+import org.openmrs.OpenmrsMetadata;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Drops the metadata cached by {@link MetadataCache} when concepts or other metadata are saved,
+ * retired or purged, so that a renamed or replaced concept is resolved again
+ */
+public class MetadataCacheAdvice implements AfterReturningAdvice {
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		String name = method.getName();
+		if (args != null && args.length > 0 && (args[0] instanceof OpenmrsMetadata || args[0] instanceof Concept)
+		        && (name.startsWith("save") || name.startsWith("retire") || name.startsWith("unretire")
+		                || name.startsWith("purge") || name.startsWith("delete"))) {
+			MetadataCache.clear();
+		}
+	}
+}
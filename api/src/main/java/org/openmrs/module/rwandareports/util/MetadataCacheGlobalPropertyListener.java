@@ -0,0 +1,26 @@
+package org.openmrs.module.rwandareports.util;
+
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+
+/**
+ * Drops the metadata cached by {@link MetadataCache} when one of the global properties it was resolved
+ * from changes
+ */
+public class MetadataCacheGlobalPropertyListener implements GlobalPropertyListener {
+	
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return MetadataCache.isCached(propertyName);
+	}
+	
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		MetadataCache.clear(newValue.getProperty());
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		MetadataCache.clear(propertyName);
+	}
+}
@@ -0,0 +1,53 @@
+package org.openmrs.module.rwandareports.util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A value kept per patient for the pages of the web module, the least recently used patients are
+ * dropped first. The caches are created in the web module, which the module activator cannot see, so
+ * they are all kept here to be cleared with {@link #clearAll()} when the module stops.
+ */
+public class PatientCache<T> {
+	
+	private static final List<PatientCache<?>> caches = new CopyOnWriteArrayList<PatientCache<?>>();
+	
+	private final Map<Integer, T> values;
+	
+	public PatientCache(final int maxPatients) {
+		values = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+				return size() > maxPatients;
+			}
+		};
+		caches.add(this);
+	}
+	
+	/**
+	 * @return the value of the patient, or null
+	 */
+	public synchronized T get(Integer patientId) {
+		return values.get(patientId);
+	}
+	
+	public synchronized void put(Integer patientId, T value) {
+		values.put(patientId, value);
+	}
+	
+	public synchronized void clear() {
+		values.clear();
+	}
+	
+	/**
+	 * Drops the values of every cache
+	 */
+	public static void clearAll() {
+		for (PatientCache<?> cache : caches) {
+			cache.clear();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package org.openmrs.module.rwandareports.util;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.rwandareports.widget.AllLocation;
+
+/**
+ * The evaluation cache shared by the reports of a batch, such as the sheets II to IX of the monthly
+ * HMIS report run together. A batch is started by the code that runs its reports with
+ * {@link #startBatch()}, which binds it to the current thread, and dropped with {@link #endBatch()} once
+ * they are done. The reports evaluated in the thread while the batch is bound to it get the same cache
+ * when they are run with the same parameter values, so the definitions they have in common, such as
+ * their base cohort, are evaluated by the first report only, the next ones find them in the cache under
+ * the keys the reporting module gives them. Reports run outside a batch keep their own cache.
+ */
+public class ReportRunCache {
+	
+	protected final static Log log = LogFactory.getLog(ReportRunCache.class);
+	
+	/**
+	 * The caches of every batch that is running, by parameter key
+	 */
+	private static final Map<String, ConcurrentHashMap<String, Map<String, Object>>> batches =
+	        new ConcurrentHashMap<String, ConcurrentHashMap<String, Map<String, Object>>>();
+	
+	private static final ThreadLocal<String> currentBatch = new ThreadLocal<String>();
+	
+	/**
+	 * Starts a batch and binds it to the current thread, it must be ended in a finally block
+	 *
+	 * @return the id of the batch
+	 */
+	public static String startBatch() {
+		String batchId = UUID.randomUUID().toString();
+		batches.put(batchId, new ConcurrentHashMap<String, Map<String, Object>>());
+		currentBatch.set(batchId);
+		return batchId;
+	}
+	
+	/**
+	 * Drops the caches of the batch bound to the current thread and unbinds it
+	 */
+	public static void endBatch() {
+		String batchId = currentBatch.get();
+		currentBatch.remove();
+		if (batchId != null) {
+			batches.remove(batchId);
+		}
+	}
+	
+	/**
+	 * @param parameterValues the resolved parameter values of the report
+	 * @return the cache of the batch of the current thread for the parameter values, or null if no
+	 *         batch is bound to the thread
+	 */
+	public static Map<String, Object> getCache(Map<String, Object> parameterValues) {
+		String batchId = currentBatch.get();
+		ConcurrentHashMap<String, Map<String, Object>> caches = batchId == null ? null : batches.get(batchId);
+		if (caches == null) {
+			return null;
+		}
+		
+		String key = getParameterKey(parameterValues);
+		Map<String, Object> cache = caches.get(key);
+		if (cache == null) {
+			Map<String, Object> created = Collections.synchronizedMap(new HashMap<String, Object>());
+			cache = caches.putIfAbsent(key, created);
+			cache = cache != null ? cache : created;
+		} else if (log.isDebugEnabled()) {
+			log.debug("Evaluating with the cache of batch " + batchId + key);
+		}
+		return cache;
+	}
+	
+	/**
+	 * Drops every batch
+	 */
+	public static void clear() {
+		batches.clear();
+	}
+	
+	private static String getParameterKey(Map<String, Object> parameterValues) {
+		StringBuilder key = new StringBuilder();
+		for (Map.Entry<String, Object> parameter : new TreeMap<String, Object>(parameterValues).entrySet()) {
+			Object value = parameter.getValue();
+			key.append("|").append(parameter.getKey()).append("=");
+			if (value instanceof Date) {
+				key.append(((Date) value).getTime());
+			} else if (value instanceof AllLocation) {
+				AllLocation location = (AllLocation) value;
+				key.append(location.getHierarchy()).append(":").append(location.getValue()).append(":")
+				        .append(location.isAllSites());
+			} else {
+				key.append(value);
+			}
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,36 @@
+package org.openmrs.module.rwandareports.util;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/**
+ * Gives the reports evaluated in a batch the evaluation cache of {@link ReportRunCache}. Only
+ * evaluate(Mapped, EvaluationContext) is advised, which is how the report service runs a request.
+ */
+public class ReportRunCacheAdvice implements MethodInterceptor {
+	
+	private static final Class<?>[] EVALUATE_PARAMETER_TYPES = { Mapped.class, EvaluationContext.class };
+	
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Method method = invocation.getMethod();
+		if ("evaluate".equals(method.getName()) && Arrays.equals(EVALUATE_PARAMETER_TYPES, method.getParameterTypes())) {
+			Mapped<?> mapped = (Mapped<?>) invocation.getArguments()[0];
+			EvaluationContext context = (EvaluationContext) invocation.getArguments()[1];
+			if (mapped != null && context != null) {
+				Map<String, Object> cache = ReportRunCache.getCache(EvaluationContext.cloneForChild(context, mapped)
+				        .getParameterValues());
+				if (cache != null) {
+					context.setCache(cache);
+				}
+			}
+		}
+		return invocation.proceed();
+	}
+}
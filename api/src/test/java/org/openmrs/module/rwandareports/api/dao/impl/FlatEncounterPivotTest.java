@@ -0,0 +1,56 @@
+package org.openmrs.module.rwandareports.api.dao.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.openmrs.module.rwandareports.api.dao.impl.FlatEncounterPivot.Column;
+
+/**
+ * Pivots obs the way sp_mamba_flat_encounter_table_insert does
+ */
+public class FlatEncounterPivotTest {
+	
+	private static final Date DATETIME = new Date(0);
+	
+	private FlatEncounterPivot pivot = new FlatEncounterPivot(Arrays.asList(new Column("weight", "weight-uuid", false,
+	        "Numeric"), new Column("smoker", "smoker-uuid", false, "Coded"), new Column("insulin", "insulin-uuid", true,
+	        "N/A")));
+	
+	@Test
+	public void add_shouldReturnTheRowsOfAnEncounterOnceTheNextOneStarts() {
+		assertTrue(pivot.add(1, 10, DATETIME, "weight-uuid", null, null, 70.5, null).isEmpty());
+		assertTrue(pivot.add(1, 10, DATETIME, "smoker-uuid", "no-uuid", "No", null, null).isEmpty());
+		
+		List<Object[]> rows = pivot.add(2, 11, DATETIME, "drug-uuid", "insulin-uuid", "Insulin", null, null);
+		assertEquals(1, rows.size());
+		assertArrayEquals(new Object[] { 1, 10, DATETIME, "70.5", "No", null }, rows.get(0));
+		
+		rows = pivot.finish();
+		assertEquals(1, rows.size());
+		assertArrayEquals(new Object[] { 2, 11, DATETIME, null, null, "Insulin" }, rows.get(0));
+	}
+	
+	@Test
+	public void add_shouldKeepTheLargestValueOfAColumn() {
+		pivot.add(1, 10, DATETIME, "weight-uuid", null, null, 80.0, null);
+		pivot.add(1, 10, DATETIME, "weight-uuid", null, null, 100.0, null);
+		pivot.add(1, 10, DATETIME, "smoker-uuid", "yes-uuid", "yes", null, null);
+		pivot.add(1, 10, DATETIME, "smoker-uuid", "no-uuid", "No", null, null);
+		
+		assertArrayEquals(new Object[] { 1, 10, DATETIME, "100", "yes", null }, pivot.finish().get(0));
+	}
+	
+	@Test
+	public void add_shouldSkipEncountersWithoutObsOfAColumn() {
+		pivot.add(1, 10, DATETIME, "drug-uuid", "other-uuid", "Other", null, null);
+		
+		assertTrue(pivot.add(2, 10, DATETIME, "weight-uuid", null, null, 60.0, null).isEmpty());
+		assertEquals(1, pivot.finish().size());
+	}
+}
@@ -0,0 +1,152 @@
+package org.openmrs.module.rwandareports.dhis2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.rwandareports.dhis2.model.DHISDataValue;
+import org.openmrs.module.rwandareports.dhis2.model.DHISDataValueSet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Posts to a local stub of the DHIS2 dataValueSets endpoint
+ */
+public class DHIS2ClientTest {
+	
+	private HttpServer server;
+	
+	private List<String> requestBodies = new ArrayList<String>();
+	
+	private List<String> contentEncodings = new ArrayList<String>();
+	
+	private int responseStatus = 200;
+	
+	private DHIS2Client client;
+	
+	@Before
+	public void startServer() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/dataValueSets", new HttpHandler() {
+			
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+				InputStream in = exchange.getRequestBody();
+				if ("gzip".equals(encoding)) {
+					in = new GZIPInputStream(in);
+				}
+				contentEncodings.add(encoding);
+				requestBodies.add(read(in));
+				
+				byte[] response = "{\"status\":\"SUCCESS\"}".getBytes("UTF-8");
+				exchange.sendResponseHeaders(responseStatus, response.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(response);
+				out.close();
+			}
+		});
+		server.start();
+		client = new DHIS2Client("http://localhost:" + server.getAddress().getPort() + "/api/dataValueSets", "admin",
+		        "district", true);
+	}
+	
+	@After
+	public void stopServer() throws Exception {
+		client.close();
+		server.stop(0);
+	}
+	
+	@Test
+	public void post_shouldSendSeveralOrgUnitsInOneCompressedRequest() throws Exception {
+		client.post(Arrays.asList(dataValueSet("X3VDRgqWC8F", "4"), dataValueSet("q7jPDaJrn0p", "7")));
+		
+		assertEquals(1, requestBodies.size());
+		assertEquals("gzip", contentEncodings.get(0));
+		JsonNode json = new ObjectMapper().readTree(requestBodies.get(0));
+		assertEquals("dataSet", json.get("dataSet").asText());
+		assertEquals(2, json.get("dataValues").size());
+		assertEquals("X3VDRgqWC8F", json.get("dataValues").get(0).get("orgUnit").asText());
+		assertEquals("202609", json.get("dataValues").get(0).get("period").asText());
+		assertEquals("q7jPDaJrn0p", json.get("dataValues").get(1).get("orgUnit").asText());
+		assertEquals("7", json.get("dataValues").get(1).get("value").asText());
+	}
+	
+	@Test
+	public void post_shouldReuseTheClientForSeveralRequests() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			client.post(Arrays.asList(dataValueSet("X3VDRgqWC8F", String.valueOf(i))));
+		}
+		
+		assertEquals(3, requestBodies.size());
+		JsonNode json = new ObjectMapper().readTree(requestBodies.get(2));
+		assertEquals("X3VDRgqWC8F", json.get("orgUnit").asText());
+		assertNull(json.get("dataValues").get(0).get("orgUnit"));
+	}
+	
+	@Test
+	public void post_shouldFailWhenDhis2DoesNotAcceptTheData() throws Exception {
+		responseStatus = 409;
+		try {
+			client.post(Arrays.asList(dataValueSet("X3VDRgqWC8F", "4")));
+			fail();
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().contains("409"));
+		}
+	}
+	
+	@Test
+	public void post_shouldNotSendOnceTheClientIsRetired() throws Exception {
+		client.retire();
+		try {
+			client.post(Arrays.asList(dataValueSet("X3VDRgqWC8F", "4")));
+			fail();
+		}
+		catch (IOException e) {
+			assertEquals(0, requestBodies.size());
+		}
+	}
+	
+	private DHISDataValueSet dataValueSet(String orgUnit, String value) {
+		DHISDataValue dataValue = new DHISDataValue();
+		dataValue.setDataElement("PtcrHYo3m4h");
+		dataValue.setCategoryOptionCombo("jjOEu6JXwo4");
+		dataValue.setValue(value);
+		
+		DHISDataValueSet dataValueSet = new DHISDataValueSet();
+		dataValueSet.setDataSet("dataSet");
+		dataValueSet.setPeriod("202609");
+		dataValueSet.setOrgUnit(orgUnit);
+		dataValueSet.addDataValue(dataValue);
+		return dataValueSet;
+	}
+	
+	private String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toString("UTF-8");
+	}
+}
@@ -29,6 +29,8 @@ public class DQReportModel {
 	
 	private List<DataSetDefinition> dataSetDefinitions;
 	
+	private int total;
+	
 	public DataSetColumn getSelectedColumn() {
 		return selectedColumn;
 	}
@@ -101,4 +103,15 @@ public class DQReportModel {
 		this.dataSetDefinitions = dataSetDefinitions;
 	}
 	
+	/**
+	 * @return the number of patients or encounters of the column, the data set and the encounters only
+	 *         hold the ones of the current page
+	 */
+	public int getTotal() {
+		return total;
+	}
+	
+	public void setTotal(int total) {
+		this.total = total;
+	}
 }
@@ -0,0 +1,71 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.rwandareports.web.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.rwandareports.api.EtlStageRun;
+import org.openmrs.module.rwandareports.api.FlattenDatabaseService;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Controller prepares the run history page of the MambaETL stages
+ */
+@Controller
+public class MambaEtlRunHistoryController {
+	
+	@RequestMapping("/module/rwandareports/mambaEtlRunHistory.form")
+	public void showRunHistory(Model model,
+	        @RequestParam(value = "maxResults", required = false, defaultValue = "500") Integer maxResults) {
+		List<EtlStageRun> stageRuns = Context.getService(FlattenDatabaseService.class).getEtlStageRuns(maxResults);
+		
+		// average duration of the successful runs of each stage, to compare the latest runs against
+		Map<String, Long> totalDurations = new HashMap<String, Long>();
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (EtlStageRun stageRun : stageRuns) {
+			if (EtlStageRun.SUCCESS.equals(stageRun.getStatus())) {
+				String key = stageKey(stageRun);
+				Long total = totalDurations.get(key);
+				totalDurations.put(key, (total == null ? 0 : total) + stageRun.getDurationMillis());
+				Integer count = counts.get(key);
+				counts.put(key, (count == null ? 0 : count) + 1);
+			}
+		}
+		Map<Integer, Long> averageDurations = new HashMap<Integer, Long>();
+		for (EtlStageRun stageRun : stageRuns) {
+			String key = stageKey(stageRun);
+			if (counts.containsKey(key)) {
+				averageDurations.put(stageRun.getId(), totalDurations.get(key) / counts.get(key));
+			}
+		}
+		
+		model.addAttribute("stageRuns", stageRuns);
+		model.addAttribute("averageDurations", averageDurations);
+		model.addAttribute("maxResults", maxResults);
+	}
+	
+	/**
+	 * Full and incremental runs of the same stage do not load the same amount of rows, they are averaged
+	 * separately
+	 */
+	private String stageKey(EtlStageRun stageRun) {
+		return (stageRun.isIncremental() ? "incremental:" : "full:") + stageRun.getStage();
+	}
+}
@@ -13,6 +13,9 @@
  */
 package org.openmrs.module.rwandareports.web.controller;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.openmrs.Cohort;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.dataset.DataSetColumn;
@@ -21,6 +24,7 @@ import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.report.ReportData;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
 import org.openmrs.module.reporting.report.definition.service.ReportDefinitionService;
+import org.openmrs.module.rwandareports.patientsummary.PatientSummaryCache;
 import org.openmrs.module.rwandareports.patientsummary.PatientSummaryManager;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -28,7 +32,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 /**
- * Responsible for loading the model and delegating to the view for all patient summaries
+ * Responsible for loading the model and delegating to the view for all patient summaries. The report
+ * definitions and the evaluated values come from the {@link PatientSummaryCache}
  */
 @Controller
 public class PatientSummaryController {
@@ -37,23 +42,31 @@ public class PatientSummaryController {
 	public String handle(Model model, @RequestParam("type") Class<? extends PatientSummaryManager> type,
 	        @RequestParam("patientId") Integer patientId) throws Exception {
 		
-		PatientSummaryManager manager = (PatientSummaryManager) type.newInstance();
-		ReportDefinition rd = manager.constructReportDefinition();
+		PatientSummaryCache.Summary summary = PatientSummaryCache.getSummary(type);
+		PatientSummaryManager manager = summary.getManager();
+		ReportDefinition rd = summary.getReportDefinition();
 		
 		model.addAttribute("patientId", patientId);
 		model.addAttribute("patientSummaryManager", manager);
 		model.addAttribute("reportDefinition", rd);
 		
-		EvaluationContext context = new EvaluationContext();
-		Cohort c = new Cohort();
-		c.addMember(patientId);
-		context.setBaseCohort(c);
-		
-		ReportData data = Context.getService(ReportDefinitionService.class).evaluate(rd, context);
-		SimpleDataSet dataSet = (SimpleDataSet) data.getDataSets().values().iterator().next();
-		for (DataSetColumn column : dataSet.getMetaData().getColumns()) {
-			model.addAttribute(column.getName(), dataSet.getColumnValue(patientId, column.getName()));
+		Map<String, Object> values = PatientSummaryCache.getValues(summary, patientId);
+		if (values == null) {
+			long stamp = PatientSummaryCache.getStamp();
+			EvaluationContext context = new EvaluationContext();
+			Cohort c = new Cohort();
+			c.addMember(patientId);
+			context.setBaseCohort(c);
+			
+			ReportData data = Context.getService(ReportDefinitionService.class).evaluate(rd, context);
+			SimpleDataSet dataSet = (SimpleDataSet) data.getDataSets().values().iterator().next();
+			values = new HashMap<String, Object>();
+			for (DataSetColumn column : dataSet.getMetaData().getColumns()) {
+				values.put(column.getName(), dataSet.getColumnValue(patientId, column.getName()));
+			}
+			PatientSummaryCache.putValues(summary, patientId, values, stamp);
 		}
+		model.addAllAttributes(values);
 		
 		return "/module/rwandareports/patientSummaries/" + manager.getKey();
 	}
@@ -16,10 +16,12 @@ package org.openmrs.module.rwandareports.web.controller;
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,100 +34,162 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.orderextension.DrugRegimen;
 import org.openmrs.module.orderextension.util.OrderEntryUtil;
 import org.openmrs.module.rwandareports.util.GlobalPropertiesManagement;
+import org.openmrs.module.rwandareports.util.MetadataCache;
+import org.openmrs.module.rwandareports.util.PatientCache;
 import org.openmrs.web.controller.PortletController;
 import org.springframework.stereotype.Controller;
 
 /**
- * The main controller.
+ * The main controller. The regimens of a patient are indexed in one pass over their drug orders, the
+ * index is kept until the drug orders of the patient or the metadata change.
  */
 @Controller
 public class RegimenHeaderPortletController extends PortletController {
 	
+	private static final int MAX_PATIENTS = 500;
+	
+	/**
+	 * The regimen indexes by patient, the least recently viewed are dropped first
+	 */
+	private static final PatientCache<RegimenIndex> indexes = new PatientCache<RegimenIndex>(MAX_PATIENTS);
+	
 	GlobalPropertiesManagement gp = new GlobalPropertiesManagement();
 	
+	/**
+	 * What the portlet shows of a chemotherapy regimen, it only depends on the drug orders of the regimen
+	 */
+	private static class RegimenEntry {
+		
+		/**
+		 * The latest start of an IV chemotherapy order of the regimen, null if it has none
+		 */
+		private Date lastIvChemotherapyStart;
+		
+		private List<StartDateDTO> startDates;
+	}
+	
+	/**
+	 * The chemotherapy regimens of a patient by id, in the order of their first drug order
+	 */
+	private static class RegimenIndex {
+		
+		private final String ordersKey;
+		
+		private final long metadataVersion;
+		
+		private final Map<Integer, RegimenEntry> regimens = new LinkedHashMap<Integer, RegimenEntry>();
+		
+		private RegimenIndex(String ordersKey, long metadataVersion) {
+			this.ordersKey = ordersKey;
+			this.metadataVersion = metadataVersion;
+		}
+	}
+	
 	/**
 	 * @see PortletController#populateModel(HttpServletRequest, Map)
 	 */
 	@Override
 	protected void populateModel(HttpServletRequest request, Map<String, Object> model) {
 		
-		List<Concept> iv = gp.getConceptList(GlobalPropertiesManagement.IV_CONCEPT);
-		Concept chemotherapy = gp.getConcept(GlobalPropertiesManagement.CHEMOTHERAPY);
 		Patient patient = Context.getPatientService().getPatient((Integer) model.get("patientId"));
 		
 		List<DrugOrder> allDrugOrders = OrderEntryUtil.getDrugOrdersByPatient(patient);
-		List<DrugRegimen> regimens = new ArrayList<DrugRegimen>();
-		List<DrugRegimen> allRegimens = new ArrayList<DrugRegimen>();
-		
-		Calendar compareDate = Calendar.getInstance();
-		compareDate.add(Calendar.DAY_OF_YEAR, -7);
-		
+		Map<Integer, DrugRegimen> drugRegimens = new LinkedHashMap<Integer, DrugRegimen>();
+		StringBuilder ordersKey = new StringBuilder();
 		for (DrugOrder drugOrder : allDrugOrders) {
 			OrderGroup orderGroup = OrderEntryUtil.getOrderGroup(drugOrder);
+			// everything the index is built from: the start, route and reason of the orders and when they stopped
+			ordersKey.append(drugOrder.getOrderId()).append(drugOrder.getVoided() ? "v" : "");
+			if (drugOrder.getEffectiveStartDate() != null) {
+				ordersKey.append("d").append(drugOrder.getEffectiveStartDate().getTime());
+			}
+			if (drugOrder.getRoute() != null) {
+				ordersKey.append("r").append(drugOrder.getRoute().getConceptId());
+			}
+			if (drugOrder.getOrderReason() != null) {
+				ordersKey.append("c").append(drugOrder.getOrderReason().getConceptId());
+			}
+			if (drugOrder.getDateStopped() != null) {
+				ordersKey.append("s").append(drugOrder.getDateStopped().getTime());
+			}
 			if (orderGroup != null && orderGroup instanceof DrugRegimen) {
-				DrugRegimen regimen = (DrugRegimen) orderGroup;
-				if (!regimens.contains(regimen)) {
-					for (DrugOrder order : regimen.getMembers()) {
-						if (order.getEffectiveStartDate().after(compareDate.getTime()) && order.getRoute() != null
-						        && iv.contains(order.getRoute()) && order.getOrderReason() != null
-						        && chemotherapy.equals(order.getOrderReason())) {
-							regimens.add(regimen);
-							break;
-						}
-					}
-				}
+				drugRegimens.put(orderGroup.getId(), (DrugRegimen) orderGroup);
+				ordersKey.append("g").append(orderGroup.getId());
 			}
+			ordersKey.append(",");
 		}
 		
-		if (regimens.size() > 0) {
-			List<RegimenDTO> regimenDTOs = new ArrayList<RegimenDTO>();
-			for (DrugRegimen reg : regimens) {
-				RegimenDTO dto = new RegimenDTO();
-				dto.setDrugRegimen(reg);
-				dto.setStartDates(getRegimenCycleDays(reg));
-				regimenDTOs.add(dto);
-			}
-			model.put("regimens", regimenDTOs);
+		long metadataVersion = MetadataCache.getVersion();
+		RegimenIndex index = indexes.get(patient.getPatientId());
+		if (index == null || index.metadataVersion != metadataVersion || !index.ordersKey.equals(ordersKey.toString())) {
+			index = buildIndex(ordersKey.toString(), metadataVersion, drugRegimens.values());
+			indexes.put(patient.getPatientId(), index);
 		}
 		
-		for (DrugOrder drugOrder : allDrugOrders) {
-			OrderGroup orderGroup = OrderEntryUtil.getOrderGroup(drugOrder);
-			if (orderGroup != null && orderGroup instanceof DrugRegimen) {
-				DrugRegimen regimen = (DrugRegimen) orderGroup;
-				if (!allRegimens.contains(regimen)) {
-					for (DrugOrder order : regimen.getMembers()) {
-						if (order.getOrderReason() != null && chemotherapy.equals(order.getOrderReason())) {
-							allRegimens.add(regimen);
-							break;
-						}
-					}
-				}
-			}
-		}
+		Calendar compareDate = Calendar.getInstance();
+		compareDate.add(Calendar.DAY_OF_YEAR, -7);
 		
-		if (allRegimens.size() > 0) {
-			List<RegimenDTO> regimenDTOs = new ArrayList<RegimenDTO>();
-			for (DrugRegimen reg : allRegimens) {
-				RegimenDTO dto = new RegimenDTO();
-				dto.setDrugRegimen(reg);
-				dto.setStartDates(getRegimenCycleDays(reg));
+		List<RegimenDTO> regimenDTOs = new ArrayList<RegimenDTO>();
+		List<RegimenDTO> allRegimenDTOs = new ArrayList<RegimenDTO>();
+		for (Map.Entry<Integer, RegimenEntry> entry : index.regimens.entrySet()) {
+			RegimenDTO dto = new RegimenDTO();
+			dto.setDrugRegimen(drugRegimens.get(entry.getKey()));
+			dto.setStartDates(entry.getValue().startDates);
+			allRegimenDTOs.add(dto);
+			Date lastIvChemotherapyStart = entry.getValue().lastIvChemotherapyStart;
+			if (lastIvChemotherapyStart != null && lastIvChemotherapyStart.after(compareDate.getTime())) {
 				regimenDTOs.add(dto);
 			}
-			model.put("allRegimens", regimenDTOs);
+		}
+		
+		if (regimenDTOs.size() > 0) {
+			model.put("regimens", regimenDTOs);
+		}
+		if (allRegimenDTOs.size() > 0) {
+			model.put("allRegimens", allRegimenDTOs);
 		}
 		
 		model.put("patient", patient);
 	}
 	
-	private List<StartDateDTO> getRegimenCycleDays(DrugRegimen regimen) {
-		List<Concept> iv = gp.getConceptList(GlobalPropertiesManagement.IV_CONCEPT);
-		Set<Date> ivDates = new HashSet<Date>();
-		for (DrugOrder order : regimen.getMembers()) {
-			if (order.getRoute() != null && iv.contains(order.getRoute())) {
-				ivDates.add(order.getEffectiveStartDate());
+	/**
+	 * Walks the members of every regimen once, keeping the regimens with a chemotherapy order
+	 */
+	private RegimenIndex buildIndex(String ordersKey, long metadataVersion, Collection<DrugRegimen> drugRegimens) {
+		Set<Concept> iv = new HashSet<Concept>(gp.getConceptList(GlobalPropertiesManagement.IV_CONCEPT));
+		Concept chemotherapy = gp.getConcept(GlobalPropertiesManagement.CHEMOTHERAPY);
+		
+		RegimenIndex index = new RegimenIndex(ordersKey, metadataVersion);
+		for (DrugRegimen regimen : drugRegimens) {
+			boolean isChemotherapy = false;
+			Date lastIvChemotherapyStart = null;
+			Set<Date> ivDates = new HashSet<Date>();
+			for (DrugOrder order : regimen.getMembers()) {
+				boolean isIv = order.getRoute() != null && iv.contains(order.getRoute());
+				boolean isChemotherapyOrder = order.getOrderReason() != null && chemotherapy.equals(order.getOrderReason());
+				if (isIv) {
+					ivDates.add(order.getEffectiveStartDate());
+				}
+				if (isChemotherapyOrder) {
+					isChemotherapy = true;
+					if (isIv
+					        && (lastIvChemotherapyStart == null || order.getEffectiveStartDate().after(
+					            lastIvChemotherapyStart))) {
+						lastIvChemotherapyStart = order.getEffectiveStartDate();
+					}
+				}
+			}
+			if (isChemotherapy) {
+				RegimenEntry entry = new RegimenEntry();
+				entry.lastIvChemotherapyStart = lastIvChemotherapyStart;
+				entry.startDates = getRegimenCycleDays(regimen, ivDates);
+				index.regimens.put(regimen.getId(), entry);
 			}
 		}
-		
+		return index;
+	}
+	
+	private List<StartDateDTO> getRegimenCycleDays(DrugRegimen regimen, Set<Date> ivDates) {
 		List<StartDateDTO> cycleDays = new ArrayList<StartDateDTO>();
 		for (Date date : ivDates) {
 			long cycleDay = date.getTime() - regimen.getFirstDrugOrderStartDate().getTime();
@@ -136,15 +200,15 @@ public class RegimenHeaderPortletController extends PortletController {
 			dto.setStartDate(date);
 			dto.setStartDay((int) cycleDay);
 			cycleDays.add(dto);
-			Collections.sort(cycleDays, new Comparator<StartDateDTO>() {
-				
-				@Override
-				public int compare(StartDateDTO o1, StartDateDTO o2) {
-					return o1.getStartDay().compareTo(o2.getStartDay());
-				}
-				
-			});
 		}
+		Collections.sort(cycleDays, new Comparator<StartDateDTO>() {
+			
+			@Override
+			public int compare(StartDateDTO o1, StartDateDTO o2) {
+				return o1.getStartDay().compareTo(o2.getStartDay());
+			}
+			
+		});
 		return cycleDays;
 	}
 }
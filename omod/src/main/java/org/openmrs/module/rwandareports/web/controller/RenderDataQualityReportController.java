@@ -14,8 +14,7 @@
 package org.openmrs.module.rwandareports.web.controller;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +41,8 @@ import org.openmrs.module.reporting.dataset.definition.SimplePatientDataSetDefin
 import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.reporting.indicator.dimension.CohortIndicatorAndDimensionResult;
 import org.openmrs.module.reporting.report.ReportData;
 import org.openmrs.module.rwandareports.indicator.EncounterIndicatorResult;
@@ -51,17 +52,26 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 /**
- * Controller prepares result page for Data Quality Report
+ * Controller prepares result page for Data Quality Report. Only one page of the patients and
+ * encounters of every column is shown, the patient details of all the columns are evaluated at once
+ * for the patients of the page.
  */
 @Controller
 public class RenderDataQualityReportController {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	private static final int DEFAULT_PAGE_SIZE = 50;
+	
 	@RequestMapping("/module/rwandareports/renderDataQualityDataSet")
-	public String showReport(Model model, HttpSession session) throws Exception {
+	public String showReport(Model model, HttpSession session,
+	        @RequestParam(required = false, value = "page") Integer page,
+	        @RequestParam(required = false, value = "pageSize") Integer pageSize) throws Exception {
 		String renderArg = (String) session.getAttribute(ReportingConstants.OPENMRS_REPORT_ARGUMENT);
 		
+		page = page == null || page < 1 ? 1 : page;
+		pageSize = pageSize == null || pageSize < 1 ? DEFAULT_PAGE_SIZE : pageSize;
+		
 		ReportData data = null;
 		try {
 			data = (ReportData) session.getAttribute(ReportingConstants.OPENMRS_REPORT_DATA);
@@ -70,19 +80,31 @@ public class RenderDataQualityReportController {
 			String savedDataSetEncKey = "encFuture";
 			String savedDataSetNcdKey = "defaultDataSetncd";
 			
-			if (savedDataSetKey.equals("defaultDataSetGlobal")) {
-				manipulateHIVDsd(savedDataSetKey, model, session);
+			if (data != null) {
+				List<String> savedColumnKeys = new ArrayList<String>();
+				getSavedKeys(savedColumnKeys);
+				List<DQReportModel> dQRList = getPatientResults(data, savedDataSetKey, savedColumnKeys, page, pageSize);
+				model.addAttribute("dQRList", dQRList);
 				
-				if (savedDataSetEncKey.equals("encFuture")) {
-					manipulateEncounters(savedDataSetEncKey, model, session);
-					
-				}
+				List<DQReportModel> dQRListenc = getEncounterResults(data, savedDataSetEncKey, page, pageSize);
+				model.addAttribute("dQRListenc", dQRListenc);
 				
-			}
-			
-			if (savedDataSetNcdKey.equals("defaultDataSetncd")) {
-				manipulatencdDsd(savedDataSetNcdKey, model, session);
+				List<String> savedColumnKeysncd = new ArrayList<String>();
+				getSavedKeysncd(savedColumnKeysncd);
+				List<DQReportModel> dQRListncd = getPatientResults(data, savedDataSetNcdKey, savedColumnKeysncd, page,
+				    pageSize);
+				model.addAttribute("dQRListncd", dQRListncd);
 				
+				List<DQReportModel> allResults = new ArrayList<DQReportModel>(dQRList);
+				allResults.addAll(dQRListenc);
+				allResults.addAll(dQRListncd);
+				boolean hasNextPage = false;
+				for (DQReportModel result : allResults) {
+					hasNextPage = hasNextPage || result.getTotal() > page * pageSize;
+				}
+				model.addAttribute("page", page);
+				model.addAttribute("pageSize", pageSize);
+				model.addAttribute("hasNextPage", hasNextPage);
 			}
 			
 			// end of if
@@ -101,298 +123,171 @@ public class RenderDataQualityReportController {
 	}
 	
 	/**
-	 * Auto generated method comment
-	 * 
-	 * @param savedColumnKeys
-	 * @return
+	 * Takes the page of the patients of every cohort column of the data set, evaluates the patient
+	 * details once for the patients of all the pages and gives every column the rows of its patients
 	 */
-	public String manipulatencdDsd(@RequestParam(required = false, value = "savedDataSetNcdKey") String savedDataSetNcdKey,
-	        Model model, HttpSession session) throws Exception {
-		
-		String renderArg = (String) session.getAttribute(ReportingConstants.OPENMRS_REPORT_ARGUMENT);
+	private List<DQReportModel> getPatientResults(ReportData data, String dataSetKey, List<String> savedColumnKeys,
+	        int page, int pageSize) {
+		List<DQReportModel> dQRList = new ArrayList<DQReportModel>();
+		DataSet dataSet = data.getDataSets().get(dataSetKey);
+		if (!(dataSet instanceof MapDataSet)) {
+			return dQRList;
+		}
+		MapDataSet mapDataSet = (MapDataSet) dataSet;
 		
-		ReportData data = null;
-		try {
-			data = (ReportData) session.getAttribute(ReportingConstants.OPENMRS_REPORT_DATA);
+		List<List<Integer>> pagePatients = new ArrayList<List<Integer>>();
+		Cohort allPagePatients = new Cohort();
+		for (String savedColumnKey : savedColumnKeys) {
+			DQReportModel dQRObject = new DQReportModel();
+			DataSetColumn dataSetColumn = mapDataSet.getMetaData().getColumn(savedColumnKey);
+			dQRObject.setSelectedColumn(dataSetColumn);
 			
-			savedDataSetNcdKey = savedDataSetNcdKey;
-			List<String> savedColumnKeys = new ArrayList<String>();
-			
-			getSavedKeysncd(savedColumnKeys);
-			List<DQReportModel> dQRListncd = new ArrayList<DQReportModel>();
-			
-			for (String savedColumnKey : savedColumnKeys) {
-				DQReportModel dQRObject = new DQReportModel();
-				
-				for (Map.Entry<String, DataSet> e : data.getDataSets().entrySet()) {
-					if (e.getKey().equals(savedDataSetNcdKey)) {
-						MapDataSet mapDataSet = (MapDataSet) e.getValue();
-						DataSetColumn dataSetColumn = mapDataSet.getMetaData().getColumn(savedColumnKey);
-						dQRObject.setSelectedColumn(dataSetColumn);
-						
-						Object result = mapDataSet.getData(dataSetColumn);
-						Cohort selectedCohort = null;
-						if (result instanceof CohortIndicatorAndDimensionResult) {
-							CohortIndicatorAndDimensionResult cidr = (CohortIndicatorAndDimensionResult) mapDataSet
-							        .getData(dataSetColumn);
-							selectedCohort = cidr.getCohortIndicatorAndDimensionCohort();
-							
-						} // Evaluate the default patient dataset definition
-						DataSetDefinition dsd = null;
-						if (dsd == null) {
-							SimplePatientDataSetDefinition d = new SimplePatientDataSetDefinition();
-							d.addPatientProperty("patientId");
-							List<PatientIdentifierType> types = ReportingConstants
-							        .GLOBAL_PROPERTY_PREFERRED_IDENTIFIER_TYPES();
-							if (!types.isEmpty()) {
-								d.setIdentifierTypes(types);
-							}
-							
-							List<ProgramWorkflow> programWorkFlows = new ArrayList<ProgramWorkflow>();
-							
-							ProgramWorkflow hivpediWorkflow = Context.getProgramWorkflowService().getProgram(10)
-							        .getWorkflowByName("TREATMENT GROUP");
-							ProgramWorkflow hivWorkflow = Context.getProgramWorkflowService().getProgram(3)
-							        .getWorkflowByName("TREATMENT GROUP");
-							ProgramWorkflow tbWorkflow = Context.getProgramWorkflowService().getProgram(4)
-							        .getWorkflowByName("TUBERCULOSIS TREATMENT GROUP");
-							
-							programWorkFlows.add(hivpediWorkflow);
-							programWorkFlows.add(hivWorkflow);
-							programWorkFlows.add(tbWorkflow);
-							
-							if ((programWorkFlows != null && programWorkFlows.size() > 0)) {
-								
-								d.setProgramWorkflows(programWorkFlows);
-								
-								d.addPatientProperty("givenName");
-								d.addPatientProperty("familyName");
-								d.addPatientProperty("age");
-								d.addPatientProperty("gender");
-								
-								dsd = d;
-							}
-							
-						}
-						
-						EvaluationContext evalContext = new EvaluationContext();
-						evalContext.setBaseCohort(selectedCohort);
-						
-						DataSet patientDataSet;
-						try {
-							patientDataSet = Context.getService(DataSetDefinitionService.class).evaluate(dsd, evalContext);
-							dQRObject.setDataSet(patientDataSet);
-							dQRObject.setDataSetDefinition(dsd);
-						}
-						catch (EvaluationException e1) {
-							// TODO Auto-generated catch block 
-							e1.printStackTrace();
-						}
-					}
-					
+			Object result = mapDataSet.getData(dataSetColumn);
+			List<Integer> patientIds = null;
+			if (result instanceof CohortIndicatorAndDimensionResult) {
+				Cohort selectedCohort = ((CohortIndicatorAndDimensionResult) result).getCohortIndicatorAndDimensionCohort();
+				dQRObject.setSelectedCohort(selectedCohort);
+				dQRObject.setTotal(selectedCohort.size());
+				patientIds = getPage(new ArrayList<Integer>(new TreeSet<Integer>(selectedCohort.getMemberIds())), page,
+				    pageSize);
+				for (Integer patientId : patientIds) {
+					allPagePatients.addMember(patientId);
 				}
-				
-				// Add all dataset definition to the request (allow user to choose) 
-				dQRObject.setDataSetDefinitions(Context.getService(DataSetDefinitionService.class).getAllDefinitions(false));
-				dQRListncd.add(dQRObject);
 			}
-			
-			model.addAttribute("dQRListncd", dQRListncd);
-			List<String> ncddataSet = new ArrayList<String>();
-			ncddataSet.add(savedDataSetNcdKey);
+			pagePatients.add(patientIds);
+			dQRList.add(dQRObject);
 		}
-		catch (ClassCastException ex) {
-			// pass
-		}
-		if (data == null)
-			return "redirect:../reporting/dashboard/index.form";
-		
-		@SuppressWarnings("unused")
-		SimpleDataSet dataSet = (SimpleDataSet) data.getDataSets().get(renderArg);
-		// model.addAttribute("columns", dataSet.getMetaData());
-		return null;
-	}
-	
-	public String manipulateHIVDsd(@RequestParam(required = false, value = "savedDataSetKey") String savedDataSetKey,
-	        Model model, HttpSession session) throws Exception {
 		
-		String renderArg = (String) session.getAttribute(ReportingConstants.OPENMRS_REPORT_ARGUMENT);
+		// Evaluate the default patient dataset definition
+		DataSetDefinition dsd = createPatientDataSetDefinition();
+		Map<Object, DataSetRow> rowsByPatient = new HashMap<Object, DataSetRow>();
+		if (!allPagePatients.isEmpty()) {
+			EvaluationContext evalContext = new EvaluationContext();
+			evalContext.setBaseCohort(allPagePatients);
+			try {
+				SimpleDataSet patientDataSet = (SimpleDataSet) Context.getService(DataSetDefinitionService.class)
+				        .evaluate(dsd, evalContext);
+				for (DataSetRow row : patientDataSet.getRows()) {
+					rowsByPatient.put(row.getColumnValue("patientId"), row);
+				}
+			}
+			catch (EvaluationException e1) {
+				log.error("Unable to evaluate the patients of " + dataSetKey, e1);
+			}
+		}
 		
-		ReportData data = null;
-		try {
-			data = (ReportData) session.getAttribute(ReportingConstants.OPENMRS_REPORT_DATA);
-			
-			savedDataSetKey = savedDataSetKey;
-			List<String> savedColumnKeys = new ArrayList<String>();
-			
-			getSavedKeys(savedColumnKeys);
-			List<DQReportModel> dQRList = new ArrayList<DQReportModel>();
-			
-			for (String savedColumnKey : savedColumnKeys) {
-				DQReportModel dQRObject = new DQReportModel();
-				
-				for (Map.Entry<String, DataSet> e : data.getDataSets().entrySet()) {
-					if (e.getKey().equals(savedDataSetKey)) {
-						MapDataSet mapDataSet = (MapDataSet) e.getValue();
-						DataSetColumn dataSetColumn = mapDataSet.getMetaData().getColumn(savedColumnKey);
-						dQRObject.setSelectedColumn(dataSetColumn);
-						
-						Object result = mapDataSet.getData(dataSetColumn);
-						Cohort selectedCohort = null;
-						if (result instanceof CohortIndicatorAndDimensionResult) {
-							CohortIndicatorAndDimensionResult cidr = (CohortIndicatorAndDimensionResult) mapDataSet
-							        .getData(dataSetColumn);
-							selectedCohort = cidr.getCohortIndicatorAndDimensionCohort();
-							
-						} // Evaluate the default patient dataset definition
-						DataSetDefinition dsd = null;
-						if (dsd == null) {
-							SimplePatientDataSetDefinition d = new SimplePatientDataSetDefinition();
-							d.addPatientProperty("patientId");
-							List<PatientIdentifierType> types = ReportingConstants
-							        .GLOBAL_PROPERTY_PREFERRED_IDENTIFIER_TYPES();
-							if (!types.isEmpty()) {
-								d.setIdentifierTypes(types);
-							}
-							
-							List<ProgramWorkflow> programWorkFlows = new ArrayList<ProgramWorkflow>();
-							
-							ProgramWorkflow hivpediWorkflow = Context.getProgramWorkflowService().getProgram(10)
-							        .getWorkflowByName("TREATMENT GROUP");
-							ProgramWorkflow hivWorkflow = Context.getProgramWorkflowService().getProgram(3)
-							        .getWorkflowByName("TREATMENT GROUP");
-							ProgramWorkflow tbWorkflow = Context.getProgramWorkflowService().getProgram(4)
-							        .getWorkflowByName("TUBERCULOSIS TREATMENT GROUP");
-							
-							programWorkFlows.add(hivpediWorkflow);
-							programWorkFlows.add(hivWorkflow);
-							programWorkFlows.add(tbWorkflow);
-							
-							if ((programWorkFlows != null && programWorkFlows.size() > 0)) {
-								
-								d.setProgramWorkflows(programWorkFlows);
-								
-								d.addPatientProperty("givenName");
-								d.addPatientProperty("familyName");
-								d.addPatientProperty("age");
-								d.addPatientProperty("gender");
-								
-								dsd = d;
-							}
-							
-						}
-						
-						EvaluationContext evalContext = new EvaluationContext();
-						evalContext.setBaseCohort(selectedCohort);
-						
-						DataSet patientDataSet;
-						try {
-							patientDataSet = Context.getService(DataSetDefinitionService.class).evaluate(dsd, evalContext);
-							dQRObject.setDataSet(patientDataSet);
-							dQRObject.setDataSetDefinition(dsd);
-						}
-						catch (EvaluationException e1) {
-							// TODO Auto-generated catch block 
-							e1.printStackTrace();
-						}
+		// Add all dataset definition to the request (allow user to choose)
+		List<DataSetDefinition> dataSetDefinitions = Context.getService(DataSetDefinitionService.class).getAllDefinitions(
+		    false);
+		for (int i = 0; i < dQRList.size(); i++) {
+			DQReportModel dQRObject = dQRList.get(i);
+			if (pagePatients.get(i) != null) {
+				SimpleDataSet columnDataSet = new SimpleDataSet(dsd, new EvaluationContext());
+				for (Integer patientId : pagePatients.get(i)) {
+					DataSetRow row = rowsByPatient.get(patientId);
+					if (row != null) {
+						columnDataSet.addRow(row);
 					}
-					
 				}
-				
-				// Add all dataset definition to the request (allow user to choose) 
-				dQRObject.setDataSetDefinitions(Context.getService(DataSetDefinitionService.class).getAllDefinitions(false));
-				dQRList.add(dQRObject);
+				dQRObject.setDataSet(columnDataSet);
+				dQRObject.setDataSetDefinition(dsd);
 			}
-			
-			model.addAttribute("dQRList", dQRList);
-		}
-		catch (ClassCastException ex) {
-			// pass
+			dQRObject.setDataSetDefinitions(dataSetDefinitions);
 		}
-		if (data == null)
-			return "redirect:../reporting/dashboard/index.form";
-		
-		@SuppressWarnings("unused")
-		SimpleDataSet dataSet = (SimpleDataSet) data.getDataSets().get(renderArg);
-		// model.addAttribute("columns", dataSet.getMetaData());
-		return null;
+		return dQRList;
 	}
 	
-	public String manipulateEncounters(
-	        @RequestParam(required = false, value = "savedDataSetEncKey") String savedDataSetEncKey, Model model,
-	        HttpSession session) throws Exception {
-		
-		String renderArg = (String) session.getAttribute(ReportingConstants.OPENMRS_REPORT_ARGUMENT);
+	private List<DQReportModel> getEncounterResults(ReportData data, String savedDataSetEncKey, int page, int pageSize) {
+		List<String> savedColumnKeys = new ArrayList<String>();
+		savedColumnKeys.add("Observations in the future (except return visit date)");
+		List<DQReportModel> dQRListenc = new ArrayList<DQReportModel>();
+		DataSet dataSet = data.getDataSets().get(savedDataSetEncKey);
+		if (!(dataSet instanceof SimpleDataSet)) {
+			return dQRListenc;
+		}
 		
-		ReportData data = null;
-		try {
-			data = (ReportData) session.getAttribute(ReportingConstants.OPENMRS_REPORT_DATA);
-			
-			savedDataSetEncKey = savedDataSetEncKey;
-			List<String> savedColumnKeys = new ArrayList<String>();
-			savedColumnKeys.add("Observations in the future (except return visit date)");
-			List<DQReportModel> dQRListenc = new ArrayList<DQReportModel>();
-			for (String savedColumnKey : savedColumnKeys) {
-				for (Map.Entry<String, DataSet> e : data.getDataSets().entrySet()) {
-					if (e.getKey().equals(savedDataSetEncKey)) {
-						
-						List<DataSetRow> mapDataSet = ((SimpleDataSet) e.getValue()).getRows();
-						DataSetColumn dataSetColumn = e.getValue().getMetaData().getColumn(savedColumnKey);
-						
-						List<DataSetColumn> dsdlist = new ArrayList<DataSetColumn>();
-						dsdlist.add(dataSetColumn);
-						
-						Object colValue = new Object();
-						Object result = new Object();
-						Set<Integer> selectedEncounter = new TreeSet<Integer>();
-						for (DataSetRow row : mapDataSet) {
-							for (DataSetColumn column : dsdlist) {
-								colValue = row.getColumnValue(column.getName());
-								result = colValue;
-								if (result instanceof EncounterIndicatorResult) {
-									EncounterIndicatorResult cidr = (EncounterIndicatorResult) result;
-									selectedEncounter = cidr.getMemberIds();
-								}
-								
-							}
-						}
-						
-						List<Encounter> encounters = new ArrayList<Encounter>();
-						List<Patient> patients = new ArrayList<Patient>();
-						DQReportModel dQRObjectenc = new DQReportModel();
-						
-						for (Integer encId : selectedEncounter) {
-							// here i will add the encounter_Datetime
-							
-							encounters.add(Context.getEncounterService().getEncounter(encId));
-							patients.add(Context.getEncounterService().getEncounter(encId).getPatient());
-							
-						}
-						
-						// Sorting Encounters:
-						
-						Collections.sort(encounters, COMPARATOR);
-						
-						dQRObjectenc.setEncounters(encounters);
-						dQRObjectenc.setPatients(patients);
-						dQRObjectenc.setSelectedEncounter(savedColumnKey);
-						dQRListenc.add(dQRObjectenc);
-					}
+		for (String savedColumnKey : savedColumnKeys) {
+			Set<Integer> selectedEncounter = new TreeSet<Integer>();
+			for (DataSetRow row : ((SimpleDataSet) dataSet).getRows()) {
+				Object result = row.getColumnValue(savedColumnKey);
+				if (result instanceof EncounterIndicatorResult) {
+					selectedEncounter = new TreeSet<Integer>(((EncounterIndicatorResult) result).getMemberIds());
 				}
 			}
-			model.addAttribute("dQRListenc", dQRListenc);
 			
+			List<Encounter> encounters = new ArrayList<Encounter>();
+			List<Patient> patients = new ArrayList<Patient>();
+			DQReportModel dQRObjectenc = new DQReportModel();
+			
+			// the newest encounters come first, so the pages are taken in that order
+			for (Integer encId : getPage(getNewestFirst(selectedEncounter), page, pageSize)) {
+				Encounter encounter = Context.getEncounterService().getEncounter(encId);
+				encounters.add(encounter);
+				patients.add(encounter.getPatient());
+			}
+			
+			dQRObjectenc.setEncounters(encounters);
+			dQRObjectenc.setPatients(patients);
+			dQRObjectenc.setSelectedEncounter(savedColumnKey);
+			dQRObjectenc.setTotal(selectedEncounter.size());
+			dQRListenc.add(dQRObjectenc);
 		}
-		catch (ClassCastException ex) {
-			// pass
+		return dQRListenc;
+	}
+	
+	/**
+	 * @return the patient data set definition shown for every column, with the treatment groups of the
+	 *         HIV and TB programs
+	 */
+	private DataSetDefinition createPatientDataSetDefinition() {
+		SimplePatientDataSetDefinition d = new SimplePatientDataSetDefinition();
+		d.addPatientProperty("patientId");
+		List<PatientIdentifierType> types = ReportingConstants.GLOBAL_PROPERTY_PREFERRED_IDENTIFIER_TYPES();
+		if (!types.isEmpty()) {
+			d.setIdentifierTypes(types);
 		}
-		if (data == null)
-			return "redirect:../reporting/dashboard/index.form";
 		
-		@SuppressWarnings("unused")
-		SimpleDataSet dataSet = (SimpleDataSet) data.getDataSets().get(renderArg);
-		// model.addAttribute("columns", dataSet.getMetaData());
-		return null;
+		List<ProgramWorkflow> programWorkFlows = new ArrayList<ProgramWorkflow>();
+		
+		ProgramWorkflow hivpediWorkflow = Context.getProgramWorkflowService().getProgram(10)
+		        .getWorkflowByName("TREATMENT GROUP");
+		ProgramWorkflow hivWorkflow = Context.getProgramWorkflowService().getProgram(3).getWorkflowByName("TREATMENT GROUP");
+		ProgramWorkflow tbWorkflow = Context.getProgramWorkflowService().getProgram(4)
+		        .getWorkflowByName("TUBERCULOSIS TREATMENT GROUP");
+		
+		programWorkFlows.add(hivpediWorkflow);
+		programWorkFlows.add(hivWorkflow);
+		programWorkFlows.add(tbWorkflow);
+		
+		d.setProgramWorkflows(programWorkFlows);
+		
+		d.addPatientProperty("givenName");
+		d.addPatientProperty("familyName");
+		d.addPatientProperty("age");
+		d.addPatientProperty("gender");
+		return d;
+	}
+	
+	/**
+	 * @return the ids of the page, pages start at 1
+	 */
+	private List<Integer> getPage(List<Integer> ids, int page, int pageSize) {
+		int from = Math.min((page - 1) * pageSize, ids.size());
+		return ids.subList(from, Math.min(from + pageSize, ids.size()));
+	}
+	
+	/**
+	 * @return the ids of the encounters ordered by encounter datetime, the newest first
+	 */
+	private List<Integer> getNewestFirst(Set<Integer> encounterIds) {
+		if (encounterIds.isEmpty()) {
+			return new ArrayList<Integer>();
+		}
+		SqlQueryBuilder sb = new SqlQueryBuilder();
+		sb.append("select e.encounter_id from encounter e where e.encounter_id in (:encounterIds) ");
+		sb.append("order by e.encounter_datetime desc, e.encounter_id desc");
+		sb.addParameter("encounterIds", encounterIds);
+		return Context.getService(EvaluationService.class).evaluateToList(sb, Integer.class, new EvaluationContext());
 	}
 	
 	private void getSavedKeys(List<String> savedColumnKeys) {
@@ -434,13 +329,4 @@ public class RenderDataQualityReportController {
 		savedColumnKeys.add("9");
 	}
 	
-	private static Comparator<Encounter> COMPARATOR = new Comparator<Encounter>() {
-		
-		public int compare(Encounter enc1, Encounter enc2) {
-			
-			return enc2.getEncounterDatetime().compareTo(enc1.getEncounterDatetime());
-		}
-		
-	};
-	
 }
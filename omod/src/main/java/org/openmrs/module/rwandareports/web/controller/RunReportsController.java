@@ -1,6 +1,8 @@
 package org.openmrs.module.rwandareports.web.controller;
 
 import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -11,6 +13,9 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
@@ -21,11 +26,16 @@ import org.openmrs.module.reporting.report.Report;
 import org.openmrs.module.reporting.report.ReportData;
 import org.openmrs.module.reporting.report.ReportRequest;
 import org.openmrs.module.reporting.report.ReportRequest.Priority;
+import org.openmrs.module.reporting.report.ReportRequest.Status;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.reporting.report.renderer.RenderingException;
 import org.openmrs.module.reporting.report.renderer.RenderingMode;
 import org.openmrs.module.reporting.report.service.ReportService;
 import org.openmrs.module.rwandareports.reporting.Helper;
+import org.openmrs.module.rwandareports.reporting.SetupHMISIndicatorMonthlyReport;
 import org.openmrs.module.rwandareports.util.GlobalPropertiesManagement;
+import org.openmrs.module.rwandareports.util.ReportRunCache;
+import org.openmrs.module.rwandareports.widget.AllLocation;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.ui.ModelMap;
@@ -36,19 +46,27 @@ import org.springframework.web.servlet.ModelAndView;
 @Controller
 public class RunReportsController {
 	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	private static final String QUEUED = "QUEUED";
+	
+	private static final String RUNNING = "RUNNING";
+	
+	private static final String COMPLETED = "COMPLETED";
+	
+	private static final String FAILED = "FAILED";
+	
 	GlobalPropertiesManagement gp = new GlobalPropertiesManagement();
 	
+	/**
+	 * Prints the report, or with async=true queues it and returns the id of its job as JSON
+	 */
 	@RequestMapping("/module/rwandaReports/printReport.form")
 	public void viewIndex(ModelMap model, @RequestParam(value = "report", required = true) String report,
-	        @RequestParam(value = "parameters", required = true) String parameters, HttpSession session,
+	        @RequestParam(value = "parameters", required = true) String parameters,
+	        @RequestParam(value = "async", required = false) boolean async, HttpSession session,
 	        HttpServletRequest request, HttpServletResponse response) throws IOException {
 		
-		ReportService rs = Context.getService(ReportService.class);
-		
-		ReportRequest rr = new ReportRequest();
-		
-		ReportDefinition reportDef = Helper.findReportDefinition(report);
-		
 		String[] paramNames = parameters.split(",");
 		
 		Map<String, Object> params = new LinkedHashMap<String, Object>();
@@ -56,41 +74,18 @@ public class RunReportsController {
 			params.put(param, request.getParameter(param));
 		}
 		
-		rr.setReportDefinition(new Mapped<ReportDefinition>(reportDef, params));
-		
-		List<RenderingMode> modes = rs.getRenderingModes(reportDef);
-		RenderingMode rm = modes.get(0);
-		
-		rr.setRenderingMode(rm);
-		rr.setPriority(Priority.HIGHEST);
-		
-		Report rep = rs.runReport(rr);
-		
-		String filename = rm.getRenderer().getFilename(rep.getRequest()).replace(" ", "_");
-		response.setContentType(rm.getRenderer().getRenderedContentType(rep.getRequest()));
-		byte[] data = rep.getRenderedOutput();
-		
-		if (data != null) {
-			response.setHeader("Content-Disposition", "attachment; filename=" + filename);
-			response.setHeader("Pragma", "no-cache");
-			IOUtils.write(data, response.getOutputStream());
-		} else {
-			response.getWriter().write("There was an error retrieving the report");
-		}
-		
+		printReport(createReportRequest(report, params), async, response);
 	}
 	
+	/**
+	 * Prints the report, or with async=true queues it and returns the id of its job as JSON
+	 */
 	@RequestMapping("/module/rwandaReports/printReportAndRegister.form")
 	public void printReportAndRegister(ModelMap model, @RequestParam(value = "report", required = true) String report,
-	        @RequestParam(value = "parameters", required = true) String parameters, HttpSession session,
+	        @RequestParam(value = "parameters", required = true) String parameters,
+	        @RequestParam(value = "async", required = false) boolean async, HttpSession session,
 	        HttpServletRequest request, HttpServletResponse response) throws IOException {
 		
-		ReportService rs = Context.getService(ReportService.class);
-		
-		ReportRequest rr = new ReportRequest();
-		
-		ReportDefinition reportDef = Helper.findReportDefinition(report);
-		
 		String[] paramNames = parameters.split(",");
 		
 		Map<String, Object> params = new LinkedHashMap<String, Object>();
@@ -111,6 +106,129 @@ public class RunReportsController {
 			}
 		}
 		
+		printReport(createReportRequest(report, params), async, response);
+	}
+	
+	/**
+	 * Returns the status of a report job as JSON
+	 */
+	@RequestMapping("/module/rwandaReports/reportJobStatus.form")
+	public void reportJobStatus(@RequestParam(value = "jobId", required = true) String jobId,
+	        HttpServletResponse response) throws IOException {
+		ReportRequest job = getJob(jobId);
+		if (job == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		writeJob(job, response);
+	}
+	
+	/**
+	 * Runs the parts II to IX of the monthly HMIS report for one period and location as one
+	 * {@link ReportRunCache} batch, so the definitions they have in common are evaluated by the first
+	 * part only. Returns the job of every part as JSON, their output is written by reportJobOutput.form.
+	 * The location is the name of a location, or with hierarchy the value of that location hierarchy
+	 * field, such as a district.
+	 */
+	@RequestMapping("/module/rwandaReports/runHMISMonthlyReports.form")
+	public void runHMISMonthlyReports(@RequestParam(value = "startDate", required = true) String startDate,
+	        @RequestParam(value = "endDate", required = true) String endDate,
+	        @RequestParam(value = "location", required = true) String location,
+	        @RequestParam(value = "hierarchy", required = false) String hierarchy, HttpServletResponse response)
+	        throws IOException {
+		
+		Map<String, Object> params = new LinkedHashMap<String, Object>();
+		try {
+			params.put("startDate", Context.getDateFormat().parse(startDate));
+			params.put("endDate", Context.getDateFormat().parse(endDate));
+		}
+		catch (ParseException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The dates must be formatted as "
+			        + Context.getDateFormat().toPattern());
+			return;
+		}
+		AllLocation allLocation = AllLocation.valueOf(location);
+		if (hierarchy != null) {
+			allLocation.setHierarchy(hierarchy);
+		}
+		params.put("location", allLocation);
+		
+		List<Map<String, Object>> jobs = new ArrayList<Map<String, Object>>();
+		ReportRunCache.startBatch();
+		try {
+			for (String report : SetupHMISIndicatorMonthlyReport.MONTHLY_REPORT_NAMES) {
+				ReportRequest rr = createReportRequest(report, params);
+				rr.setRequestedBy(Context.getAuthenticatedUser());
+				rr.setStatus(Status.PROCESSING);
+				rr = Context.getService(ReportService.class).saveReportRequest(rr);
+				try {
+					Context.getService(ReportService.class).runReport(rr);
+				}
+				catch (Exception e) {
+					log.error("Unable to run " + report, e);
+				}
+				jobs.add(getJobHandle(rr));
+			}
+		}
+		finally {
+			ReportRunCache.endBatch();
+		}
+		response.setContentType("application/json");
+		new ObjectMapper().writeValue(response.getOutputStream(), jobs);
+	}
+	
+	/**
+	 * Writes the output of a completed report job. It is rendered from the report data persisted by the
+	 * reporting module straight into the response, so the output is never held in memory. A job that is
+	 * not completed yet answers 202 with its status and a failed one 500 with its error, no output is
+	 * written for them.
+	 */
+	@RequestMapping("/module/rwandaReports/reportJobOutput.form")
+	public void reportJobOutput(@RequestParam(value = "jobId", required = true) String jobId,
+	        HttpServletResponse response) throws IOException {
+		ReportRequest job = getJob(jobId);
+		if (job == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		String status = getJobStatus(job);
+		if (!COMPLETED.equals(status)) {
+			response.setStatus(FAILED.equals(status) ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR
+			        : HttpServletResponse.SC_ACCEPTED);
+			writeJob(job, response);
+			return;
+		}
+		
+		ReportData data = Context.getService(ReportService.class).loadReportData(job);
+		if (data == null) {
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "The output of the report is not available");
+			return;
+		}
+		RenderingMode rm = job.getRenderingMode();
+		response.setContentType(rm.getRenderer().getRenderedContentType(job));
+		response.setHeader("Content-Disposition", "attachment; filename="
+		        + rm.getRenderer().getFilename(job).replace(" ", "_"));
+		response.setHeader("Pragma", "no-cache");
+		try {
+			rm.getRenderer().render(data, rm.getArgument(), response.getOutputStream());
+		}
+		catch (RenderingException e) {
+			log.error("Unable to render the output of " + job.getUuid(), e);
+			if (!response.isCommitted()) {
+				response.reset();
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+				    "The output of the report is not available");
+			}
+		}
+	}
+	
+	private ReportRequest createReportRequest(String report, Map<String, Object> params) {
+		ReportService rs = Context.getService(ReportService.class);
+		
+		ReportRequest rr = new ReportRequest();
+		
+		ReportDefinition reportDef = Helper.findReportDefinition(report);
+		
 		rr.setReportDefinition(new Mapped<ReportDefinition>(reportDef, params));
 		
 		List<RenderingMode> modes = rs.getRenderingModes(reportDef);
@@ -118,8 +236,19 @@ public class RunReportsController {
 		
 		rr.setRenderingMode(rm);
 		rr.setPriority(Priority.HIGHEST);
+		return rr;
+	}
+	
+	private void printReport(ReportRequest rr, boolean async, HttpServletResponse response) throws IOException {
+		if (async) {
+			// queued requests are run by the reporting module and kept in its report history
+			rr.setRequestedBy(Context.getAuthenticatedUser());
+			writeJob(Context.getService(ReportService.class).queueReport(rr), response);
+			return;
+		}
 		
-		Report rep = rs.runReport(rr);
+		RenderingMode rm = rr.getRenderingMode();
+		Report rep = Context.getService(ReportService.class).runReport(rr);
 		
 		String filename = rm.getRenderer().getFilename(rep.getRequest()).replace(" ", "_");
 		response.setContentType(rm.getRenderer().getRenderedContentType(rep.getRequest()));
@@ -132,7 +261,46 @@ public class RunReportsController {
 		} else {
 			response.getWriter().write("There was an error retrieving the report");
 		}
-		
+	}
+	
+	/**
+	 * @return the report request of the authenticated user with the uuid, or null
+	 */
+	private ReportRequest getJob(String jobId) {
+		ReportRequest job = Context.getService(ReportService.class).getReportRequestByUuid(jobId);
+		if (job == null || job.getRequestedBy() == null || !job.getRequestedBy().equals(Context.getAuthenticatedUser())) {
+			return null;
+		}
+		return job;
+	}
+	
+	/**
+	 * @return QUEUED, RUNNING, COMPLETED or FAILED
+	 */
+	private String getJobStatus(ReportRequest job) {
+		Status status = job.getStatus();
+		if (status == Status.PROCESSING) {
+			return RUNNING;
+		} else if (status == Status.COMPLETED || status == Status.SAVED) {
+			return COMPLETED;
+		} else if (status == Status.FAILED) {
+			return FAILED;
+		}
+		return QUEUED;
+	}
+	
+	private void writeJob(ReportRequest job, HttpServletResponse response) throws IOException {
+		response.setContentType("application/json");
+		new ObjectMapper().writeValue(response.getOutputStream(), getJobHandle(job));
+	}
+	
+	private Map<String, Object> getJobHandle(ReportRequest job) {
+		String status = getJobStatus(job);
+		Map<String, Object> handle = new LinkedHashMap<String, Object>();
+		handle.put("jobId", job.getUuid());
+		handle.put("status", status);
+		handle.put("error", FAILED.equals(status) ? Context.getService(ReportService.class).loadReportError(job) : null);
+		return handle;
 	}
 	
 	@RequestMapping("/module/rwandareports/renderCalendarWebRenderer")
@@ -24,6 +24,7 @@ public class ManageAdminListExt extends AdministrationSectionExt {
 		// Using linked hash map to keep order of links
 		Map<String, String> map = new LinkedHashMap<String, String>();
 		map.put("module/rwandareports/rwandareports.form", "rwandareports.rwandareports.title");
+		map.put("module/rwandareports/mambaEtlRunHistory.form", "rwandareports.mambaEtlRunHistory.title");
 		return map;
 	}
 	
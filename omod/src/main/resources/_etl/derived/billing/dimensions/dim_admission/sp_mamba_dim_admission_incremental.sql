@@ -0,0 +1,13 @@
+-- $BEGIN
+CALL sp_mamba_dim_admission_insert();
+
+-- admissions not yet discharged in the dimension
+UPDATE mamba_dim_admission adm
+    INNER JOIN moh_bill_admission src ON src.admission_id = adm.admission_id
+SET adm.is_admitted      = src.is_admitted,
+    adm.discharging_date = src.discharging_date,
+    adm.discharged_by    = src.discharged_by
+WHERE adm.discharging_date IS NULL;
+
+CALL sp_mamba_dim_admission_update();
+-- $END
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_admission_id INT;
+SELECT COALESCE(MAX(admission_id), 0) INTO last_admission_id FROM mamba_dim_admission;
+
 INSERT INTO mamba_dim_admission (admission_id,
                                  insurance_policy_id,
                                  is_admitted,
@@ -18,6 +22,7 @@ SELECT admission_id,
        disease_type,
        admission_type,
        created_date
-FROM moh_bill_admission;
+FROM moh_bill_admission
+WHERE admission_id > last_admission_id;
 
 -- $END
\ No newline at end of file
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_beneficiary_id INT;
+SELECT COALESCE(MAX(beneficiary_id), 0) INTO last_beneficiary_id FROM mamba_dim_beneficiary;
+
 INSERT INTO mamba_dim_beneficiary (beneficiary_id,
                                    patient_id,
                                    insurance_policy_id,
@@ -20,6 +24,7 @@ SELECT beneficiary_id,
        owner_code,
        level,
        company
-FROM moh_bill_beneficiary;
+FROM moh_bill_beneficiary
+WHERE beneficiary_id > last_beneficiary_id;
 
 -- $END
\ No newline at end of file
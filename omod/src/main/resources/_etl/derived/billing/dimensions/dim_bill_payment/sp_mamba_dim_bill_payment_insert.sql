@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_bill_payment_id INT;
+SELECT COALESCE(MAX(bill_payment_id), 0) INTO last_bill_payment_id FROM mamba_dim_bill_payment;
+
 INSERT INTO mamba_dim_bill_payment (bill_payment_id,
                                     patient_bill_id,
                                     amount_paid,
@@ -12,6 +16,7 @@ SELECT bill_payment_id,
        date_received,
        collector,
        created_date
-FROM moh_bill_payment;
+FROM moh_bill_payment
+WHERE bill_payment_id > last_bill_payment_id;
 
 -- $END
\ No newline at end of file
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_billable_service_id INT;
+SELECT COALESCE(MAX(billable_service_id), 0) INTO last_billable_service_id FROM mamba_dim_billable_service;
+
 INSERT INTO mamba_dim_billable_service (billable_service_id,
                                         insurance_id,
                                         facility_service_price_id,
@@ -16,6 +20,7 @@ SELECT billable_service_id,
        start_date,
        end_date,
        created_date
-FROM moh_bill_billable_service;
+FROM moh_bill_billable_service
+WHERE billable_service_id > last_billable_service_id;
 
 -- $END
\ No newline at end of file
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_consommation_id INT;
+SELECT COALESCE(MAX(consommation_id), 0) INTO last_consommation_id FROM mamba_dim_consommation;
+
 INSERT INTO mamba_dim_consommation (consommation_id,
                                     global_bill_id,
                                     department_id,
@@ -16,6 +20,7 @@ SELECT consommation_id,
        insurance_bill_id,
        third_party_bill_id,
        created_date
-FROM moh_bill_consommation;
+FROM moh_bill_consommation
+WHERE consommation_id > last_consommation_id;
 
 -- $END
\ No newline at end of file
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_department_id INT;
+SELECT COALESCE(MAX(department_id), 0) INTO last_department_id FROM mamba_dim_department;
+
 INSERT INTO mamba_dim_department (department_id,
                                   name,
                                   description,
@@ -8,6 +12,7 @@ SELECT department_id,
        name,
        description,
        created_date
-FROM moh_bill_department;
+FROM moh_bill_department
+WHERE department_id > last_department_id;
 
 -- $END
\ No newline at end of file
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_facility_service_price_id INT;
+SELECT COALESCE(MAX(facility_service_price_id), 0) INTO last_facility_service_price_id FROM mamba_dim_facility_service_price;
+
 INSERT INTO mamba_dim_facility_service_price (facility_service_price_id,
                                               location_id,
                                               concept_id,
@@ -26,6 +30,7 @@ SELECT facility_service_price_id,
        item_type,
        hide_item,
        created_date
-FROM moh_bill_facility_service_price;
+FROM moh_bill_facility_service_price
+WHERE facility_service_price_id > last_facility_service_price_id;
 
 -- $END
\ No newline at end of file
@@ -0,0 +1,17 @@
+-- $BEGIN
+CALL sp_mamba_dim_global_bill_insert();
+
+-- bills still open in the dimension may have been edited or closed since the last run
+UPDATE mamba_dim_global_bill gb
+    INNER JOIN moh_bill_global_bill src ON src.global_bill_id = gb.global_bill_id
+SET gb.global_amount = src.global_amount,
+    gb.closing_date  = src.closing_date,
+    gb.closed        = src.closed,
+    gb.closed_by_id  = src.closed_by,
+    gb.closed_reason = src.closed_reason,
+    gb.edited_by     = src.edited_by,
+    gb.edit_reason   = src.edit_reason
+WHERE gb.closed = 0;
+
+CALL sp_mamba_dim_global_bill_update();
+-- $END
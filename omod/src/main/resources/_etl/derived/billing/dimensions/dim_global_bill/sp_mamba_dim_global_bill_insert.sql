@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_global_bill_id INT;
+SELECT COALESCE(MAX(global_bill_id), 0) INTO last_global_bill_id FROM mamba_dim_global_bill;
+
 INSERT INTO mamba_dim_global_bill (global_bill_id,
                                    admission_id,
                                    insurance_id,
@@ -24,7 +28,8 @@ SELECT global_bill_id,
        edited_by,
        edit_reason,
        created_date
-FROM moh_bill_global_bill;
+FROM moh_bill_global_bill
+WHERE global_bill_id > last_global_bill_id;
 
 -- $END
 
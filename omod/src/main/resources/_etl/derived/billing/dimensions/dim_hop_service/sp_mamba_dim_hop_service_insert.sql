@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_service_id INT;
+SELECT COALESCE(MAX(service_id), 0) INTO last_service_id FROM mamba_dim_hop_service;
+
 INSERT INTO mamba_dim_hop_service (service_id,
                                    name,
                                    description,
@@ -8,6 +12,7 @@ SELECT service_id,
        name,
        description,
        created_date
-FROM moh_bill_hop_service;
+FROM moh_bill_hop_service
+WHERE service_id > last_service_id;
 
 -- $END
\ No newline at end of file
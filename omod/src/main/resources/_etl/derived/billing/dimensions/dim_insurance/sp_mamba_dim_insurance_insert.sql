@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_insurance_id INT;
+SELECT COALESCE(MAX(insurance_id), 0) INTO last_insurance_id FROM mamba_dim_insurance;
+
 INSERT INTO mamba_dim_insurance (insurance_id,
                                  concept_id,
                                  category,
@@ -14,6 +18,7 @@ SELECT insurance_id,
        address,
        phone,
        created_date
-FROM moh_bill_insurance;
+FROM moh_bill_insurance
+WHERE insurance_id > last_insurance_id;
 
 -- $END
\ No newline at end of file
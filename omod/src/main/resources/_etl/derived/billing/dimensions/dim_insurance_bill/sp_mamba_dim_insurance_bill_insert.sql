@@ -1,11 +1,16 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_insurance_bill_id INT;
+SELECT COALESCE(MAX(insurance_bill_id), 0) INTO last_insurance_bill_id FROM mamba_dim_insurance_bill;
+
 INSERT INTO mamba_dim_insurance_bill (insurance_bill_id,
                                       amount,
                                       created_date)
 SELECT insurance_bill_id,
        amount,
        created_date
-FROM moh_bill_insurance_bill;
+FROM moh_bill_insurance_bill
+WHERE insurance_bill_id > last_insurance_bill_id;
 
 -- $END
\ No newline at end of file
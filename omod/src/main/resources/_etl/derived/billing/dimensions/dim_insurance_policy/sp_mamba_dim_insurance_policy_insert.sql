@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_insurance_policy_id INT;
+SELECT COALESCE(MAX(insurance_policy_id), 0) INTO last_insurance_policy_id FROM mamba_dim_insurance_policy;
+
 INSERT INTO mamba_dim_insurance_policy (insurance_policy_id,
                                         insurance_id,
                                         third_party_id,
@@ -16,6 +20,7 @@ SELECT insurance_policy_id,
        coverage_start_date,
        expiration_date,
        created_date
-FROM moh_bill_insurance_policy;
+FROM moh_bill_insurance_policy
+WHERE insurance_policy_id > last_insurance_policy_id;
 
 -- $END
\ No newline at end of file
@@ -0,0 +1,14 @@
+-- $BEGIN
+CALL sp_mamba_dim_insurance_rate_insert();
+
+-- rates get retired in place, the table is small enough to refresh entirely
+UPDATE mamba_dim_insurance_rate ir
+    INNER JOIN moh_bill_insurance_rate src ON src.insurance_rate_id = ir.insurance_rate_id
+SET ir.rate        = src.rate,
+    ir.flatFee     = src.flatFee,
+    ir.end_date    = src.end_date,
+    ir.retired     = src.retired,
+    ir.retire_date = src.retire_date;
+
+CALL sp_mamba_dim_insurance_rate_update();
+-- $END
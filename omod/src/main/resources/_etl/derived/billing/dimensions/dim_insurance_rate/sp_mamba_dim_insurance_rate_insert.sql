@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_insurance_rate_id INT;
+SELECT COALESCE(MAX(insurance_rate_id), 0) INTO last_insurance_rate_id FROM mamba_dim_insurance_rate;
+
 INSERT INTO mamba_dim_insurance_rate (insurance_rate_id,
                                       insurance_id,
                                       rate,
@@ -18,6 +22,7 @@ SELECT insurance_rate_id,
        created_date,
        retired,
        retire_date
-FROM moh_bill_insurance_rate;
+FROM moh_bill_insurance_rate
+WHERE insurance_rate_id > last_insurance_rate_id;
 
 -- $END
\ No newline at end of file
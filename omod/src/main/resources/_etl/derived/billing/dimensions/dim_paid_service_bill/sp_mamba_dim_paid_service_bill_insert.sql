@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_paid_service_bill_id INT;
+SELECT COALESCE(MAX(paid_service_bill_id), 0) INTO last_paid_service_bill_id FROM mamba_dim_paid_service_bill;
+
 INSERT INTO mamba_dim_paid_service_bill (paid_service_bill_id,
                                          bill_payment_id,
                                          patient_service_bill_id,
@@ -12,6 +16,7 @@ SELECT paid_service_bill_id,
        paid_quantity,
        voided,
        created_date
-FROM moh_bill_paid_service_bill;
+FROM moh_bill_paid_service_bill
+WHERE paid_service_bill_id > last_paid_service_bill_id;
 
 -- $END
\ No newline at end of file
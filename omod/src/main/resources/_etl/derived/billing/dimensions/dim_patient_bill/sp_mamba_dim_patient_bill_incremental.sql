@@ -0,0 +1,14 @@
+-- $BEGIN
+CALL sp_mamba_dim_patient_bill_insert();
+
+-- patient bills not yet paid in the dimension
+UPDATE mamba_dim_patient_bill pb
+    INNER JOIN moh_bill_patient_bill src ON src.patient_bill_id = pb.patient_bill_id
+SET pb.amount  = src.amount,
+    pb.is_paid = src.is_paid,
+    pb.status  = src.status
+WHERE pb.is_paid IS NULL
+   OR pb.is_paid = 0;
+
+CALL sp_mamba_dim_patient_bill_update();
+-- $END
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_patient_bill_id INT;
+SELECT COALESCE(MAX(patient_bill_id), 0) INTO last_patient_bill_id FROM mamba_dim_patient_bill;
+
 INSERT INTO mamba_dim_patient_bill (patient_bill_id,
                                     amount,
                                     is_paid,
@@ -8,6 +12,7 @@ SELECT patient_bill_id,
        amount,
        is_paid,
        status
-FROM moh_bill_patient_bill;
+FROM moh_bill_patient_bill
+WHERE patient_bill_id > last_patient_bill_id;
 
 -- $END
\ No newline at end of file
@@ -0,0 +1,18 @@
+-- $BEGIN
+CALL sp_mamba_dim_patient_service_bill_insert();
+
+-- service lines of bills that are still open in mamba_dim_global_bill can still be edited or voided,
+-- so this has to run before sp_mamba_dim_global_bill_incremental closes them
+UPDATE mamba_dim_patient_service_bill psb
+    INNER JOIN mamba_dim_consommation cons ON cons.consommation_id = psb.consommation_id
+    INNER JOIN mamba_dim_global_bill gb ON gb.global_bill_id = cons.global_bill_id
+    INNER JOIN moh_bill_patient_service_bill src ON src.patient_service_bill_id = psb.patient_service_bill_id
+SET psb.unit_price    = src.unit_price,
+    psb.quantity      = src.quantity,
+    psb.paid_quantity = src.paid_quantity,
+    psb.is_paid       = src.is_paid,
+    psb.voided        = src.voided
+WHERE gb.closed = 0;
+
+CALL sp_mamba_dim_patient_service_bill_update();
+-- $END
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_patient_service_bill_id INT;
+SELECT COALESCE(MAX(patient_service_bill_id), 0) INTO last_patient_service_bill_id FROM mamba_dim_patient_service_bill;
+
 INSERT INTO mamba_dim_patient_service_bill (patient_service_bill_id,
                                             consommation_id,
                                             billable_service_id,
@@ -31,6 +35,7 @@ SELECT patient_service_bill_id,
        item_type,
        voided,
        created_date
-FROM moh_bill_patient_service_bill;
+FROM moh_bill_patient_service_bill
+WHERE patient_service_bill_id > last_patient_service_bill_id;
 
 -- $END
\ No newline at end of file
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_service_category_id INT;
+SELECT COALESCE(MAX(service_category_id), 0) INTO last_service_category_id FROM mamba_dim_service_category;
+
 INSERT INTO mamba_dim_service_category (service_category_id,
                                         insurance_id,
                                         department_id,
@@ -16,6 +20,7 @@ SELECT service_category_id,
        description,
        price,
        created_date
-FROM moh_bill_service_category;
+FROM moh_bill_service_category
+WHERE service_category_id > last_service_category_id;
 
 -- $END
\ No newline at end of file
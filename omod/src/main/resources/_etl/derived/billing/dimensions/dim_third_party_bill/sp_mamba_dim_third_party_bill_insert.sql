@@ -1,11 +1,16 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_third_party_bill_id INT;
+SELECT COALESCE(MAX(third_party_bill_id), 0) INTO last_third_party_bill_id FROM mamba_dim_third_party_bill;
+
 INSERT INTO mamba_dim_third_party_bill (third_party_bill_id,
                                         amount,
                                         created_date)
 SELECT third_party_bill_id,
        amount,
        created_date
-FROM moh_bill_third_party_bill;
+FROM moh_bill_third_party_bill
+WHERE third_party_bill_id > last_third_party_bill_id;
 
 -- $END
\ No newline at end of file
@@ -1,5 +1,9 @@
 -- $BEGIN
 
+-- only rows above the high-water mark (empty on a full rebuild, so everything is copied)
+DECLARE last_third_party_id INT;
+SELECT COALESCE(MAX(third_party_id), 0) INTO last_third_party_id FROM mamba_dim_third_party;
+
 INSERT INTO mamba_dim_third_party (third_party_id,
                                    name,
                                    rate,
@@ -8,6 +12,7 @@ SELECT third_party_id,
        name,
        rate,
        created_date
-FROM moh_bill_third_party;
+FROM moh_bill_third_party
+WHERE third_party_id > last_third_party_id;
 
 -- $END
\ No newline at end of file
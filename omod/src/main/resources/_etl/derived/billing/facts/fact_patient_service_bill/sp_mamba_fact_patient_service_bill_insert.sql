@@ -1,43 +1,17 @@
 -- $BEGIN
 
-INSERT INTO mamba_fact_patient_service_bill(admission_date, closing_date, beneficiary_name, household_head_name,
-                                            family_code, beneficiary_level, card_number, company_name, age, birth_date,
-                                            gender, doctor_name, service_bill_quantity, service_bill_unit_price,
-                                            insurance_id, hop_service_id, global_bill_id, hop_service_name)
+-- bills closed on or after the last closing date already loaded are (re)loaded, so that an
+-- incremental run picks up the newly closed bills and repeating a run does not duplicate rows.
+-- On a full rebuild the table is empty and every closed bill is loaded.
+DECLARE last_closing_date DATE;
+DECLARE last_global_bill_id INT;
+SELECT MAX(closing_date) INTO last_closing_date FROM mamba_fact_patient_service_bill;
+SELECT COALESCE(MAX(global_bill_id), 0) INTO last_global_bill_id FROM mamba_dim_global_bill;
 
-SELECT -- DATE_FORMAT(gb.created_date, '%d/%m/%Y') AS admission_date,
-       DATE(gb.created_date) AS admission_date,
-       DATE(gb.closing_date) AS closing_date,
-       bps.person_name_long  AS beneficiary_name,
-       ben.owner_name        AS household_head_name,
-       ben.owner_code        AS family_code,
-       ben.level             AS beneficiary_level,
-       isp.insurance_card_no AS card_number,
-       ben.company           AS company_name,
-       bps.age               AS age,
-       DATE(bps.birthdate)   AS birth_date,
-       bps.gender            AS gender,
-       gb.closed_by_name     AS doctor_name,
-       psb.quantity          AS service_bill_quantity,
-       psb.unit_price        AS service_bill_unit_price,
-       ins.insurance_id      AS insurance_id,
-       psb.service_id        AS hop_service_id,
-       gb.global_bill_id     AS global_bill_id,
-       hp.name               AS hop_service_name
+DELETE
+FROM mamba_fact_patient_service_bill
+WHERE closing_date >= last_closing_date;
 
-FROM mamba_dim_patient_service_bill psb
-         INNER JOIN mamba_dim_consommation cons ON psb.consommation_id = cons.consommation_id
-         INNER JOIN mamba_dim_global_bill gb on cons.global_bill_id = gb.global_bill_id
-         INNER JOIN mamba_dim_beneficiary ben on cons.beneficiary_id = ben.beneficiary_id
-         INNER JOIN mamba_dim_insurance_policy isp on ben.insurance_policy_id = isp.insurance_policy_id
-         INNER JOIN mamba_dim_insurance ins ON ins.insurance_id = isp.insurance_id
-         INNER JOIN mamba_dim_person bps ON bps.person_id = ben.patient_id
-         INNER JOIN mamba_dim_hop_service hp on hp.service_id = psb.service_id
+CALL sp_mamba_fact_patient_service_bill_insert_range(0, last_global_bill_id, last_closing_date);
 
-WHERE gb.closed = 1
-  AND psb.voided = 0
--- GROUP BY cons.global_bill_id
--- HAVING MIN(cons.consommation_id)
-ORDER BY gb.closing_date ASC
-;
 -- $END
\ No newline at end of file
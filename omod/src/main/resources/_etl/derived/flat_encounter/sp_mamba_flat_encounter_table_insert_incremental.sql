@@ -0,0 +1,70 @@
+DELIMITER //
+
+DROP PROCEDURE IF EXISTS sp_mamba_flat_encounter_table_insert_incremental;
+
+-- Pivots the encounters listed in mamba_z_encounter_obs_changed into the flat table again: their rows are
+-- deleted and inserted, keyed on encounter_id, with the same columns sp_mamba_flat_encounter_table_insert
+-- computes for the whole table.
+CREATE PROCEDURE sp_mamba_flat_encounter_table_insert_incremental(
+    IN flat_encounter_table_name CHAR(255) CHARACTER SET UTF8MB4
+)
+BEGIN
+
+    SET session group_concat_max_len = 20000;
+    SET @tbl_name = flat_encounter_table_name;
+    SET @column_labels := NULL;
+
+    -- the flat tables are created without any index, the first incremental run adds one on encounter_id
+    IF (SELECT COUNT(*)
+        FROM INFORMATION_SCHEMA.STATISTICS
+        WHERE TABLE_SCHEMA = DATABASE()
+          AND TABLE_NAME = @tbl_name
+          AND COLUMN_NAME = 'encounter_id'
+          AND SEQ_IN_INDEX = 1) = 0 THEN
+
+        SET @index_stmt = CONCAT('CREATE INDEX `', @tbl_name, '_encounter_id_index` ON `', @tbl_name,
+                                 '` (encounter_id)');
+        PREPARE indextbl FROM @index_stmt;
+        EXECUTE indextbl;
+        DEALLOCATE PREPARE indextbl;
+    END IF;
+
+    SET @delete_stmt = CONCAT('DELETE f FROM `', @tbl_name, '` f
+            INNER JOIN mamba_z_encounter_obs_changed c ON c.encounter_id = f.encounter_id');
+
+    PREPARE deletetbl FROM @delete_stmt;
+    EXECUTE deletetbl;
+    DEALLOCATE PREPARE deletetbl;
+
+    SELECT
+        GROUP_CONCAT(DISTINCT
+            CONCAT(' MAX(CASE WHEN column_label = ''', column_label, ''' THEN ',
+                fn_mamba_get_obs_value_column(concept_datatype), ' END) ', column_label)
+            ORDER BY id ASC)
+    INTO @column_labels
+    FROM mamba_dim_concept_metadata
+    WHERE flat_table_name = @tbl_name;
+
+    IF @column_labels IS NOT NULL THEN
+
+        SET @insert_stmt = CONCAT(
+                'INSERT INTO `', @tbl_name, '` SELECT eo.encounter_id, eo.person_id, eo.encounter_datetime, ',
+                @column_labels, '
+                FROM mamba_z_encounter_obs eo
+                    INNER JOIN mamba_z_encounter_obs_changed c
+                    ON c.encounter_id = eo.encounter_id
+                    INNER JOIN mamba_dim_concept_metadata cm
+                    ON IF(cm.concept_answer_obs=1, cm.concept_uuid=eo.obs_value_coded_uuid, cm.concept_uuid=eo.obs_question_uuid)
+                WHERE cm.flat_table_name = ''', @tbl_name, '''
+                AND eo.encounter_type_uuid = cm.encounter_type_uuid
+                GROUP BY eo.encounter_id, eo.person_id, eo.encounter_datetime;');
+
+        PREPARE inserttbl FROM @insert_stmt;
+        EXECUTE inserttbl;
+        DEALLOCATE PREPARE inserttbl;
+
+    END IF;
+
+END //
+
+DELIMITER ;
@@ -0,0 +1,29 @@
+-- $BEGIN
+
+DECLARE tbl_name CHAR(50) CHARACTER SET UTF8MB4;
+
+DECLARE done INT DEFAULT FALSE;
+
+DECLARE cursor_flat_tables CURSOR FOR
+    SELECT DISTINCT(flat_table_name) FROM mamba_dim_concept_metadata;
+
+DECLARE CONTINUE HANDLER FOR NOT FOUND SET done = TRUE;
+
+OPEN cursor_flat_tables;
+computations_loop:
+LOOP
+    FETCH cursor_flat_tables INTO tbl_name;
+
+    IF done THEN
+        LEAVE computations_loop;
+    END IF;
+
+    CALL sp_mamba_flat_encounter_table_insert_incremental(tbl_name);
+
+END LOOP computations_loop;
+CLOSE cursor_flat_tables;
+
+-- every flat table is up to date with the reloaded encounters
+DELETE FROM mamba_z_encounter_obs_changed;
+
+-- $END
@@ -0,0 +1,154 @@
+-- $BEGIN
+
+-- Reloads the encounters, and all their obs, that were created, changed or voided since the last run instead
+-- of copying the whole obs table. Edited obs are voided and created again by OpenMRS, so new and voided obs
+-- cover every change. The reloaded encounters are kept in mamba_z_encounter_obs_changed until
+-- sp_mamba_flat_encounter_table_insert_incremental_all has pivoted them.
+DECLARE run_started DATETIME DEFAULT NOW();
+DECLARE last_run_started DATETIME;
+
+CREATE TABLE IF NOT EXISTS mamba_z_encounter_obs_watermark
+(
+    id            TINYINT  NOT NULL,
+    changed_since DATETIME NOT NULL,
+
+    PRIMARY KEY (id)
+)
+    CHARSET = UTF8MB4;
+
+CREATE TABLE IF NOT EXISTS mamba_z_encounter_obs_changed
+(
+    encounter_id INT NOT NULL,
+
+    PRIMARY KEY (encounter_id)
+)
+    CHARSET = UTF8MB4;
+
+SELECT w.changed_since INTO last_run_started FROM mamba_z_encounter_obs_watermark w WHERE w.id = 1;
+
+-- tables flattened before the watermark was recorded: start from the last encounter they hold
+IF last_run_started IS NULL THEN
+    SELECT MAX(date_created) INTO last_run_started FROM mamba_dim_encounter;
+END IF;
+
+-- an hour of overlap picks up the rows of the transactions that were still open when the last run started
+SET last_run_started = DATE_SUB(COALESCE(last_run_started, '1900-01-01'), INTERVAL 1 HOUR);
+
+INSERT IGNORE INTO mamba_z_encounter_obs_changed (encounter_id)
+SELECT e.encounter_id
+FROM encounter e
+WHERE e.date_created >= last_run_started
+   OR e.date_changed >= last_run_started
+   OR e.date_voided >= last_run_started;
+
+INSERT IGNORE INTO mamba_z_encounter_obs_changed (encounter_id)
+SELECT DISTINCT o.encounter_id
+FROM obs o
+WHERE o.encounter_id IS NOT NULL
+  AND (o.date_created >= last_run_started OR o.date_voided >= last_run_started);
+
+-- the encounter dimension rows, as sp_mamba_dim_encounter_insert loads them
+DELETE e
+FROM mamba_dim_encounter e
+         INNER JOIN mamba_z_encounter_obs_changed c
+                    ON c.encounter_id = e.encounter_id;
+
+INSERT INTO mamba_dim_encounter (encounter_id,
+                                 uuid,
+                                 encounter_type,
+                                 encounter_type_uuid,
+                                 patient_id,
+                                 encounter_datetime,
+                                 date_created,
+                                 voided,
+                                 visit_id)
+SELECT e.encounter_id,
+       e.uuid,
+       e.encounter_type,
+       et.uuid,
+       e.patient_id,
+       e.encounter_datetime,
+       e.date_created,
+       e.voided,
+       e.visit_id
+FROM encounter e
+         INNER JOIN mamba_z_encounter_obs_changed c
+                    ON c.encounter_id = e.encounter_id
+         INNER JOIN mamba_dim_encounter_type et
+                    ON e.encounter_type = et.encounter_type_id
+WHERE et.uuid
+          IN (SELECT DISTINCT(md.encounter_type_uuid)
+              FROM mamba_dim_concept_metadata md);
+
+-- the obs of the encounters, as sp_mamba_z_encounter_obs_insert and sp_mamba_z_encounter_obs_update load them
+DELETE z
+FROM mamba_z_encounter_obs z
+         INNER JOIN mamba_z_encounter_obs_changed c
+                    ON c.encounter_id = z.encounter_id;
+
+INSERT INTO mamba_z_encounter_obs
+    (
+        encounter_id,
+        person_id,
+        obs_datetime,
+        encounter_datetime,
+        encounter_type_uuid,
+        obs_question_concept_id,
+        obs_value_text,
+        obs_value_numeric,
+        obs_value_coded,
+        obs_value_datetime,
+        obs_value_complex,
+        obs_value_drug,
+        obs_question_uuid,
+        obs_answer_uuid,
+        obs_value_coded_uuid,
+        status,
+        voided
+    )
+    SELECT o.encounter_id,
+           o.person_id,
+           o.obs_datetime,
+           e.encounter_datetime,
+           e.encounter_type_uuid,
+           o.concept_id     AS obs_question_concept_id,
+           o.value_text     AS obs_value_text,
+           o.value_numeric  AS obs_value_numeric,
+           o.value_coded    AS obs_value_coded,
+           o.value_datetime AS obs_value_datetime,
+           o.value_complex  AS obs_value_complex,
+           o.value_drug     AS obs_value_drug,
+           NULL             AS obs_question_uuid,
+           NULL             AS obs_answer_uuid,
+           NULL             AS obs_value_coded_uuid,
+           o.status,
+           o.voided
+    FROM obs o
+             INNER JOIN mamba_z_encounter_obs_changed c
+                        ON c.encounter_id = o.encounter_id
+             INNER JOIN mamba_dim_encounter e
+                        ON o.encounter_id = e.encounter_id;
+
+UPDATE mamba_z_encounter_obs z
+    INNER JOIN mamba_z_encounter_obs_changed c
+    ON c.encounter_id = z.encounter_id
+    INNER JOIN mamba_dim_concept_metadata md
+    ON z.obs_question_concept_id = md.concept_id
+SET z.obs_question_uuid = md.concept_uuid
+WHERE TRUE;
+
+UPDATE mamba_z_encounter_obs z
+    INNER JOIN mamba_z_encounter_obs_changed c
+    ON c.encounter_id = z.encounter_id
+    INNER JOIN mamba_dim_concept_name cn
+    ON z.obs_value_coded = cn.concept_id
+    INNER JOIN mamba_dim_concept dc
+    ON z.obs_value_coded = dc.concept_id
+SET z.obs_value_text       = cn.name,
+    z.obs_value_coded_uuid = dc.uuid
+WHERE z.obs_value_coded IS NOT NULL;
+
+REPLACE INTO mamba_z_encounter_obs_watermark (id, changed_since)
+VALUES (1, run_started);
+
+-- $END
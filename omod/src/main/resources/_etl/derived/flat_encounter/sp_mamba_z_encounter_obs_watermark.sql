@@ -0,0 +1,31 @@
+-- $BEGIN
+
+-- The encounters and obs created, changed or voided since changed_since are reloaded by the next incremental
+-- run. A full run records it once the flattening is done, the tables are dropped and recreated with the others.
+CREATE TABLE IF NOT EXISTS mamba_z_encounter_obs_watermark
+(
+    id            TINYINT  NOT NULL,
+    changed_since DATETIME NOT NULL,
+
+    PRIMARY KEY (id)
+)
+    CHARSET = UTF8MB4;
+
+-- the encounters reloaded into mamba_z_encounter_obs that still have to be pivoted into the flat tables
+CREATE TABLE IF NOT EXISTS mamba_z_encounter_obs_changed
+(
+    encounter_id INT NOT NULL,
+
+    PRIMARY KEY (encounter_id)
+)
+    CHARSET = UTF8MB4;
+
+-- the flattening started when it recreated mamba_dim_location, the first table it builds, what changed while
+-- it was copying the encounters and obs is reloaded by the next incremental run
+REPLACE INTO mamba_z_encounter_obs_watermark (id, changed_since)
+SELECT 1, COALESCE(MIN(CREATE_TIME), NOW())
+FROM information_schema.TABLES
+WHERE TABLE_SCHEMA = DATABASE()
+  AND TABLE_NAME = 'mamba_dim_location';
+
+-- $END
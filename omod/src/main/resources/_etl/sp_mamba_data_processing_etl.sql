@@ -4,6 +4,9 @@
 -- Flatten the tables first
 CALL sp_mamba_data_processing_flatten();
 
+-- the encounters and obs changed while they were being flattened are reloaded by the next incremental run
+CALL sp_mamba_z_encounter_obs_watermark();
+
 -- Call the ETL process
 CALL sp_mamba_data_processing_derived_billing();
 -- $END
\ No newline at end of file
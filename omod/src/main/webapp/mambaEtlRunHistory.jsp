@@ -0,0 +1,66 @@
+<%@ include file="/WEB-INF/template/include.jsp"%>
+
+<openmrs:require privilege="Manage Rwanda Report Definitions" otherwise="/login.htm" redirect="/module/rwandareports/mambaEtlRunHistory.form" />
+
+<%@ include file="/WEB-INF/template/header.jsp"%>
+
+<style>
+table.etlRuns {
+	border-collapse: collapse;
+	width: 100%;
+}
+.etlRuns th, .etlRuns td {
+	border: 1px solid #B0C4DE;
+	padding: 2px 6px;
+}
+.etlRuns th {
+	background-color: #B0C4DE;
+}
+.etlRuns .number {
+	text-align: right;
+}
+.etlRuns .failed {
+	background-color: #FDD;
+}
+.etlRuns .slow {
+	color: #C00;
+	font-weight: bold;
+}
+</style>
+
+<h2><spring:message code="rwandareports.mambaEtlRunHistory.title" /></h2>
+
+<p><spring:message code="rwandareports.mambaEtlRunHistory.description" arguments="${maxResults}" /></p>
+
+<table class="etlRuns">
+	<tr>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.run" /></th>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.mode" /></th>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.stage" /></th>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.startedOn" /></th>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.duration" /></th>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.averageDuration" /></th>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.rows" /></th>
+		<th><spring:message code="rwandareports.mambaEtlRunHistory.status" /></th>
+	</tr>
+	<c:forEach var="stageRun" items="${stageRuns}">
+		<c:set var="averageDuration" value="${averageDurations[stageRun.id]}" />
+		<tr <c:if test="${stageRun.status == 'FAILED'}">class="failed"</c:if>>
+			<td>${fn:substring(stageRun.runUuid, 0, 8)}</td>
+			<td>
+				<c:choose>
+					<c:when test="${stageRun.incremental}"><spring:message code="rwandareports.mambaEtlRunHistory.incremental" /></c:when>
+					<c:otherwise><spring:message code="rwandareports.mambaEtlRunHistory.full" /></c:otherwise>
+				</c:choose>
+			</td>
+			<td>${stageRun.stage}</td>
+			<td><openmrs:formatDate date="${stageRun.startedOn}" type="long" /></td>
+			<td class="number<c:if test="${averageDuration > 0 && stageRun.durationMillis > 2 * averageDuration}"> slow</c:if>">${stageRun.durationMillis}</td>
+			<td class="number">${averageDuration}</td>
+			<td class="number">${stageRun.rows}</td>
+			<td>${stageRun.status}<c:if test="${not empty stageRun.error}">: <c:out value="${stageRun.error}" /></c:if></td>
+		</tr>
+	</c:forEach>
+</table>
+
+<%@ include file="/WEB-INF/template/footer.jsp"%>
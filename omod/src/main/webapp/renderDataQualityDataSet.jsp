@@ -126,7 +126,7 @@ $(function() {
 		<!-- INDICATOR REPORT DSD -->
 		<div id="portal">
 		<c:forEach var="cohort" items="${dQRList}" varStatus="cohortNum">
-		<c:set var="patientsNumInOneDataSet" value="${fn:length(cohort.dataSet.rows)}" />
+		<c:set var="patientsNumInOneDataSet" value="${cohort.total}" />
 		<c:set var="patientsNumInAllDataSets" value="${patientsNumInAllDataSets + patientsNumInOneDataSet}" />				
 		</c:forEach>
 		 <c:forEach var="cohort" items="${dQRList}" varStatus="count" begin="1" end="1">
@@ -139,7 +139,7 @@ $(function() {
 		 
 		<div class="cohortResultsColumn">				
 			
-					<h3>${cohortResults.selectedColumn.name}: ${cohortResults.selectedColumn.label} (${fn:length(cohortResults.dataSet.rows)} <spring:message code="Patient.header"/>)</h3>
+					<h3>${cohortResults.selectedColumn.name}: ${cohortResults.selectedColumn.label} (${cohortResults.total} <spring:message code="Patient.header"/>)</h3>
         
 		 <c:if test="${!empty cohortResults.dataSet}">
 						<table class="display">
@@ -203,7 +203,7 @@ $(function() {
 		<!-- ENCOUNTER DATA PROBLEM -->
 		<div id="portal">
 		<c:forEach var="cohort" items="${dQRListenc}" varStatus="cohortNum">
-		<c:set var="patientsNumInOneDataSetenc" value="${fn:length(cohort.encounters)}" />
+		<c:set var="patientsNumInOneDataSetenc" value="${cohort.total}" />
 		<c:set var="patientsNumInAllDataSetsenc" value="${patientsNumInOneDataSetenc + patientsNumInOneDataSetenc}" />				
 		</c:forEach>
 
@@ -218,7 +218,7 @@ $(function() {
 			<div class="cohortResultsColumn">				
 			<c:if test="${!empty cohortResults.selectedEncounter}">
 		
-					<h3>${cohortResults.selectedEncounter}: ${cohortResults.selectedEncounter} (${fn:length(cohortResults.encounters)} encounters)</h3>
+					<h3>${cohortResults.selectedEncounter}: ${cohortResults.selectedEncounter} (${cohortResults.total} encounters)</h3>
         
 		 <c:if test="${!empty cohortResults.encounters}">
 						<table class="display">
@@ -273,7 +273,7 @@ $(function() {
 		
 	 	 <div id="portal">
 		<c:forEach var="cohort" items="${dQRListncd}" varStatus="cohortNum">
-		<c:set var="patientsNumInOneDataSetncd" value="${fn:length(cohort.dataSet.rows)}" />
+		<c:set var="patientsNumInOneDataSetncd" value="${cohort.total}" />
 		<c:set var="patientsNumInAllDataSetsncd" value="${patientsNumInAllDataSetsncd + patientsNumInOneDataSetncd}" />				
 		</c:forEach>
 		
@@ -288,7 +288,7 @@ $(function() {
 			<div class="cohortResultsColumn">				
 			
 		
-					<h3>${cohortResults.selectedColumn.name}: ${cohortResults.selectedColumn.label} (${fn:length(cohortResults.dataSet.rows)} <spring:message code="Patient.header"/>)</h3>
+					<h3>${cohortResults.selectedColumn.name}: ${cohortResults.selectedColumn.label} (${cohortResults.total} <spring:message code="Patient.header"/>)</h3>
         
 		 <c:if test="${!empty cohortResults.dataSet}">
 						<table class="display">
@@ -345,6 +345,19 @@ $(function() {
 			<c:if test="${empty cohortResults.dataSet}"></c:if>
 			</c:forEach>
 		</div>   
+		
+		<!-- only one page of patients and encounters is shown for every problem -->
+		<c:if test="${page > 1 || hasNextPage}">
+		<div class="cohortResultsColumn">
+			<c:if test="${page > 1}">
+			<a href="renderDataQualityDataSet.form?page=${page - 1}&pageSize=${pageSize}"><spring:message code="general.previous"/></a>
+			</c:if>
+			&nbsp;${page}&nbsp;
+			<c:if test="${hasNextPage}">
+			<a href="renderDataQualityDataSet.form?page=${page + 1}&pageSize=${pageSize}"><spring:message code="general.next"/></a>
+			</c:if>
+		</div>
+		</c:if>
 	</div>
 </div>
 